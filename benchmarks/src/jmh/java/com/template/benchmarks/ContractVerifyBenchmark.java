@@ -0,0 +1,54 @@
+package com.template.benchmarks;
+
+import com.template.contracts.TicketContract;
+import net.corda.core.transactions.LedgerTransaction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of {@link TicketContract#verify} alone, on ledger transactions resolved once during setup.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ContractVerifyBenchmark {
+
+    @Param({"1", "10", "100", "1000"})
+    public int buyOutputs;
+
+    private final TicketContract contract = new TicketContract();
+    private LedgerTransaction buy;
+    private LedgerTransaction transfer;
+    private LedgerTransaction exit;
+
+    @Setup
+    public void setup() {
+        final TicketFixtures fixtures = new TicketFixtures();
+        buy = fixtures.buyBuilder(buyOutputs).toLedgerTransaction(fixtures.services);
+        transfer = fixtures.transferBuilder(fixtures.issuedTicket()).toLedgerTransaction(fixtures.services);
+        exit = fixtures.exitBuilder(fixtures.issuedTicket()).toLedgerTransaction(fixtures.services);
+    }
+
+    @Benchmark
+    public void verifyBuy() {
+        contract.verify(buy);
+    }
+
+    @Benchmark
+    public void verifyTransfer() {
+        contract.verify(transfer);
+    }
+
+    @Benchmark
+    public void verifyExit() {
+        contract.verify(exit);
+    }
+}
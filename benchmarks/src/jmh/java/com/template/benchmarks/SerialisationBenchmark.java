@@ -0,0 +1,65 @@
+package com.template.benchmarks;
+
+import com.template.states.TicketState;
+import net.corda.core.serialization.SerializationDefaults;
+import net.corda.core.serialization.SerializationFactory;
+import net.corda.core.serialization.SerializedBytes;
+import net.corda.core.transactions.SignedTransaction;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AMQP (P2P context) serialisation round trips of a {@link TicketState} and of signed buy transactions.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SerialisationBenchmark {
+
+    @Param({"1", "100"})
+    public int buyOutputs;
+
+    private SerializationFactory factory;
+    private TicketState state;
+    private SignedTransaction stx;
+    private SerializedBytes<TicketState> stateBytes;
+    private SerializedBytes<SignedTransaction> stxBytes;
+
+    @Setup
+    public void setup() {
+        final TicketFixtures fixtures = new TicketFixtures();
+        factory = SerializationFactory.Companion.getDefaultFactory();
+        state = fixtures.ticket(0);
+        stx = fixtures.services.signInitialTransaction(fixtures.buyBuilder(buyOutputs));
+        stateBytes = factory.serialize(state, SerializationDefaults.INSTANCE.getP2P_CONTEXT());
+        stxBytes = factory.serialize(stx, SerializationDefaults.INSTANCE.getP2P_CONTEXT());
+    }
+
+    @Benchmark
+    public SerializedBytes<TicketState> serialiseState() {
+        return factory.serialize(state, SerializationDefaults.INSTANCE.getP2P_CONTEXT());
+    }
+
+    @Benchmark
+    public TicketState deserialiseState() {
+        return factory.deserialize(stateBytes, TicketState.class, SerializationDefaults.INSTANCE.getP2P_CONTEXT());
+    }
+
+    @Benchmark
+    public SerializedBytes<SignedTransaction> serialiseSignedTransaction() {
+        return factory.serialize(stx, SerializationDefaults.INSTANCE.getP2P_CONTEXT());
+    }
+
+    @Benchmark
+    public SignedTransaction deserialiseSignedTransaction() {
+        return factory.deserialize(stxBytes, SignedTransaction.class, SerializationDefaults.INSTANCE.getP2P_CONTEXT());
+    }
+}
@@ -0,0 +1,122 @@
+package com.template.benchmarks;
+
+import com.template.contracts.TicketContract;
+import com.template.contracts.TicketContract.Commands.Buy;
+import com.template.contracts.TicketContract.Commands.CreateInventory;
+import com.template.contracts.TicketContract.Commands.Exit;
+import com.template.contracts.TicketContract.Commands.Transfer;
+import com.template.states.InventoryState;
+import com.template.states.TicketState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.identity.Party;
+import net.corda.core.serialization.internal.SerializationEnvironmentKt;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.core.transactions.TransactionBuilder;
+import net.corda.testing.core.TestIdentity;
+import net.corda.testing.internal.InternalSerializationTestHelpersKt;
+import net.corda.testing.node.MockServices;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Identities, services and transaction builders shared by the benchmarks. Mirrors how the flows build their
+ * transactions, so the numbers reflect what a node does per flow.
+ */
+final class TicketFixtures {
+
+    static final int[] SECTIONS = {15, 30, 50};
+
+    final TestIdentity issuer = new TestIdentity(new CordaX500Name("Issuer", "London", "GB"));
+    final TestIdentity alice = new TestIdentity(new CordaX500Name("Alice", "London", "GB"));
+    final TestIdentity bob = new TestIdentity(new CordaX500Name("Bob", "New York", "US"));
+    final Party notary = new TestIdentity(new CordaX500Name("Notary", "London", "GB")).getParty();
+    final MockServices services;
+    private final Map<Integer, StateAndRef<InventoryState>> inventory;
+
+    TicketFixtures() {
+        // JMH runs outside the test rules that normally install an AMQP serialisation environment.
+        if (SerializationEnvironmentKt.getNodeSerializationEnv() == null) {
+            SerializationEnvironmentKt.setNodeSerializationEnv(
+                    InternalSerializationTestHelpersKt.createTestSerializationEnv());
+        }
+        this.services = new MockServices(Arrays.asList("com.template.contracts", "com.template.schemas"), issuer);
+        this.inventory = createInventory();
+    }
+
+    TicketState ticket(int i) {
+        final Party spectator = i % 2 == 0 ? alice.getParty() : bob.getParty();
+        return new TicketState(issuer.getParty(), spectator, SECTIONS[i % SECTIONS.length], new UniqueIdentifier());
+    }
+
+    TransactionBuilder buyBuilder(int outputs) {
+        final List<TicketState> tickets = new ArrayList<>();
+        for (int i = 0; i < outputs; i++) {
+            tickets.add(ticket(i));
+        }
+        return buyBuilder(tickets);
+    }
+
+    /**
+     * A buy of {@code tickets}, drawing them from one recorded inventory shard per section.
+     */
+    TransactionBuilder buyBuilder(List<TicketState> tickets) {
+        final TransactionBuilder builder = new TransactionBuilder(notary)
+                .addCommand(new Buy(), issuer.getPublicKey());
+        tickets.forEach(it -> builder.addOutputState(it, TicketContract.ID));
+        for (int section : SECTIONS) {
+            final long sold = tickets.stream().filter(it -> it.getSection() == section).count();
+            if (sold == 0) continue;
+            final StateAndRef<InventoryState> shard = inventory.get(section);
+            builder.addInputState(shard)
+                    .addOutputState(shard.getState().getData().draw((int) sold), TicketContract.ID);
+        }
+        return builder;
+    }
+
+    /**
+     * Records a buy of a single ticket held by alice and returns it, ready to be used as a transfer or exit input.
+     */
+    StateAndRef<TicketState> issuedTicket() {
+        final SignedTransaction stx = services.signInitialTransaction(buyBuilder(Collections.singletonList(
+                new TicketState(issuer.getParty(), alice.getParty(), 30, new UniqueIdentifier()))));
+        services.recordTransactions(stx);
+        return stx.getTx().outRef(0);
+    }
+
+    private Map<Integer, StateAndRef<InventoryState>> createInventory() {
+        final TransactionBuilder builder = new TransactionBuilder(notary)
+                .addCommand(new CreateInventory(), issuer.getPublicKey());
+        for (int section : SECTIONS) {
+            builder.addOutputState(new InventoryState(issuer.getParty(), section, 0, Integer.MAX_VALUE,
+                    new UniqueIdentifier()), TicketContract.ID);
+        }
+        final SignedTransaction stx = services.signInitialTransaction(builder);
+        services.recordTransactions(stx);
+        final Map<Integer, StateAndRef<InventoryState>> shards = new HashMap<>();
+        for (int i = 0; i < SECTIONS.length; i++) {
+            shards.put(SECTIONS[i], stx.getTx().outRef(i));
+        }
+        return shards;
+    }
+
+    TransactionBuilder transferBuilder(StateAndRef<TicketState> input) {
+        final TicketState in = input.getState().getData();
+        return new TransactionBuilder(notary)
+                .addCommand(new Transfer(), in.getSpectator().getOwningKey(), bob.getPublicKey())
+                .addInputState(input)
+                .addOutputState(in.transferTo(bob.getParty()), TicketContract.ID);
+    }
+
+    TransactionBuilder exitBuilder(StateAndRef<TicketState> input) {
+        return new TransactionBuilder(notary)
+                .addCommand(new Exit(), issuer.getPublicKey(), input.getState().getData().getSpectator().getOwningKey())
+                .addInputState(input);
+    }
+}
@@ -0,0 +1,51 @@
+package com.template.benchmarks;
+
+import com.template.states.TicketState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.transactions.TransactionBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building the transactions the buy, transfer and exit flows build, before verification and signing.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TransactionBuilderBenchmark {
+
+    @Param({"1", "10", "100"})
+    public int buyOutputs;
+
+    private TicketFixtures fixtures;
+    private StateAndRef<TicketState> input;
+
+    @Setup
+    public void setup() {
+        fixtures = new TicketFixtures();
+        input = fixtures.issuedTicket();
+    }
+
+    @Benchmark
+    public TransactionBuilder buildBuy() {
+        return fixtures.buyBuilder(buyOutputs);
+    }
+
+    @Benchmark
+    public TransactionBuilder buildTransfer() {
+        return fixtures.transferBuilder(input);
+    }
+
+    @Benchmark
+    public TransactionBuilder buildExit() {
+        return fixtures.exitBuilder(input);
+    }
+}
@@ -0,0 +1,188 @@
+package com.template.webserver;
+
+import com.template.flows.BuyFlows.BuyInitiator;
+import com.template.flows.ExitFlows.ExitInitiator;
+import com.template.flows.LookupFlows.TicketLookup;
+import com.template.flows.TransferFlows.TransferInitiator;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.identity.Party;
+import net.corda.core.messaging.CordaRPCOps;
+import net.corda.core.messaging.FlowHandle;
+import net.corda.core.transactions.SignedTransaction;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.net.URI;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+
+/**
+ * Ticket endpoints. Each POST returns 202 with the accepted {@link FlowRequest} as soon as the flow is queued, or
+ * 503 when the gateway is saturated; poll {@code GET /requests/{id}} or pass a {@code callback} URL for the result.
+ * A callback outside {@code config.callbacks.allowedHosts} is refused with 400, see {@link FlowGateway}.
+ */
+@RestController
+@RequestMapping("/")
+public class Controller {
+
+    private final NodeRPCConnection rpc;
+    private final FlowGateway gateway;
+    private final TicketEventFeed feed;
+    private final IssuerRouter router;
+    private final HolderRouter holders;
+
+    public Controller(NodeRPCConnection rpc, FlowGateway gateway, TicketEventFeed feed, IssuerRouter router,
+                      HolderRouter holders) {
+        this.rpc = rpc;
+        this.gateway = gateway;
+        this.feed = feed;
+        this.router = router;
+        this.holders = holders;
+    }
+
+    /**
+     * Sent to the issuer node selling {@code section}, see {@link IssuerRouter}. With an {@code Idempotency-Key}
+     * header, a retried buy returns the ticket of the first attempt.
+     */
+    @PostMapping("/tickets")
+    public ResponseEntity<FlowRequest> buy(@RequestParam String spectator, @RequestParam int section,
+                                           @RequestParam(required = false) URI callback,
+                                           @RequestHeader(value = "Idempotency-Key", required = false) String key) {
+        final Party party = party(spectator);
+        final RpcNode issuer = router.nodeFor(section);
+        if (issuer == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "No issuer node sells section " + section);
+        }
+        return accept("buy", callback, issuer,
+                proxy -> proxy.startFlowDynamic(BuyInitiator.class, party, section, key));
+    }
+
+    /**
+     * Sent to the node of the ticket's current holder, as its issuer knows it, see {@link HolderRouter}; 400 if the
+     * gateway doesn't serve that node.
+     */
+    @PostMapping("/tickets/{linearId}/transfer")
+    public ResponseEntity<FlowRequest> transfer(@PathVariable String linearId, @RequestParam String newOwner,
+                                                @RequestParam(required = false) URI callback) {
+        final UniqueIdentifier id = linearId(linearId);
+        final Party party = party(newOwner);
+        final TicketLookup ticket = unconsumed(id).getTicket();
+        final RpcNode holder = holders.nodeOf(CordaX500Name.parse(ticket.getHolder()));
+        if (holder == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "No node of holder " + ticket.getHolder()
+                    + " is served here");
+        }
+        return accept("transfer", callback, holder,
+                proxy -> proxy.startFlowDynamic(TransferInitiator.class, id, party));
+    }
+
+    /**
+     * Sent to the issuer node holding the ticket, which with {@code config.shards} is the shard that sold it.
+     */
+    @PostMapping("/tickets/{linearId}/exit")
+    public ResponseEntity<FlowRequest> exit(@PathVariable String linearId,
+                                            @RequestParam(required = false) URI callback) {
+        final UniqueIdentifier id = linearId(linearId);
+        final RpcNode issuer = unconsumed(id).getIssuer();
+        return accept("exit", callback, issuer, proxy -> proxy.startFlowDynamic(ExitInitiator.class, id));
+    }
+
+    @GetMapping("/requests/{requestId}")
+    public FlowRequest request(@PathVariable UUID requestId) {
+        final FlowRequest request = gateway.get(requestId);
+        if (request == null) throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Unknown request " + requestId);
+        return request;
+    }
+
+    /**
+     * Unconsumed tickets as NDJSON, in linear id order; an interrupted download resumes with {@code after} set to
+     * the last linear id received. Only the tickets of the gateway's own node are exported: with {@code config.shards},
+     * export each shard with {@link TicketExporter} against its node.
+     */
+    @GetMapping(value = "/tickets/export", produces = "application/x-ndjson")
+    public StreamingResponseBody export(@RequestParam(required = false) UUID after) {
+        final TicketExporter exporter = new TicketExporter(rpc.getProxy(), TicketExporter.DEFAULT_PAGE_SIZE);
+        return out -> exporter.export(after, out, lastLinearId -> {
+        });
+    }
+
+    /**
+     * Server-sent ISSUED, TRANSFERRED and EXITED events of the gateway's own node, see {@link TicketEventFeed}: with
+     * {@code config.shards}, the events of the other shards are only seen by a gateway whose own node is that shard.
+     */
+    @GetMapping(value = "/tickets/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter events(@RequestParam(defaultValue = "false") boolean coalesce,
+                             @RequestParam(defaultValue = "1000") int buffer) {
+        return feed.subscribe(coalesce, buffer);
+    }
+
+    @NotNull
+    private ResponseEntity<FlowRequest> accept(@NotNull String flow, URI callback,
+                                               @NotNull Function<CordaRPCOps, FlowHandle<SignedTransaction>> starter) {
+        return accept(flow, callback, rpc, starter);
+    }
+
+    @NotNull
+    private ResponseEntity<FlowRequest> accept(@NotNull String flow, URI callback, @NotNull RpcNode node,
+                                               @NotNull Function<CordaRPCOps, FlowHandle<SignedTransaction>> starter) {
+        if (callback != null && !gateway.isAllowedCallback(callback)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Callback host not allowed: " + callback);
+        }
+        final FlowRequest request = gateway.submit(flow, callback, node, starter);
+        if (request == null) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).header(HttpHeaders.RETRY_AFTER, "1").build();
+        }
+        return ResponseEntity.accepted().location(URI.create("/requests/" + request.getRequestId())).body(request);
+    }
+
+    /**
+     * The unconsumed ticket {@code linearId}, with its issuer node; 404 if no issuer node holds it unconsumed.
+     */
+    @NotNull
+    private IssuerRouter.IssuedTicket unconsumed(@NotNull UniqueIdentifier linearId) {
+        final IssuerRouter.IssuedTicket ticket;
+        try {
+            ticket = router.lookup(linearId);
+        } catch (ExecutionException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_GATEWAY, "Looking up " + linearId + " failed",
+                    e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Interrupted looking up " + linearId);
+        }
+        if (ticket == null || ticket.getTicket().isConsumed()) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "No unconsumed ticket " + linearId);
+        }
+        return ticket;
+    }
+
+    @NotNull
+    private Party party(@NotNull String name) {
+        final Party party;
+        try {
+            party = rpc.getProxy().wellKnownPartyFromX500Name(CordaX500Name.parse(name));
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid party name " + name);
+        }
+        if (party == null) throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unknown party " + name);
+        return party;
+    }
+
+    @NotNull
+    private static UniqueIdentifier linearId(@NotNull String linearId) {
+        try {
+            return UniqueIdentifier.fromString(linearId);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid linear id " + linearId);
+        }
+    }
+}
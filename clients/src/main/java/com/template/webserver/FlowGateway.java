@@ -0,0 +1,233 @@
+package com.template.webserver;
+
+import net.corda.core.messaging.CordaRPCOps;
+import net.corda.core.messaging.FlowHandle;
+import net.corda.core.transactions.SignedTransaction;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+import javax.annotation.PreDestroy;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Starts flows on the nodes without holding a request thread until they finish. Accepted requests wait in a queue per
+ * node and are started once fewer than {@code config.flows.maxInFlight} flows are running on that node, so a slow node
+ * doesn't hold up requests for the others; once {@code config.flows.maxQueued} requests are waiting in all, new ones
+ * are refused, so a spike is shed at the edge rather than piling up on the nodes. Clients learn the outcome by polling {@link #get(UUID)} or through an optional callback URL, which has
+ * to be http or https on one of the hosts listed, comma separated, in {@code config.callbacks.allowedHosts}; without
+ * that key no callback is accepted.
+ */
+@Component
+public class FlowGateway {
+
+    private static final Logger logger = LoggerFactory.getLogger(FlowGateway.class);
+
+    @NotNull
+    private final NodeRPCConnection rpc;
+    private final int maxInFlight;
+    // Permits for the requests waiting to start, on any node.
+    @NotNull
+    private final Semaphore queued;
+    // By node address, created as requests for the node arrive.
+    @NotNull
+    private final Map<String, Lane> lanes = new ConcurrentHashMap<>();
+    // Finished requests are kept for polling until this many newer ones have been accepted.
+    @NotNull
+    private final Map<UUID, FlowRequest> requests;
+    @NotNull
+    private final Set<String> callbackHosts;
+    @NotNull
+    private final RestTemplate restTemplate = new RestTemplate();
+    @NotNull
+    private final ExecutorService callbacks = Executors.newFixedThreadPool(2);
+    @NotNull
+    private final ExecutorService dispatchers = Executors.newCachedThreadPool();
+
+    public FlowGateway(@NotNull NodeRPCConnection rpc,
+                       @Value("${config.flows.maxInFlight:64}") int maxInFlight,
+                       @Value("${config.flows.maxQueued:1024}") int maxQueued,
+                       @Value("${config.flows.retained:10000}") int retained,
+                       @Value("${config.callbacks.allowedHosts:}") String callbackHosts) {
+        this.rpc = rpc;
+        this.maxInFlight = maxInFlight;
+        this.queued = new Semaphore(maxQueued);
+        this.requests = new LinkedHashMap<UUID, FlowRequest>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<UUID, FlowRequest> eldest) {
+                return size() > retained;
+            }
+        };
+        this.callbackHosts = Arrays.stream(callbackHosts.split(","))
+                .map(it -> it.trim().toLowerCase(Locale.ROOT))
+                .filter(it -> !it.isEmpty())
+                .collect(Collectors.toSet());
+    }
+
+    @PreDestroy
+    public void stopDispatching() {
+        dispatchers.shutdownNow();
+        callbacks.shutdown();
+    }
+
+    /**
+     * Queues the flow started by {@code starter}.
+     *
+     * @return the accepted request, or {@code null} if the queue is full.
+     */
+    @Nullable
+    public FlowRequest submit(@NotNull String flow, @Nullable URI callback,
+                              @NotNull Function<CordaRPCOps, FlowHandle<SignedTransaction>> starter) {
+        return submit(flow, callback, rpc, starter);
+    }
+
+    /**
+     * Queues the flow started by {@code starter} on {@code node}, rather than on the gateway's own.
+     *
+     * @return the accepted request, or {@code null} if the queue is full.
+     * @throws IllegalArgumentException if {@code callback} isn't {@link #isAllowedCallback allowed}.
+     */
+    @Nullable
+    public FlowRequest submit(@NotNull String flow, @Nullable URI callback, @NotNull RpcNode node,
+                              @NotNull Function<CordaRPCOps, FlowHandle<SignedTransaction>> starter) {
+        if (callback != null && !isAllowedCallback(callback)) {
+            throw new IllegalArgumentException("Callbacks to " + callback + " aren't allowed");
+        }
+        if (!queued.tryAcquire()) return null;
+        final FlowRequest request = new FlowRequest(flow, callback);
+        synchronized (requests) {
+            requests.put(request.getRequestId(), request);
+        }
+        lanes.computeIfAbsent(node.getAddress(), it -> lane()).queue.add(new Pending(request, node, starter));
+        return request;
+    }
+
+    /**
+     * Whether the gateway will post to {@code callback}: an absolute http or https URL on an allowed host.
+     */
+    public boolean isAllowedCallback(@NotNull URI callback) {
+        final String scheme = callback.getScheme();
+        final String host = callback.getHost();
+        return ("http".equalsIgnoreCase(scheme) || "https".equalsIgnoreCase(scheme))
+                && host != null && callbackHosts.contains(host.toLowerCase(Locale.ROOT));
+    }
+
+    @Nullable
+    public FlowRequest get(@NotNull UUID requestId) {
+        synchronized (requests) {
+            return requests.get(requestId);
+        }
+    }
+
+    /**
+     * A new node's queue, with one dispatcher per pooled connection, so starting flows is spread over the connections.
+     */
+    @NotNull
+    private Lane lane() {
+        final Lane lane = new Lane(maxInFlight);
+        for (int i = 0; i < rpc.getPoolSize(); i++) {
+            dispatchers.execute(() -> dispatch(lane));
+        }
+        return lane;
+    }
+
+    private void dispatch(@NotNull Lane lane) {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                final Pending pending = lane.queue.take();
+                queued.release();
+                lane.inFlight.acquire();
+                start(pending, lane.inFlight);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void start(@NotNull Pending pending, @NotNull Semaphore inFlight) {
+        final FlowRequest request = pending.request;
+        final FlowHandle<SignedTransaction> handle;
+        try {
+            handle = pending.starter.apply(pending.node.getProxy());
+        } catch (RuntimeException e) {
+            inFlight.release();
+            request.failed(e);
+            notifyCallback(request);
+            return;
+        }
+        request.running();
+        handle.getReturnValue().then(future -> {
+            inFlight.release();
+            try {
+                request.completed(future.get().getId().toString());
+            } catch (ExecutionException e) {
+                request.failed(e.getCause());
+            } catch (InterruptedException e) {
+                request.failed(e);
+                Thread.currentThread().interrupt();
+            }
+            notifyCallback(request);
+            return null;
+        });
+    }
+
+    private void notifyCallback(@NotNull FlowRequest request) {
+        final URI callback = request.getCallback();
+        if (callback == null) return;
+        callbacks.execute(() -> {
+            try {
+                restTemplate.postForLocation(callback, request);
+            } catch (RestClientException e) {
+                logger.warn("Callback to {} for request {} failed: {}", callback, request.getRequestId(),
+                        e.getMessage());
+            }
+        });
+    }
+
+    private static final class Lane {
+        @NotNull
+        private final BlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+        @NotNull
+        private final Semaphore inFlight;
+
+        private Lane(int maxInFlight) {
+            this.inFlight = new Semaphore(maxInFlight);
+        }
+    }
+
+    private static final class Pending {
+        @NotNull
+        private final FlowRequest request;
+        @NotNull
+        private final RpcNode node;
+        @NotNull
+        private final Function<CordaRPCOps, FlowHandle<SignedTransaction>> starter;
+
+        private Pending(@NotNull FlowRequest request, @NotNull RpcNode node,
+                        @NotNull Function<CordaRPCOps, FlowHandle<SignedTransaction>> starter) {
+            this.request = request;
+            this.node = node;
+            this.starter = starter;
+        }
+    }
+}
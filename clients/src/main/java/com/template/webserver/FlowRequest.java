@@ -0,0 +1,79 @@
+package com.template.webserver;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.net.URI;
+import java.util.UUID;
+
+/**
+ * A flow accepted by the {@link FlowGateway}, as returned to clients polling for it and posted to its callback.
+ */
+public class FlowRequest {
+
+    public enum Status {QUEUED, RUNNING, COMPLETED, FAILED}
+
+    @NotNull
+    private final UUID requestId = UUID.randomUUID();
+    @NotNull
+    private final String flow;
+    @Nullable
+    private final URI callback;
+    @NotNull
+    private volatile Status status = Status.QUEUED;
+    @Nullable
+    private volatile String transactionId;
+    @Nullable
+    private volatile String error;
+
+    public FlowRequest(@NotNull String flow, @Nullable URI callback) {
+        this.flow = flow;
+        this.callback = callback;
+    }
+
+    @NotNull
+    public UUID getRequestId() {
+        return requestId;
+    }
+
+    @NotNull
+    public String getFlow() {
+        return flow;
+    }
+
+    @NotNull
+    public Status getStatus() {
+        return status;
+    }
+
+    @Nullable
+    public String getTransactionId() {
+        return transactionId;
+    }
+
+    @Nullable
+    public String getError() {
+        return error;
+    }
+
+    @JsonIgnore
+    @Nullable
+    public URI getCallback() {
+        return callback;
+    }
+
+    void running() {
+        status = Status.RUNNING;
+    }
+
+    void completed(@NotNull String transactionId) {
+        this.transactionId = transactionId;
+        status = Status.COMPLETED;
+    }
+
+    void failed(@NotNull Throwable error) {
+        this.error = error.getMessage() != null ? error.getMessage() : error.getClass().getName();
+        status = Status.FAILED;
+    }
+}
@@ -0,0 +1,166 @@
+package com.template.webserver;
+
+import com.template.flows.GatePass;
+import net.corda.client.rpc.CordaRPCClient;
+import net.corda.client.rpc.CordaRPCConnection;
+import net.corda.core.crypto.Crypto;
+import net.corda.core.identity.Party;
+import net.corda.core.utilities.NetworkHostAndPort;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Checks {@link GatePass}es at the gates without asking a node: the issuer's signature against cached issuer keys,
+ * and the pass's ticket state against a {@link RevocationSet}. Safe to call from many scanner threads at once.
+ *
+ * Run as {@code GateVerifier <host:port>[,<host:port>...] <user> <password> <dir>} against the issuer nodes, every
+ * shard of {@code config.shards} when an event's sections are sharded: it trusts the keys of each, keeps the
+ * revocation set in {@code <dir>} current from all of them, with one feed and checkpoint per node, and checks the
+ * base64url passes read from stdin, one per line. Each node's keys are saved to {@code <dir>/issuers.<host_port>} so
+ * a gate that can't reach a node still starts, with the revocations it had.
+ */
+public class GateVerifier {
+
+    public enum Result {
+        VALID,
+        MALFORMED,
+        UNKNOWN_ISSUER,
+        BAD_SIGNATURE,
+        REVOKED
+    }
+
+    private static final long EXPECTED_REVOCATIONS = 10_000_000;
+    private static final int COMPACT_AT = 50_000;
+
+    @NotNull
+    private final Map<Long, PublicKey> issuerKeys = new ConcurrentHashMap<>();
+    @NotNull
+    private final RevocationSet revoked;
+
+    public GateVerifier(@NotNull Collection<PublicKey> issuerKeys, @NotNull RevocationSet revoked) {
+        issuerKeys.forEach(this::trust);
+        this.revoked = revoked;
+    }
+
+    public void trust(@NotNull PublicKey issuerKey) {
+        issuerKeys.put(GatePass.keyId(issuerKey), issuerKey);
+    }
+
+    @NotNull
+    public Result verify(@NotNull byte[] encoded) {
+        final GatePass pass;
+        try {
+            pass = GatePass.decode(encoded);
+        } catch (IllegalArgumentException e) {
+            return Result.MALFORMED;
+        }
+        final PublicKey issuerKey = issuerKeys.get(pass.getIssuerKeyId());
+        if (issuerKey == null) return Result.UNKNOWN_ISSUER;
+        // The revocation lookup is far cheaper than the signature check, and nearly always a Bloom filter miss.
+        if (revoked.contains(GatePass.revocationKey(pass.getRef()))) return Result.REVOKED;
+        return pass.isSignedBy(issuerKey) ? Result.VALID : Result.BAD_SIGNATURE;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 4) {
+            System.err.println("Usage: GateVerifier <host:port>[,<host:port>...] <user> <password> <dir>");
+            System.exit(1);
+        }
+        final List<String> nodes = Arrays.stream(args[0].split(","))
+                .map(String::trim)
+                .filter(it -> !it.isEmpty())
+                .collect(Collectors.toList());
+        final Path dir = Files.createDirectories(Paths.get(args[3]));
+        final RevocationSet revoked = new RevocationSet(dir.resolve("revoked"), EXPECTED_REVOCATIONS);
+
+        final List<CordaRPCConnection> connections = new ArrayList<>();
+        final List<RevocationFeed> feeds = new ArrayList<>();
+        boolean missingKeys = false;
+        try {
+            final List<PublicKey> issuerKeys = new ArrayList<>();
+            for (String node : nodes) {
+                final String name = node.replace(':', '_');
+                final Path issuersFile = dir.resolve("issuers." + name);
+                try {
+                    final CordaRPCConnection connection = new CordaRPCClient(NetworkHostAndPort.parse(node))
+                            .start(args[1], args[2]);
+                    connections.add(connection);
+                    saveKeys(issuersFile, connection.getProxy().nodeInfo().getLegalIdentities().stream()
+                            .map(Party::getOwningKey).collect(Collectors.toList()));
+                    final RevocationFeed feed = new RevocationFeed(connection.getProxy(), revoked,
+                            dir.resolve("revoked." + name + ".checkpoint"), COMPACT_AT);
+                    feeds.add(feed);
+                    System.err.printf("Read back %d revocations from %s, %d in total%n", feed.start(), node,
+                            revoked.size());
+                } catch (RuntimeException e) {
+                    System.err.println("Can't reach the issuer node " + node
+                            + ", checking its passes against the saved revocations: " + e);
+                }
+                if (!Files.exists(issuersFile)) {
+                    System.err.println("No issuer keys of " + node + " saved in " + dir + ", reach it once first");
+                    missingKeys = true;
+                    return;
+                }
+                issuerKeys.addAll(loadKeys(issuersFile));
+            }
+
+            final GateVerifier verifier = new GateVerifier(issuerKeys, revoked);
+            final PrintStream out = System.out;
+            try (BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = in.readLine()) != null) {
+                    if (line.trim().isEmpty()) continue;
+                    Result result;
+                    try {
+                        result = verifier.verify(Base64.getUrlDecoder().decode(line.trim()));
+                    } catch (IllegalArgumentException e) {
+                        result = Result.MALFORMED;
+                    }
+                    out.println(result);
+                }
+            }
+        } finally {
+            feeds.forEach(RevocationFeed::close);
+            connections.forEach(CordaRPCConnection::notifyServerAndClose);
+            revoked.close();
+            if (missingKeys) System.exit(1);
+        }
+    }
+
+    private static void saveKeys(@NotNull Path file, @NotNull List<PublicKey> keys) throws IOException {
+        Files.write(file, keys.stream()
+                .map(it -> Base64.getEncoder().encodeToString(it.getEncoded()))
+                .collect(Collectors.toList()), StandardCharsets.UTF_8);
+    }
+
+    @NotNull
+    private static List<PublicKey> loadKeys(@NotNull Path file) throws IOException {
+        final List<PublicKey> keys = new ArrayList<>();
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            if (line.trim().isEmpty()) continue;
+            try {
+                keys.add(Crypto.decodePublicKey(Base64.getDecoder().decode(line.trim())));
+            } catch (Exception e) {
+                throw new IOException("Unreadable issuer key in " + file, e);
+            }
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,80 @@
+package com.template.webserver;
+
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.identity.Party;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sends each transfer to the node of the ticket's holder, as only the holder can start one: the holder's and the new
+ * holder's signatures are collected by the node starting it. The spectator nodes the gateway serves are listed in
+ * {@code config.holders} as {@code host:port} pairs separated by commas, reached with the {@code config.rpc}
+ * credentials, and each is asked for its identities on start. The gateway's own node serves its own identities.
+ */
+@Component
+public class HolderRouter implements AutoCloseable {
+
+    @NotNull
+    private final NodeRPCConnection rpc;
+    @Value("${config.holders:}")
+    private String holders;
+    @Value("${config.rpc.username}")
+    private String username;
+    @Value("${config.rpc.password}")
+    private String password;
+    @Value("${config.rpc.connections:4}")
+    private int poolSize;
+
+    @NotNull
+    private final List<NodePool> opened = new ArrayList<>();
+    @NotNull
+    private final Map<CordaX500Name, RpcNode> byHolder = new HashMap<>();
+
+    public HolderRouter(@NotNull NodeRPCConnection rpc) {
+        this.rpc = rpc;
+    }
+
+    @PostConstruct
+    public void connectHolders() {
+        try {
+            rpc.getProxy().nodeInfo().getLegalIdentities().forEach(it -> byHolder.put(it.getName(), rpc));
+            for (String address : holders.split(",")) {
+                if (address.trim().isEmpty()) continue;
+                final NodePool holder = new NodePool(address.trim(), username, password, poolSize);
+                opened.add(holder);
+                for (Party identity : holder.getProxy().nodeInfo().getLegalIdentities()) {
+                    byHolder.putIfAbsent(identity.getName(), holder);
+                }
+            }
+        } catch (RuntimeException e) {
+            // A bean failing to start isn't destroyed, so the pools opened so far are closed here.
+            close();
+            opened.clear();
+            byHolder.clear();
+            throw e;
+        }
+    }
+
+    /**
+     * The node to transfer a ticket held by {@code holder} from, or {@code null} if the gateway doesn't serve it.
+     */
+    @Nullable
+    public RpcNode nodeOf(@NotNull CordaX500Name holder) {
+        return byHolder.get(holder);
+    }
+
+    @PreDestroy
+    @Override
+    public void close() {
+        opened.forEach(NodePool::close);
+    }
+}
@@ -0,0 +1,135 @@
+package com.template.webserver;
+
+import com.template.flows.LookupFlows.TicketLookup;
+import com.template.flows.LookupFlows.TicketLookupFlow;
+import com.template.flows.ShardFlows.IssuedSectionsFlow;
+import net.corda.core.concurrent.CordaFuture;
+import net.corda.core.contracts.UniqueIdentifier;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Sends each buy to the issuer node selling its section, when an event's sections are sharded over several issuer
+ * nodes. The shards are listed in {@code config.shards} as {@code host:port} pairs separated by commas, reached with
+ * the {@code config.rpc} credentials, and each is asked which sections it sells on start. Without
+ * {@code config.shards} every buy goes to the node of {@link NodeRPCConnection}. Tickets are found on their issuer
+ * node with {@link #lookup}, so exits go to the shard that sold the ticket.
+ */
+@Component
+public class IssuerRouter implements AutoCloseable {
+
+    @NotNull
+    private final NodeRPCConnection rpc;
+    @Value("${config.shards:}")
+    private String shards;
+    @Value("${config.rpc.username}")
+    private String username;
+    @Value("${config.rpc.password}")
+    private String password;
+    @Value("${config.rpc.connections:4}")
+    private int poolSize;
+
+    @NotNull
+    private final List<NodePool> opened = new ArrayList<>();
+    @NotNull
+    private final Map<Integer, NodePool> bySection = new HashMap<>();
+
+    public IssuerRouter(@NotNull NodeRPCConnection rpc) {
+        this.rpc = rpc;
+    }
+
+    @PostConstruct
+    public void connectShards() throws InterruptedException, ExecutionException {
+        try {
+            for (String address : shards.split(",")) {
+                if (address.trim().isEmpty()) continue;
+                final NodePool shard = new NodePool(address.trim(), username, password, poolSize);
+                opened.add(shard);
+                for (int section : shard.getProxy().startFlowDynamic(IssuedSectionsFlow.class).getReturnValue().get()) {
+                    final NodePool owner = bySection.putIfAbsent(section, shard);
+                    if (owner != null) {
+                        throw new IllegalStateException("Section " + section + " is sold by both "
+                                + owner.getAddress() + " and " + shard.getAddress());
+                    }
+                }
+            }
+        } catch (RuntimeException | InterruptedException | ExecutionException e) {
+            // A bean failing to start isn't destroyed, so the pools opened so far are closed here.
+            close();
+            opened.clear();
+            bySection.clear();
+            throw e;
+        }
+    }
+
+    /**
+     * The node to buy a ticket of {@code section} from, or {@code null} if no shard sells it.
+     */
+    @Nullable
+    public RpcNode nodeFor(int section) {
+        if (opened.isEmpty()) return rpc;
+        return bySection.get(section);
+    }
+
+    /**
+     * Looks {@code linearId} up on every issuer node at once, see {@link TicketLookupFlow}.
+     *
+     * @return the ticket as its issuer knows it, or {@code null} if no issuer node knows it.
+     */
+    @Nullable
+    public IssuedTicket lookup(@NotNull UniqueIdentifier linearId) throws InterruptedException, ExecutionException {
+        final List<RpcNode> issuers = opened.isEmpty() ? Collections.singletonList(rpc) : new ArrayList<>(opened);
+        final List<CordaFuture<Map<UniqueIdentifier, TicketLookup>>> lookups = new ArrayList<>();
+        for (RpcNode issuer : issuers) {
+            lookups.add(issuer.getProxy().startFlowDynamic(TicketLookupFlow.class,
+                    Collections.singletonList(linearId)).getReturnValue());
+        }
+        for (int i = 0; i < issuers.size(); i++) {
+            final TicketLookup ticket = lookups.get(i).get().get(linearId);
+            if (ticket != null) return new IssuedTicket(issuers.get(i), ticket);
+        }
+        return null;
+    }
+
+    @PreDestroy
+    @Override
+    public void close() {
+        opened.forEach(NodePool::close);
+    }
+
+    /**
+     * A ticket, with the issuer node holding it in its vault.
+     */
+    public static final class IssuedTicket {
+        @NotNull
+        private final RpcNode issuer;
+        @NotNull
+        private final TicketLookup ticket;
+
+        private IssuedTicket(@NotNull RpcNode issuer, @NotNull TicketLookup ticket) {
+            this.issuer = issuer;
+            this.ticket = ticket;
+        }
+
+        @NotNull
+        public RpcNode getIssuer() {
+            return issuer;
+        }
+
+        @NotNull
+        public TicketLookup getTicket() {
+            return ticket;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package com.template.webserver;
+
+import net.corda.client.rpc.CordaRPCClient;
+import net.corda.client.rpc.CordaRPCConnection;
+import net.corda.core.messaging.CordaRPCOps;
+import net.corda.core.utilities.NetworkHostAndPort;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of connections to a node other than the gateway's own, handed out round-robin like
+ * {@link NodeRPCConnection}'s.
+ */
+final class NodePool implements RpcNode, AutoCloseable {
+    @NotNull
+    private final String address;
+    @NotNull
+    private final List<CordaRPCConnection> connections = new ArrayList<>();
+    @NotNull
+    private final AtomicInteger next = new AtomicInteger();
+
+    NodePool(@NotNull String address, @NotNull String username, @NotNull String password, int size) {
+        this.address = address;
+        final CordaRPCClient client = new CordaRPCClient(NetworkHostAndPort.parse(address));
+        try {
+            for (int i = 0; i < size; i++) {
+                connections.add(client.start(username, password));
+            }
+        } catch (RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    @NotNull
+    @Override
+    public String getAddress() {
+        return address;
+    }
+
+    @NotNull
+    @Override
+    public CordaRPCOps getProxy() {
+        return connections.get(Math.floorMod(next.getAndIncrement(), connections.size())).getProxy();
+    }
+
+    @Override
+    public void close() {
+        connections.forEach(CordaRPCConnection::notifyServerAndClose);
+    }
+}
@@ -0,0 +1,69 @@
+package com.template.webserver;
+
+import net.corda.client.rpc.CordaRPCClient;
+import net.corda.client.rpc.CordaRPCConnection;
+import net.corda.core.messaging.CordaRPCOps;
+import net.corda.core.utilities.NetworkHostAndPort;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A pool of RPC connections to the node, handed out round-robin so concurrent requests don't queue behind one
+ * another on a single connection.
+ */
+@Component
+public class NodeRPCConnection implements RpcNode, AutoCloseable {
+
+    @Value("${config.rpc.host}")
+    private String host;
+    @Value("${config.rpc.username}")
+    private String username;
+    @Value("${config.rpc.password}")
+    private String password;
+    @Value("${config.rpc.port}")
+    private int rpcPort;
+    @Value("${config.rpc.connections:4}")
+    private int poolSize;
+
+    @NotNull
+    private final List<CordaRPCConnection> connections = new ArrayList<>();
+    @NotNull
+    private final AtomicInteger next = new AtomicInteger();
+
+    @PostConstruct
+    public void initialiseNodeRPCConnection() {
+        final CordaRPCClient client = new CordaRPCClient(new NetworkHostAndPort(host, rpcPort));
+        for (int i = 0; i < poolSize; i++) {
+            connections.add(client.start(username, password));
+        }
+    }
+
+    @NotNull
+    @Override
+    public String getAddress() {
+        return host + ":" + rpcPort;
+    }
+
+    @NotNull
+    @Override
+    public CordaRPCOps getProxy() {
+        return connections.get(Math.floorMod(next.getAndIncrement(), connections.size())).getProxy();
+    }
+
+    public int getPoolSize() {
+        return connections.size();
+    }
+
+    @PreDestroy
+    @Override
+    public void close() {
+        connections.forEach(CordaRPCConnection::notifyServerAndClose);
+    }
+}
@@ -0,0 +1,142 @@
+package com.template.webserver;
+
+import com.template.flows.GatePass;
+import com.template.states.TicketState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.messaging.CordaRPCOps;
+import net.corda.core.node.services.Vault;
+import net.corda.core.node.services.vault.BinaryComparisonOperator;
+import net.corda.core.node.services.vault.ColumnPredicate;
+import net.corda.core.node.services.vault.PageSpecification;
+import net.corda.core.node.services.vault.QueryCriteria;
+import net.corda.core.node.services.vault.Sort;
+import net.corda.core.node.services.vault.SortAttribute;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import rx.Subscription;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Keeps a {@link RevocationSet} current from the issuer's vault: every ticket state it consumes, by a transfer, an
+ * exit or a re-issue, voids the gate passes of that state. Tickets consumed since the last compaction are read
+ * back on start, and then followed live, so the set is refreshed incrementally rather than rebuilt.
+ *
+ * The checkpoint file holds the node time up to which the set's file is complete, less {@link #CLOCK_SLACK}.
+ */
+public class RevocationFeed implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(RevocationFeed.class);
+    private static final Duration CLOCK_SLACK = Duration.ofMinutes(1);
+    private static final int PAGE_SIZE = 1_000;
+
+    @NotNull
+    private final CordaRPCOps proxy;
+    @NotNull
+    private final RevocationSet revoked;
+    @NotNull
+    private final Path checkpointFile;
+    private final int compactAt;
+    // Compactions are off the RPC observer's thread, which has to keep up with the updates.
+    @NotNull
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor();
+    @NotNull
+    private final Object checkpointLock = new Object();
+    private boolean compacting;
+    private Subscription subscription;
+
+    public RevocationFeed(@NotNull CordaRPCOps proxy, @NotNull RevocationSet revoked, @NotNull Path checkpointFile,
+                          int compactAt) {
+        this.proxy = proxy;
+        this.revoked = revoked;
+        this.checkpointFile = checkpointFile;
+        this.compactAt = compactAt;
+    }
+
+    /**
+     * Follows the issuer's consumed tickets from now on, then reads back those consumed since the checkpoint.
+     *
+     * @return how many tickets were read back.
+     */
+    public long start() throws IOException {
+        final QueryCriteria unconsumed = new QueryCriteria.VaultQueryCriteria(Vault.StateStatus.UNCONSUMED);
+        // Subscribed first, so nothing consumed while reading back is missed; a ticket seen twice is harmless.
+        subscription = proxy.vaultTrackByWithPagingSpec(TicketState.class, unconsumed, new PageSpecification(1, 1))
+                .getUpdates().subscribe(update -> {
+                    update.getConsumed().forEach(it -> revoked.add(GatePass.revocationKey(it.getRef())));
+                    maybeCompact();
+                });
+        final long readBack = readBack(since());
+        compact();
+        return readBack;
+    }
+
+    @Override
+    public void close() {
+        if (subscription != null) subscription.unsubscribe();
+        compactor.shutdown();
+    }
+
+    private long readBack(@NotNull Instant since) {
+        final QueryCriteria consumed = new QueryCriteria.VaultQueryCriteria(Vault.StateStatus.CONSUMED)
+                .withTimeCondition(new QueryCriteria.TimeCondition(QueryCriteria.TimeInstantType.CONSUMED,
+                        new ColumnPredicate.BinaryComparison<>(BinaryComparisonOperator.GREATER_THAN_OR_EQUAL, since)));
+        final Sort byConsumedTime = new Sort(Collections.singleton(new Sort.SortColumn(
+                new SortAttribute.Standard(Sort.VaultStateAttribute.CONSUMED_TIME), Sort.Direction.ASC)));
+        long read = 0;
+        for (int pageNumber = 1; ; pageNumber++) {
+            final List<StateAndRef<TicketState>> states = proxy.vaultQueryBy(consumed,
+                    new PageSpecification(pageNumber, PAGE_SIZE), byConsumedTime, TicketState.class).getStates();
+            states.forEach(it -> revoked.add(GatePass.revocationKey(it.getRef())));
+            read += states.size();
+            if (states.size() < PAGE_SIZE) return read;
+        }
+    }
+
+    private synchronized void maybeCompact() {
+        if (compacting || revoked.overflowSize() < compactAt) return;
+        compacting = true;
+        compactor.execute(() -> {
+            try {
+                compact();
+            } catch (IOException e) {
+                logger.error("Compacting the revocation set failed, the overflow keeps growing", e);
+            } finally {
+                synchronized (this) {
+                    compacting = false;
+                }
+            }
+        });
+    }
+
+    /**
+     * Compacts the set, then moves the checkpoint to the node time taken before it.
+     */
+    private void compact() throws IOException {
+        synchronized (checkpointLock) {
+            final Instant complete = proxy.currentNodeTime().minus(CLOCK_SLACK);
+            revoked.compact();
+            final Path tmp = Paths.get(checkpointFile + ".tmp");
+            Files.write(tmp, complete.toString().getBytes(StandardCharsets.UTF_8));
+            Files.move(tmp, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    @NotNull
+    private Instant since() throws IOException {
+        if (!Files.exists(checkpointFile)) return Instant.EPOCH;
+        return Instant.parse(new String(Files.readAllBytes(checkpointFile), StandardCharsets.UTF_8).trim());
+    }
+}
@@ -0,0 +1,225 @@
+package com.template.webserver;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The set of revoked 16 byte keys a gate checks every scan against, see
+ * {@link com.template.flows.GatePass#revocationKey}. Most scans are of valid passes, which a Bloom filter in memory
+ * answers without touching anything else. Keys the filter might hold are looked up exactly: by binary search in a
+ * memory-mapped file of sorted keys, or in the overflow set of keys revoked since that file was last written.
+ * {@link #compact} merges the overflow into a new file.
+ *
+ * Lookups are lock free and safe to run from any number of threads alongside {@link #add}.
+ */
+public class RevocationSet implements AutoCloseable {
+
+    public static final int KEY_SIZE = 16;
+    private static final int HASHES = 7;
+
+    @NotNull
+    private final Path file;
+    @NotNull
+    private final AtomicLongArray bloom;
+    private final long bloomBits;
+    @NotNull
+    private final Set<Key> overflow = ConcurrentHashMap.newKeySet();
+    @Nullable
+    private volatile FileChannel channel;
+    @NotNull
+    private volatile ByteBuffer sorted = ByteBuffer.allocate(0);
+
+    /**
+     * Opens the set stored in {@code file}, with a Bloom filter sized for {@code expectedKeys} at about a 1% false
+     * positive rate.
+     */
+    public RevocationSet(@NotNull Path file, long expectedKeys) throws IOException {
+        this.file = file;
+        // 10 bits a key with 7 hashes is a false positive rate just under 1%.
+        this.bloomBits = Math.max(64, expectedKeys * 10);
+        this.bloom = new AtomicLongArray((int) ((bloomBits + 63) / 64));
+        if (Files.exists(file)) {
+            map();
+            for (int offset = 0; offset < sorted.capacity(); offset += KEY_SIZE) {
+                addToBloom(sorted.getLong(offset), sorted.getLong(offset + 8));
+            }
+        }
+    }
+
+    public void add(@NotNull byte[] key) {
+        final ByteBuffer buffer = ByteBuffer.wrap(key);
+        final Key revoked = new Key(buffer.getLong(0), buffer.getLong(8));
+        // The filter first: a concurrent lookup that passes it finds the key in the overflow a moment later.
+        addToBloom(revoked.high, revoked.low);
+        overflow.add(revoked);
+    }
+
+    public boolean contains(@NotNull byte[] key) {
+        final ByteBuffer buffer = ByteBuffer.wrap(key);
+        final long high = buffer.getLong(0);
+        final long low = buffer.getLong(8);
+        if (!mightContain(high, low)) return false;
+        return overflow.contains(new Key(high, low)) || search(sorted, high, low);
+    }
+
+    public long size() {
+        return sorted.capacity() / KEY_SIZE + overflow.size();
+    }
+
+    public int overflowSize() {
+        return overflow.size();
+    }
+
+    /**
+     * Rewrites the file with the overflow merged in, and maps the new file. Only one compaction may run at a time;
+     * lookups and adds carry on meanwhile.
+     */
+    public synchronized void compact() throws IOException {
+        final List<Key> added = new ArrayList<>(overflow);
+        added.sort(null);
+        final ByteBuffer current = sorted;
+        final Path tmp = Paths.get(file + ".tmp");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+            int offset = 0;
+            int next = 0;
+            while (offset < current.capacity() || next < added.size()) {
+                final Key key;
+                if (next == added.size()) {
+                    key = new Key(current.getLong(offset), current.getLong(offset + 8));
+                    offset += KEY_SIZE;
+                } else if (offset == current.capacity()) {
+                    key = added.get(next++);
+                } else {
+                    final Key existing = new Key(current.getLong(offset), current.getLong(offset + 8));
+                    final int order = existing.compareTo(added.get(next));
+                    key = order <= 0 ? existing : added.get(next);
+                    if (order <= 0) offset += KEY_SIZE;
+                    if (order >= 0) next++;
+                }
+                if (!buffer.hasRemaining()) {
+                    buffer.flip();
+                    while (buffer.hasRemaining()) out.write(buffer);
+                    buffer.clear();
+                }
+                buffer.putLong(key.high).putLong(key.low);
+            }
+            buffer.flip();
+            while (buffer.hasRemaining()) out.write(buffer);
+            out.force(false);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        final FileChannel previous = channel;
+        map();
+        // Only what is in the new file leaves the overflow; keys added during the merge stay.
+        overflow.removeAll(added);
+        if (previous != null) previous.close();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        final FileChannel current = channel;
+        if (current != null) current.close();
+    }
+
+    private void map() throws IOException {
+        final FileChannel opened = FileChannel.open(file, StandardOpenOption.READ);
+        final MappedByteBuffer mapped = opened.map(FileChannel.MapMode.READ_ONLY, 0, opened.size());
+        channel = opened;
+        sorted = mapped;
+    }
+
+    private void addToBloom(long high, long low) {
+        for (int i = 0; i < HASHES; i++) {
+            final long bit = bit(high, low, i);
+            final int word = (int) (bit >>> 6);
+            final long mask = 1L << (bit & 63);
+            long value;
+            do {
+                value = bloom.get(word);
+            } while ((value & mask) == 0 && !bloom.compareAndSet(word, value, value | mask));
+        }
+    }
+
+    private boolean mightContain(long high, long low) {
+        for (int i = 0; i < HASHES; i++) {
+            final long bit = bit(high, low, i);
+            if ((bloom.get((int) (bit >>> 6)) & (1L << (bit & 63))) == 0) return false;
+        }
+        return true;
+    }
+
+    /**
+     * The keys are hash based already, so the two halves serve as the two hashes of double hashing.
+     */
+    private long bit(long high, long low, int i) {
+        return Math.floorMod(high + i * low, bloomBits);
+    }
+
+    private static boolean search(@NotNull ByteBuffer sorted, long high, long low) {
+        int from = 0;
+        int to = sorted.capacity() / KEY_SIZE - 1;
+        while (from <= to) {
+            final int middle = (from + to) >>> 1;
+            final int order = compare(sorted.getLong(middle * KEY_SIZE), sorted.getLong(middle * KEY_SIZE + 8),
+                    high, low);
+            if (order < 0) {
+                from = middle + 1;
+            } else if (order > 0) {
+                to = middle - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int compare(long high1, long low1, long high2, long low2) {
+        final int order = Long.compareUnsigned(high1, high2);
+        return order != 0 ? order : Long.compareUnsigned(low1, low2);
+    }
+
+    private static final class Key implements Comparable<Key> {
+        private final long high;
+        private final long low;
+
+        private Key(long high, long low) {
+            this.high = high;
+            this.low = low;
+        }
+
+        @Override
+        public int compareTo(@NotNull Key other) {
+            return compare(high, low, other.high, other.low);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            final Key key = (Key) o;
+            return high == key.high && low == key.low;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(high * 31 + low);
+        }
+    }
+}
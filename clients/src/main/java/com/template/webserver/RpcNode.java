@@ -0,0 +1,19 @@
+package com.template.webserver;
+
+import net.corda.core.messaging.CordaRPCOps;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A node the gateway reaches over RPC, known by the {@code host:port} it was configured with.
+ */
+public interface RpcNode {
+
+    @NotNull
+    String getAddress();
+
+    /**
+     * A connection to the node, from its pool.
+     */
+    @NotNull
+    CordaRPCOps getProxy();
+}
@@ -0,0 +1,69 @@
+package com.template.webserver;
+
+import com.template.states.TicketState;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A change to one ticket, as pushed to {@link TicketEventFeed} subscribers.
+ */
+public class TicketEvent {
+
+    public enum Type {ISSUED, TRANSFERRED, EXITED}
+
+    @NotNull
+    private final Type type;
+    @NotNull
+    private final String linearId;
+    @NotNull
+    private final String issuer;
+    @NotNull
+    private final String spectator;
+    private final int section;
+    @Nullable
+    private final String stateRef;
+
+    public TicketEvent(@NotNull Type type, @NotNull TicketState ticket, @Nullable String stateRef) {
+        this.type = type;
+        this.linearId = ticket.getLinearId().getId().toString();
+        this.issuer = ticket.getIssuer().getName().toString();
+        this.spectator = ticket.getSpectator().getName().toString();
+        this.section = ticket.getSection();
+        this.stateRef = stateRef;
+    }
+
+    @NotNull
+    public Type getType() {
+        return type;
+    }
+
+    @NotNull
+    public String getLinearId() {
+        return linearId;
+    }
+
+    @NotNull
+    public String getIssuer() {
+        return issuer;
+    }
+
+    /**
+     * The holder after the change, or the last holder for an exit.
+     */
+    @NotNull
+    public String getSpectator() {
+        return spectator;
+    }
+
+    public int getSection() {
+        return section;
+    }
+
+    /**
+     * The ticket's new state, {@code null} once it has been exited.
+     */
+    @Nullable
+    public String getStateRef() {
+        return stateRef;
+    }
+}
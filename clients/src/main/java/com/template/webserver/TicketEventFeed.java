@@ -0,0 +1,225 @@
+package com.template.webserver;
+
+import com.template.states.TicketState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.node.services.Vault;
+import net.corda.core.node.services.vault.PageSpecification;
+import net.corda.core.node.services.vault.QueryCriteria;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import rx.Subscription;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pushes ticket lifecycle events from the node's vault updates to server-sent event subscribers, so downstream
+ * systems don't have to poll. Every subscriber has its own buffer of at most {@code buffer} events; one that falls
+ * further behind is disconnected rather than buffered without bound. With {@code coalesce}, only the latest pending
+ * event per ticket is kept, so a subscriber interested in current holdings falls behind far less. Only the vault of
+ * the gateway's own node is followed, so with {@code config.shards} every shard needs a gateway of its own for its
+ * events.
+ *
+ * If the node's updates feed fails, every subscriber is disconnected with an error, as events are lost until the feed
+ * is followed again, and the feed is retried every {@code config.events.retrySeconds} (5 by default). Subscribers
+ * arriving meanwhile are turned away the same way, so clients reconnect and catch up from {@code /tickets/export}.
+ */
+@Component
+public class TicketEventFeed {
+
+    private static final Logger logger = LoggerFactory.getLogger(TicketEventFeed.class);
+
+    @NotNull
+    private final NodeRPCConnection rpc;
+    private final int maxBuffer;
+    private final long retrySeconds;
+    @NotNull
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    // Sending blocks on a slow client, so each draining subscriber gets its own thread.
+    @NotNull
+    private final ExecutorService senders = Executors.newCachedThreadPool();
+    @NotNull
+    private final ScheduledExecutorService retries = Executors.newSingleThreadScheduledExecutor();
+    // Null while the node's updates aren't followed.
+    @Nullable
+    private volatile Subscription updates;
+
+    public TicketEventFeed(@NotNull NodeRPCConnection rpc, @Value("${config.events.maxBuffer:10000}") int maxBuffer,
+                           @Value("${config.events.retrySeconds:5}") long retrySeconds) {
+        this.rpc = rpc;
+        this.maxBuffer = maxBuffer;
+        this.retrySeconds = retrySeconds;
+    }
+
+    @PostConstruct
+    public void track() {
+        final QueryCriteria unconsumed = new QueryCriteria.VaultQueryCriteria(Vault.StateStatus.UNCONSUMED);
+        // Only the updates are pushed; the snapshot is what /tickets/export is for.
+        updates = rpc.getProxy().vaultTrackByWithPagingSpec(TicketState.class, unconsumed, new PageSpecification(1, 1))
+                .getUpdates().subscribe(this::publish, this::failed);
+    }
+
+    @PreDestroy
+    public void stop() {
+        retries.shutdownNow();
+        final Subscription current = updates;
+        if (current != null) current.unsubscribe();
+        subscribers.forEach(Subscriber::close);
+        senders.shutdownNow();
+    }
+
+    @NotNull
+    public SseEmitter subscribe(boolean coalesce, int buffer) {
+        final SseEmitter emitter = new SseEmitter(Long.MAX_VALUE);
+        if (updates == null) {
+            emitter.completeWithError(new IllegalStateException("The node's updates aren't available, retry later"));
+            return emitter;
+        }
+        final Subscriber subscriber = new Subscriber(emitter, coalesce, Math.min(buffer, maxBuffer));
+        emitter.onCompletion(subscriber::close);
+        emitter.onTimeout(subscriber::close);
+        subscribers.add(subscriber);
+        return emitter;
+    }
+
+    private void failed(@NotNull Throwable error) {
+        logger.warn("Lost the node's vault updates, disconnecting {} subscribers: {}", subscribers.size(),
+                error.getMessage());
+        updates = null;
+        subscribers.forEach(subscriber -> subscriber.fail(error));
+        retry();
+    }
+
+    private void retry() {
+        try {
+            retries.schedule(() -> {
+                try {
+                    track();
+                } catch (RuntimeException e) {
+                    logger.warn("Following the node's vault updates failed: {}", e.getMessage());
+                    retry();
+                }
+            }, retrySeconds, TimeUnit.SECONDS);
+        } catch (RejectedExecutionException e) {
+            // Stopped meanwhile.
+        }
+    }
+
+    private void publish(@NotNull Vault.Update<TicketState> update) {
+        if (subscribers.isEmpty()) return;
+        final Map<UUID, StateAndRef<TicketState>> consumed = new HashMap<>();
+        update.getConsumed().forEach(it -> consumed.put(it.getState().getData().getLinearId().getId(), it));
+        final List<TicketEvent> events = new ArrayList<>();
+        for (StateAndRef<TicketState> produced : update.getProduced()) {
+            final TicketState ticket = produced.getState().getData();
+            final TicketEvent.Type type = consumed.remove(ticket.getLinearId().getId()) == null
+                    ? TicketEvent.Type.ISSUED
+                    : TicketEvent.Type.TRANSFERRED;
+            events.add(new TicketEvent(type, ticket, produced.getRef().toString()));
+        }
+        consumed.values().forEach(it -> events.add(new TicketEvent(TicketEvent.Type.EXITED, it.getState().getData(), null)));
+        subscribers.forEach(subscriber -> events.forEach(subscriber::offer));
+    }
+
+    private final class Subscriber {
+        @NotNull
+        private final SseEmitter emitter;
+        private final boolean coalesce;
+        private final int capacity;
+        // Pending events by linear id when coalescing, in a plain queue otherwise.
+        @NotNull
+        private final LinkedHashMap<String, TicketEvent> latest = new LinkedHashMap<>();
+        @NotNull
+        private final ArrayDeque<TicketEvent> queue = new ArrayDeque<>();
+        private boolean draining;
+        private boolean closed;
+
+        private Subscriber(@NotNull SseEmitter emitter, boolean coalesce, int capacity) {
+            this.emitter = emitter;
+            this.coalesce = coalesce;
+            this.capacity = capacity;
+        }
+
+        private synchronized void offer(@NotNull TicketEvent event) {
+            if (closed) return;
+            if (coalesce) {
+                latest.put(event.getLinearId(), event);
+            } else {
+                queue.add(event);
+            }
+            if (latest.size() + queue.size() > capacity) {
+                fail(new IllegalStateException("Subscriber fell more than " + capacity + " events behind"));
+                return;
+            }
+            if (!draining) {
+                draining = true;
+                senders.execute(this::drain);
+            }
+        }
+
+        @Nullable
+        private synchronized TicketEvent poll() {
+            if (closed) return null;
+            if (!coalesce) return queue.poll();
+            final Iterator<TicketEvent> it = latest.values().iterator();
+            if (!it.hasNext()) return null;
+            final TicketEvent next = it.next();
+            it.remove();
+            return next;
+        }
+
+        private void drain() {
+            while (true) {
+                final TicketEvent next;
+                synchronized (this) {
+                    next = poll();
+                    if (next == null) {
+                        draining = false;
+                        return;
+                    }
+                }
+                try {
+                    emitter.send(SseEmitter.event().name(next.getType().name()).data(next, MediaType.APPLICATION_JSON));
+                } catch (IOException | IllegalStateException e) {
+                    close();
+                    return;
+                }
+            }
+        }
+
+        private synchronized void fail(@NotNull Throwable error) {
+            if (closed) return;
+            close();
+            emitter.completeWithError(error);
+        }
+
+        private synchronized void close() {
+            closed = true;
+            latest.clear();
+            queue.clear();
+            subscribers.remove(this);
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package com.template.webserver;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.template.flows.TicketQueries;
+import com.template.states.TicketState;
+import net.corda.client.rpc.CordaRPCClient;
+import net.corda.client.rpc.CordaRPCConnection;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.messaging.CordaRPCOps;
+import net.corda.core.node.services.Vault;
+import net.corda.core.node.services.vault.PageSpecification;
+import net.corda.core.utilities.NetworkHostAndPort;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Streams a node's unconsumed tickets as NDJSON, one ticket per line, holding one page of
+ * {@link #DEFAULT_PAGE_SIZE} tickets in memory at a time. Tickets are read in linear id order, so an export can
+ * resume after the last linear id it wrote.
+ *
+ * Run as {@code TicketExporter <host:port> <user> <password> <file[.gz]>} to export to a file. Progress is
+ * checkpointed to {@code <file>.checkpoint} after every page and a rerun resumes from there.
+ */
+public class TicketExporter {
+
+    public static final int DEFAULT_PAGE_SIZE = 1_000;
+
+    @NotNull
+    private final CordaRPCOps proxy;
+    private final int pageSize;
+    @NotNull
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    public TicketExporter(@NotNull CordaRPCOps proxy, int pageSize) {
+        this.proxy = proxy;
+        this.pageSize = pageSize;
+    }
+
+    public interface Checkpoint {
+        void pageWritten(@NotNull UUID lastLinearId) throws IOException;
+    }
+
+    /**
+     * Writes the tickets with a linear id after {@code after} to {@code out}, flushing and calling
+     * {@code checkpoint} after each page.
+     *
+     * @return the number of tickets written.
+     */
+    public long export(@Nullable UUID after, @NotNull OutputStream out, @NotNull Checkpoint checkpoint)
+            throws IOException {
+        long written = 0;
+        UUID last = after;
+        while (true) {
+            final Vault.Page<TicketState> page = proxy.vaultQueryBy(TicketQueries.unconsumedAfter(last),
+                    new PageSpecification(1, pageSize), TicketQueries.linearIdOrder(), TicketState.class);
+            final List<StateAndRef<TicketState>> states = page.getStates();
+            if (states.isEmpty()) return written;
+            for (StateAndRef<TicketState> state : states) {
+                out.write(mapper.writeValueAsBytes(toRecord(state)));
+                out.write('\n');
+            }
+            out.flush();
+            written += states.size();
+            last = states.get(states.size() - 1).getState().getData().getLinearId().getId();
+            checkpoint.pageWritten(last);
+            if (states.size() < pageSize) return written;
+        }
+    }
+
+    @NotNull
+    private static Map<String, Object> toRecord(@NotNull StateAndRef<TicketState> state) {
+        final TicketState ticket = state.getState().getData();
+        final Map<String, Object> record = new LinkedHashMap<>();
+        record.put("linearId", ticket.getLinearId().getId().toString());
+        record.put("issuer", ticket.getIssuer().getName().toString());
+        record.put("spectator", ticket.getSpectator().getName().toString());
+        record.put("section", ticket.getSection());
+        record.put("chainDepth", ticket.getChainDepth());
+        record.put("reissuedFrom", ticket.getReissuedFrom() != null ? ticket.getReissuedFrom().getId().toString() : null);
+        record.put("seat", ticket.getSeat());
+        record.put("stateRef", state.getRef().toString());
+        return record;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 4) {
+            System.err.println("Usage: TicketExporter <host:port> <user> <password> <file[.gz]>");
+            System.exit(1);
+        }
+        final Path file = Paths.get(args[3]);
+        final Path checkpointFile = Paths.get(args[3] + ".checkpoint");
+        final boolean gzip = file.getFileName().toString().endsWith(".gz");
+
+        // A checkpoint holds the last linear id exported and the file length at that point; anything written after
+        // it belongs to an interrupted page and is cut off before resuming.
+        UUID after = null;
+        long length = 0;
+        if (Files.exists(checkpointFile)) {
+            final String[] checkpoint = new String(Files.readAllBytes(checkpointFile), StandardCharsets.UTF_8)
+                    .trim().split(" ");
+            after = UUID.fromString(checkpoint[0]);
+            length = Long.parseLong(checkpoint[1]);
+        }
+
+        final CordaRPCConnection connection = new CordaRPCClient(NetworkHostAndPort.parse(args[0]))
+                .start(args[1], args[2]);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            channel.truncate(length);
+            channel.position(length);
+            final OutputStream fileOut = Channels.newOutputStream(channel);
+            final PageOutput out = new PageOutput(fileOut, gzip);
+            final long written = new TicketExporter(connection.getProxy(), DEFAULT_PAGE_SIZE).export(after, out,
+                    lastLinearId -> {
+                        out.endPage();
+                        final Path tmp = Paths.get(checkpointFile + ".tmp");
+                        Files.write(tmp, (lastLinearId + " " + channel.position()).getBytes(StandardCharsets.UTF_8));
+                        Files.move(tmp, checkpointFile, StandardCopyOption.REPLACE_EXISTING,
+                                StandardCopyOption.ATOMIC_MOVE);
+                    });
+            out.endPage();
+            channel.force(false);
+            System.out.printf("Exported %d tickets to %s%n", written, file);
+        } finally {
+            connection.notifyServerAndClose();
+        }
+    }
+
+    /**
+     * Writes each page as its own gzip member when compressing, so the file is valid gzip at every checkpoint and a
+     * resumed export can simply append.
+     */
+    private static final class PageOutput extends FilterOutputStream {
+        @NotNull
+        private final OutputStream file;
+        private final boolean gzip;
+
+        private PageOutput(@NotNull OutputStream file, boolean gzip) {
+            super(file);
+            this.file = file;
+            this.gzip = gzip;
+        }
+
+        @Override
+        public void write(@NotNull byte[] b, int off, int len) throws IOException {
+            if (gzip && out == file) out = new GZIPOutputStream(file);
+            out.write(b, off, len);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        void endPage() throws IOException {
+            if (out != file) {
+                ((GZIPOutputStream) out).finish();
+                out = file;
+            }
+            file.flush();
+        }
+    }
+}
@@ -1,83 +1,267 @@
 package com.template.contracts;
 
+import com.template.states.InventoryState;
 import com.template.states.TicketState;
+import net.corda.core.contracts.Command;
 import net.corda.core.contracts.CommandData;
-import net.corda.core.contracts.CommandWithParties;
 import net.corda.core.contracts.Contract;
+import net.corda.core.contracts.Requirements;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.crypto.SecureHash;
 import net.corda.core.identity.Party;
 import net.corda.core.transactions.LedgerTransaction;
+import net.corda.core.transactions.LedgerTransaction.InOutGroup;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import java.security.PublicKey;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
-import static net.corda.core.contracts.ContractsDSL.requireSingleCommand;
 import static net.corda.core.contracts.ContractsDSL.requireThat;
 
 public class TicketContract implements Contract {
 
     public static final String ID = "com.template.contracts.TicketContract";
 
+    /**
+     * The sections tickets can be sold in: LOW, MED and HIGH.
+     */
+    public static final List<Integer> SECTIONS = Collections.unmodifiableList(Arrays.asList(15, 30, 50));
+
+    /**
+     * A transaction either creates inventory, exits tickets to re-issue them, issues their replacements, or carries
+     * any mix of {@code Buy},
+     * {@code Transfer} and {@code Exit} commands. In the last case the tickets are grouped by linear id and each group
+     * is checked against the rules of the command its shape calls for: an output only is a buy, an input and an output
+     * a transfer, and an input only an exit. The signers a group needs have to be signers of a command of that kind.
+     */
     @Override
     public void verify(@NotNull LedgerTransaction tx) throws IllegalArgumentException {
+        final List<Command<Commands>> commands = tx.commandsOfType(Commands.class);
+        requireThat(req -> {
+            req.using("At least 1 ticket command is required", !commands.isEmpty());
+            return null;
+        });
+        final boolean exclusive = commands.stream().anyMatch(it -> it.getValue() instanceof Commands.CreateInventory
+                || it.getValue() instanceof Commands.Reissue || it.getValue() instanceof Commands.Replace);
+        if (exclusive) {
+            requireThat(req -> {
+                req.using("Creating inventory and re-issuing can't be combined with other commands",
+                        commands.size() == 1);
+                return null;
+            });
+            verifyExclusive(tx, commands.get(0));
+        } else {
+            verifyTickets(tx, commands);
+        }
+    }
 
-        final CommandWithParties<Commands> commandParty = requireSingleCommand(tx.getCommands(), Commands.class);
-        final List<TicketState> inputs = tx.inputsOfType(TicketState.class);
+    private static void verifyExclusive(@NotNull LedgerTransaction tx, @NotNull Command<Commands> command) {
         final List<TicketState> outputs = tx.outputsOfType(TicketState.class);
+        final List<InventoryState> inventoryOutputs = tx.outputsOfType(InventoryState.class);
 
-        if (commandParty.getValue() instanceof Commands.Buy) {
+        if (command.getValue() instanceof Commands.CreateInventory) {
             requireThat(req -> {
-                req.using("Any input can't be consumed when buying", inputs.isEmpty());
-                req.using("Only 1 output can be issued", outputs.size() == 1);
-                TicketState output = outputs.get(0);
-                req.using("Issuer and Spectator can't be equals",
-                        !output.getIssuer().equals(output.getSpectator()));
-                req.using("Only LOW = 15, MED = 30 or HIGH = 50 section allowed",
-                        output.getSection() == 15 || output.getSection() == 30 || output.getSection() == 50);
-                req.using("Only 1 issuer must signed the transaction",
-                        commandParty.getSigners().containsAll(Arrays.asList(output.getIssuer())
-                                .stream()
-                                .map(it -> it.getOwningKey()).collect(Collectors.toSet())));
+                req.using("Any input can't be consumed when creating inventory", tx.getInputs().isEmpty());
+                req.using("Any ticket can't be issued when creating inventory", outputs.isEmpty());
+                req.using("At least 1 inventory shard must be created", !inventoryOutputs.isEmpty());
+                for (InventoryState shard : inventoryOutputs) {
+                    req.using("Only LOW = 15, MED = 30 or HIGH = 50 section allowed", isValidSection(shard.getSection()));
+                    req.using("Inventory shard capacity must be positive", shard.getRemaining() > 0);
+                }
+                req.using("Linear Ids must be unique within the inventory",
+                        inventoryOutputs.stream().map(it -> it.getLinearId()).distinct().count() == inventoryOutputs.size());
+                req.using("Every issuer must signed the transaction",
+                        command.getSigners().containsAll(issuerKeys(inventoryOutputs)));
                 return null;
             });
-        } else if (commandParty.getValue() instanceof Commands.Transfer) {
+        } else if (command.getValue() instanceof Commands.Reissue) {
+            final List<TicketState> inputs = tx.inputsOfType(TicketState.class);
             requireThat(req -> {
-                req.using("Only 1 input", inputs.size() == 1);
-                req.using("Only 1 output", outputs.size() == 1);
-                TicketState input = inputs.get(0);
-                TicketState output = outputs.get(0);
-                req.using("Input's issuer should be equals to output's Issuer"
-                        , input.getIssuer().equals(output.getIssuer()));
-                req.using("Input's Spectator and Output's Spectator can't be equals"
-                        , !input.getSpectator().equals(output.getSpectator()));
-                req.using("Section has to be conserved in the transfer"
-                        , input.getSection() == output.getSection());
-                req.using("Linear Id has to be conserved in the transfer"
-                        , input.getLinearId().equals(output.getLinearId()));
-                List<Party> signers = Arrays.asList(input.getSpectator(), output.getSpectator());
-                req.using("input's spectator and output's spectator have to signed"
-                        , commandParty.getSigners().containsAll(signers
-                                .stream()
-                                .map(it -> it.getOwningKey()).collect(Collectors.toSet()))
-                );
+                req.using("Only tickets can be consumed when re-issuing", tx.getInputs().size() == inputs.size());
+                req.using("At least 1 ticket must be re-issued", !inputs.isEmpty());
+                req.using("Any output can't be produced when re-issuing, the replacement is issued apart",
+                        tx.getOutputs().isEmpty());
+                for (TicketState input : inputs) {
+                    req.using("Spectator and Issuer have to signed"
+                            , command.getSigners().containsAll(input.getParticipants()
+                                    .stream()
+                                    .map(it -> it.getOwningKey()).collect(Collectors.toSet())));
+                }
                 return null;
             });
-        } else if (commandParty.getValue() instanceof Commands.Exit) {
-            requireThat( req -> {
-               req.using("Only 1 input can be exit", inputs.size() == 1);
-               req.using("Any output should be create", outputs.size() == 0);
-               TicketState input = inputs.get(0);
-               req.using("Spectator and Issuer have to signed"
-               , commandParty.getSigners().containsAll(input.getParticipants()
-                       .stream()
-                       .map(it -> it.getOwningKey()).collect(Collectors.toSet()))
-               );
-               return null;
-            });
         } else {
-            throw new IllegalArgumentException("Unknow command " + commandParty.getValue());
+            final Commands.Replace replace = (Commands.Replace) command.getValue();
+            requireThat(req -> {
+                req.using("Any input can't be consumed when issuing replacements", tx.getInputs().isEmpty());
+                req.using("Inventory can only change when buying", inventoryOutputs.isEmpty());
+                req.using("At least 1 replacement must be issued", !outputs.isEmpty());
+                req.using("A ticket can be replaced at most once",
+                        outputs.stream().map(it -> it.getReissuedFrom()).distinct().count() == outputs.size());
+                for (TicketState output : outputs) {
+                    req.using("Issuer and Spectator can't be equals",
+                            !output.getIssuer().equals(output.getSpectator()));
+                    req.using("Only LOW = 15, MED = 30 or HIGH = 50 section allowed", isValidSection(output.getSection()));
+                    req.using("A seat can't be negative", isValidSeat(output.getSeat()));
+                    req.using("A replacement starts a new chain", output.getChainDepth() == 0);
+                    req.using("A replacement has to link to the ticket it replaces", output.getReissuedFrom() != null);
+                    req.using("A replacement's linear id has to derive from the re-issue exiting the ticket",
+                            output.getLinearId().getId().equals(
+                                    TicketState.replacementId(replace.getExitTxId(), output.getReissuedFrom())));
+                    req.using("Every issuer must signed the transaction",
+                            command.getSigners().contains(output.getIssuer().getOwningKey()));
+                }
+                return null;
+            });
+        }
+    }
+
+    private static void verifyTickets(@NotNull LedgerTransaction tx, @NotNull List<Command<Commands>> commands) {
+        final Set<PublicKey> buySigners = signersOf(commands, Commands.Buy.class);
+        final Set<PublicKey> transferSigners = signersOf(commands, Commands.Transfer.class);
+        final Set<PublicKey> exitSigners = signersOf(commands, Commands.Exit.class);
+        final List<InOutGroup<TicketState, UniqueIdentifier>> groups =
+                tx.groupStates(TicketState.class, TicketState::getLinearId);
+        final List<TicketState> bought = new ArrayList<>();
+        final List<InventoryState> inventoryInputs = tx.inputsOfType(InventoryState.class);
+        final List<InventoryState> inventoryOutputs = tx.outputsOfType(InventoryState.class);
+
+        requireThat(req -> {
+            int transferred = 0;
+            int exited = 0;
+            for (InOutGroup<TicketState, UniqueIdentifier> group : groups) {
+                req.using("A ticket can be consumed and produced at most once",
+                        group.getInputs().size() <= 1 && group.getOutputs().size() <= 1);
+                if (group.getInputs().isEmpty()) {
+                    final TicketState output = group.getOutputs().get(0);
+                    req.using("A Buy command is required to issue tickets", buySigners != null);
+                    req.using("Issuer and Spectator can't be equals",
+                            !output.getIssuer().equals(output.getSpectator()));
+                    req.using("Only LOW = 15, MED = 30 or HIGH = 50 section allowed", isValidSection(output.getSection()));
+                    req.using("A bought ticket starts a new chain",
+                            output.getChainDepth() == 0 && output.getReissuedFrom() == null);
+                    req.using("Every issuer must signed the transaction",
+                            buySigners.contains(output.getIssuer().getOwningKey()));
+                    req.using("A seat can't be negative", isValidSeat(output.getSeat()));
+                    bought.add(output);
+                } else if (!group.getOutputs().isEmpty()) {
+                    final TicketState input = group.getInputs().get(0);
+                    final TicketState output = group.getOutputs().get(0);
+                    req.using("A Transfer command is required to transfer tickets", transferSigners != null);
+                    req.using("Input's issuer should be equals to output's Issuer"
+                            , input.getIssuer().equals(output.getIssuer()));
+                    req.using("Input's Spectator and Output's Spectator can't be equals"
+                            , !input.getSpectator().equals(output.getSpectator()));
+                    req.using("Section has to be conserved in the transfer"
+                            , input.getSection() == output.getSection());
+                    req.using("Re-issue link has to be conserved in the transfer"
+                            , Objects.equals(input.getReissuedFrom(), output.getReissuedFrom()));
+                    req.using("Seat has to be conserved in the transfer"
+                            , Objects.equals(input.getSeat(), output.getSeat()));
+                    req.using("Chain depth has to grow by 1 in the transfer"
+                            , output.getChainDepth() == input.getChainDepth() + 1);
+                    req.using("input's spectator and output's spectator have to signed"
+                            , transferSigners.containsAll(Arrays.asList(
+                                    input.getSpectator().getOwningKey(), output.getSpectator().getOwningKey())));
+                    transferred++;
+                } else {
+                    final TicketState input = group.getInputs().get(0);
+                    req.using("An Exit command is required to exit tickets", exitSigners != null);
+                    req.using("Spectator and Issuer have to signed"
+                            , exitSigners.containsAll(input.getParticipants()
+                                    .stream()
+                                    .map(it -> it.getOwningKey()).collect(Collectors.toSet())));
+                    exited++;
+                }
+            }
+            req.using("At least 1 output must be issued", buySigners == null || !bought.isEmpty());
+            req.using("A seat can't be sold twice", bought.stream().filter(it -> it.getSeat() != null)
+                    .map(it -> Arrays.asList(it.getIssuer(), it.getSection(), it.getSeat())).distinct().count()
+                    == bought.stream().filter(it -> it.getSeat() != null).count());
+            req.using("At least 1 ticket has to be transferred", transferSigners == null || transferred > 0);
+            req.using("At least 1 input has to be exit", exitSigners == null || exited > 0);
+
+            if (buySigners == null) {
+                req.using("Inventory can only change when buying",
+                        inventoryInputs.isEmpty() && inventoryOutputs.isEmpty());
+            } else {
+                verifyInventoryDrawn(req, bought, inventoryInputs, inventoryOutputs);
+                req.using("Every inventory issuer must signed the transaction",
+                        buySigners.containsAll(issuerKeys(inventoryInputs)));
+            }
+            return null;
+        });
+    }
+
+    /**
+     * The signers of every command of {@code kind}, or {@code null} if there is none.
+     */
+    @Nullable
+    private static Set<PublicKey> signersOf(@NotNull List<Command<Commands>> commands,
+                                            @NotNull Class<? extends Commands> kind) {
+        Set<PublicKey> signers = null;
+        for (Command<Commands> command : commands) {
+            if (!kind.isInstance(command.getValue())) continue;
+            if (signers == null) signers = new HashSet<>();
+            signers.addAll(command.getSigners());
         }
+        return signers;
+    }
+
+    private static boolean isValidSection(int section) {
+        return SECTIONS.contains(section);
+    }
+
+    private static boolean isValidSeat(@Nullable Integer seat) {
+        return seat == null || seat >= 0;
+    }
+
+    private static List<PublicKey> issuerKeys(List<InventoryState> shards) {
+        return shards.stream().map(it -> it.getIssuer().getOwningKey()).collect(Collectors.toList());
+    }
+
+    /**
+     * Every ticket issued has to be paid for by the remaining capacity of an inventory shard of the same issuer and
+     * section, so a section can never be oversold.
+     */
+    private static void verifyInventoryDrawn(Requirements req, List<TicketState> tickets,
+                                             List<InventoryState> shardInputs, List<InventoryState> shardOutputs) {
+        final Map<UniqueIdentifier, InventoryState> drawnShards = shardInputs.stream()
+                .collect(Collectors.toMap(InventoryState::getLinearId, Function.identity(), (a, b) -> a));
+        req.using("An inventory shard can't be consumed twice", drawnShards.size() == shardInputs.size());
+        req.using("An inventory shard can't be produced twice", shardOutputs.stream()
+                .map(it -> it.getLinearId()).distinct().count() == shardOutputs.size());
+        for (InventoryState output : shardOutputs) {
+            final InventoryState input = drawnShards.get(output.getLinearId());
+            req.using("Inventory shards can't be created when buying", input != null);
+            req.using("Inventory shard's issuer, section and shard have to be conserved",
+                    input.getIssuer().equals(output.getIssuer())
+                            && input.getSection() == output.getSection()
+                            && input.getShard() == output.getShard());
+            req.using("Inventory shard's remaining capacity can't be negative", output.getRemaining() >= 0);
+        }
+
+        final Map<Entry<Party, Integer>, Integer> drawn = new HashMap<>();
+        shardInputs.forEach(it -> drawn.merge(new SimpleImmutableEntry<>(it.getIssuer(), it.getSection()),
+                it.getRemaining(), Integer::sum));
+        shardOutputs.forEach(it -> drawn.merge(new SimpleImmutableEntry<>(it.getIssuer(), it.getSection()),
+                -it.getRemaining(), Integer::sum));
+        drawn.values().removeIf(it -> it == 0);
+        final Map<Entry<Party, Integer>, Integer> sold = new HashMap<>();
+        tickets.forEach(it -> sold.merge(new SimpleImmutableEntry<>(it.getIssuer(), it.getSection()), 1, Integer::sum));
+        req.using("Tickets issued have to be drawn from the inventory of their issuer and section", drawn.equals(sold));
     }
 
     public interface Commands extends CommandData {
@@ -87,5 +271,31 @@ public class TicketContract implements Contract {
         class Transfer implements Commands {};
 
         class Exit implements Commands {};
+
+        class CreateInventory implements Commands {};
+
+        /**
+         * Exits tickets to re-issue them, signed by their issuer and spectator.
+         */
+        class Reissue implements Commands {};
+
+        /**
+         * Issues the replacements of the tickets exited by the {@code Reissue} transaction {@code exitTxId}, signed by
+         * their issuer. It takes no input, so a replacement's backchain starts with it; the issuer vouches for the
+         * exit, as it vouches for the inventory of a {@code Buy}.
+         */
+        class Replace implements Commands {
+            @NotNull
+            private final SecureHash exitTxId;
+
+            public Replace(@NotNull SecureHash exitTxId) {
+                this.exitTxId = exitTxId;
+            }
+
+            @NotNull
+            public SecureHash getExitTxId() {
+                return exitTxId;
+            }
+        }
     }
 }
@@ -0,0 +1,7 @@
+package com.template.schemas;
+
+/**
+ * The family of schemas for {@link com.template.states.InventoryState}.
+ */
+public class InventorySchema {
+}
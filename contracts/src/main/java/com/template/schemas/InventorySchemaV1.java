@@ -0,0 +1,65 @@
+package com.template.schemas;
+
+import net.corda.core.schemas.MappedSchema;
+import net.corda.core.schemas.PersistentState;
+import org.jetbrains.annotations.Nullable;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import java.util.Arrays;
+
+/**
+ * First version of the {@link InventorySchema}, with the columns a buy picks its shards by.
+ */
+public class InventorySchemaV1 extends MappedSchema {
+
+    public InventorySchemaV1() {
+        super(InventorySchema.class, 1, Arrays.asList(PersistentInventory.class));
+    }
+
+    @Nullable
+    @Override
+    public String getMigrationResource() {
+        return "inventory.changelog-master";
+    }
+
+    @Entity
+    @Table(name = "inventory_states", indexes = {
+            @Index(name = "inventory_issuer_section_idx", columnList = "issuer, section")
+    })
+    public static class PersistentInventory extends PersistentState {
+        @Column(name = "issuer")
+        private final String issuer;
+        @Column(name = "section")
+        private final int section;
+        @Column(name = "remaining")
+        private final int remaining;
+
+        public PersistentInventory(String issuer, int section, int remaining) {
+            this.issuer = issuer;
+            this.section = section;
+            this.remaining = remaining;
+        }
+
+        // Default constructor required by hibernate.
+        public PersistentInventory() {
+            this.issuer = null;
+            this.section = 0;
+            this.remaining = 0;
+        }
+
+        public String getIssuer() {
+            return issuer;
+        }
+
+        public int getSection() {
+            return section;
+        }
+
+        public int getRemaining() {
+            return remaining;
+        }
+    }
+}
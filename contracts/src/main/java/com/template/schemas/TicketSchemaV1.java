@@ -0,0 +1,86 @@
+package com.template.schemas;
+
+import net.corda.core.schemas.MappedSchema;
+import net.corda.core.schemas.PersistentState;
+import org.jetbrains.annotations.Nullable;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Index;
+import javax.persistence.Table;
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * First version of the {@link TicketSchema}, with indexed columns for the fields tickets are looked up by.
+ */
+public class TicketSchemaV1 extends MappedSchema {
+
+    public TicketSchemaV1() {
+        super(TicketSchema.class, 1, Arrays.asList(PersistentTicket.class));
+    }
+
+    @Nullable
+    @Override
+    public String getMigrationResource() {
+        return "ticket.changelog-master";
+    }
+
+    @Entity
+    @Table(name = "ticket_states", indexes = {
+            @Index(name = "ticket_linear_id_idx", columnList = "linear_id"),
+            @Index(name = "ticket_issuer_idx", columnList = "issuer"),
+            @Index(name = "ticket_spectator_section_idx", columnList = "spectator, section"),
+            @Index(name = "ticket_section_idx", columnList = "section"),
+            @Index(name = "ticket_issuer_section_seat_idx", columnList = "issuer, section, seat")
+    })
+    public static class PersistentTicket extends PersistentState {
+        @Column(name = "issuer")
+        private final String issuer;
+        @Column(name = "spectator")
+        private final String spectator;
+        @Column(name = "section")
+        private final int section;
+        @Column(name = "linear_id")
+        private final UUID linearId;
+        @Column(name = "seat")
+        private final Integer seat;
+
+        public PersistentTicket(String issuer, String spectator, int section, UUID linearId, Integer seat) {
+            this.issuer = issuer;
+            this.spectator = spectator;
+            this.section = section;
+            this.linearId = linearId;
+            this.seat = seat;
+        }
+
+        // Default constructor required by hibernate.
+        public PersistentTicket() {
+            this.issuer = null;
+            this.spectator = null;
+            this.section = 0;
+            this.linearId = null;
+            this.seat = null;
+        }
+
+        public String getIssuer() {
+            return issuer;
+        }
+
+        public String getSpectator() {
+            return spectator;
+        }
+
+        public int getSection() {
+            return section;
+        }
+
+        public UUID getLinearId() {
+            return linearId;
+        }
+
+        public Integer getSeat() {
+            return seat;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.template.states;
+
+import com.template.contracts.TicketContract;
+import com.template.schemas.InventorySchemaV1;
+import net.corda.core.contracts.BelongsToContract;
+import net.corda.core.contracts.LinearState;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.identity.AbstractParty;
+import net.corda.core.identity.Party;
+import net.corda.core.schemas.MappedSchema;
+import net.corda.core.schemas.PersistentState;
+import net.corda.core.schemas.QueryableState;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * One shard of the remaining capacity of a section. A section's capacity is split over several shards so that
+ * concurrent buys consume different states and rarely conflict at the notary.
+ */
+@BelongsToContract(TicketContract.class)
+public class InventoryState implements LinearState, QueryableState {
+    @NotNull
+    private final Party issuer;
+    private final int section;
+    private final int shard;
+    private final int remaining;
+    @NotNull
+    private final UniqueIdentifier linearId;
+
+    public InventoryState(Party issuer, int section, int shard, int remaining, UniqueIdentifier linearId) {
+        if (issuer == null) throw new NullPointerException("Issuer cannot be null");
+        if (linearId == null) throw new NullPointerException("Unique identifier is required");
+        this.issuer = issuer;
+        this.section = section;
+        this.shard = shard;
+        this.remaining = remaining;
+        this.linearId = linearId;
+    }
+
+    @NotNull
+    @Override
+    public List<AbstractParty> getParticipants() {
+        return Collections.singletonList(issuer);
+    }
+
+    @NotNull
+    @Override
+    public UniqueIdentifier getLinearId() {
+        return linearId;
+    }
+
+    @NotNull
+    public Party getIssuer() {
+        return issuer;
+    }
+
+    public int getSection() {
+        return section;
+    }
+
+    public int getShard() {
+        return shard;
+    }
+
+    public int getRemaining() {
+        return remaining;
+    }
+
+    /**
+     * The same shard after {@code sold} more tickets have been drawn from it.
+     */
+    @NotNull
+    public InventoryState draw(int sold) {
+        return new InventoryState(issuer, section, shard, remaining - sold, linearId);
+    }
+
+    @NotNull
+    @Override
+    public PersistentState generateMappedObject(@NotNull MappedSchema schema) {
+        if (schema instanceof InventorySchemaV1) {
+            return new InventorySchemaV1.PersistentInventory(issuer.getName().toString(), section, remaining);
+        } else {
+            throw new IllegalArgumentException("Unrecognised schema " + schema);
+        }
+    }
+
+    @NotNull
+    @Override
+    public Iterable<MappedSchema> supportedSchemas() {
+        return Arrays.asList(new InventorySchemaV1());
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        InventoryState that = (InventoryState) o;
+        return section == that.section && shard == that.shard && remaining == that.remaining
+                && issuer.equals(that.issuer) && linearId.equals(that.linearId);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(issuer, section, shard, remaining, linearId);
+    }
+
+    @Override
+    public String toString() {
+        return "InventoryState{" +
+                "issuer=" + issuer +
+                ", section=" + section +
+                ", shard=" + shard +
+                ", remaining=" + remaining +
+                ", linearId=" + linearId +
+                '}';
+    }
+}
@@ -1,19 +1,28 @@
 package com.template.states;
 
 import com.template.contracts.TicketContract;
+import com.template.schemas.TicketSchemaV1;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import net.corda.core.contracts.BelongsToContract;
 import net.corda.core.contracts.LinearState;
 import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.crypto.SecureHash;
 import net.corda.core.identity.AbstractParty;
 import net.corda.core.identity.Party;
+import net.corda.core.schemas.MappedSchema;
+import net.corda.core.schemas.PersistentState;
+import net.corda.core.schemas.QueryableState;
+import net.corda.core.serialization.DeprecatedConstructorForDeserialization;
 
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Objects;
+import java.util.UUID;
 
 @BelongsToContract(TicketContract.class)
-public class TicketState implements LinearState {
+public class TicketState implements LinearState, QueryableState {
     @NotNull
     private final Party issuer;
     @NotNull
@@ -22,8 +31,17 @@ public class TicketState implements LinearState {
     private final int section;
     @NotNull
     private final UniqueIdentifier linearId;
+    // Transfers since the ticket was issued or last re-issued, i.e. the length of its backchain.
+    private final int chainDepth;
+    // The linear id of the ticket this one re-issues, if any.
+    @Nullable
+    private final UniqueIdentifier reissuedFrom;
+    // The seat within the section allocated by the issuer, if any.
+    @Nullable
+    private final Integer seat;
 
-    public TicketState(Party issuer, Party spectator, int section, UniqueIdentifier linearId) {
+    public TicketState(Party issuer, Party spectator, int section, UniqueIdentifier linearId,
+                       int chainDepth, UniqueIdentifier reissuedFrom, Integer seat) {
         if (issuer == null) throw new NullPointerException("Issuer cannot be null");
         if (spectator == null) throw new NullPointerException("spectator cannot be null");
         if (section == 0) throw new NullPointerException("section cannot be null");
@@ -32,6 +50,20 @@ public class TicketState implements LinearState {
         this.spectator = spectator;
         this.section = section;
         this.linearId = linearId;
+        this.chainDepth = chainDepth;
+        this.reissuedFrom = reissuedFrom;
+        this.seat = seat;
+    }
+
+    @DeprecatedConstructorForDeserialization(version = 2)
+    public TicketState(Party issuer, Party spectator, int section, UniqueIdentifier linearId,
+                       int chainDepth, UniqueIdentifier reissuedFrom) {
+        this(issuer, spectator, section, linearId, chainDepth, reissuedFrom, null);
+    }
+
+    @DeprecatedConstructorForDeserialization(version = 1)
+    public TicketState(Party issuer, Party spectator, int section, UniqueIdentifier linearId) {
+        this(issuer, spectator, section, linearId, 0, null, null);
     }
 
     @NotNull
@@ -61,17 +93,89 @@ public class TicketState implements LinearState {
         return section;
     }
 
+    public int getChainDepth() {
+        return chainDepth;
+    }
+
+    @Nullable
+    public UniqueIdentifier getReissuedFrom() {
+        return reissuedFrom;
+    }
+
+    @Nullable
+    public Integer getSeat() {
+        return seat;
+    }
+
+    /**
+     * This ticket, at {@code seat} of its section.
+     */
+    @NotNull
+    public TicketState withSeat(int seat) {
+        return new TicketState(issuer, spectator, section, linearId, chainDepth, reissuedFrom, seat);
+    }
+
+    /**
+     * This ticket, held by {@code newSpectator} one transfer further down its chain.
+     */
+    @NotNull
+    public TicketState transferTo(@NotNull Party newSpectator) {
+        return new TicketState(issuer, newSpectator, section, linearId, chainDepth + 1, reissuedFrom, seat);
+    }
+
+    /**
+     * The replacement of this ticket once the transaction {@code exitTxId} exited it to re-issue it: an equivalent
+     * ticket with an empty chain, linked back to this one, under the linear id {@link #replacementId} derives.
+     */
+    @NotNull
+    public TicketState reissue(@NotNull SecureHash exitTxId) {
+        return new TicketState(issuer, spectator, section,
+                new UniqueIdentifier(null, replacementId(exitTxId, linearId)), 0, linearId, seat);
+    }
+
+    /**
+     * The linear id of the replacement of ticket {@code reissuedFrom} exited by {@code exitTxId}. It only depends on
+     * the two, so a ticket re-issued again by mistake shows up as a second state under the same linear id.
+     */
+    @NotNull
+    public static UUID replacementId(@NotNull SecureHash exitTxId, @NotNull UniqueIdentifier reissuedFrom) {
+        return UUID.nameUUIDFromBytes((exitTxId + "/" + reissuedFrom.getId()).getBytes(StandardCharsets.UTF_8));
+    }
+
+    @NotNull
+    @Override
+    public PersistentState generateMappedObject(@NotNull MappedSchema schema) {
+        if (schema instanceof TicketSchemaV1) {
+            return new TicketSchemaV1.PersistentTicket(
+                    issuer.getName().toString(),
+                    spectator.getName().toString(),
+                    section,
+                    linearId.getId(),
+                    seat);
+        } else {
+            throw new IllegalArgumentException("Unrecognised schema " + schema);
+        }
+    }
+
+    @NotNull
+    @Override
+    public Iterable<MappedSchema> supportedSchemas() {
+        return Arrays.asList(new TicketSchemaV1());
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         TicketState that = (TicketState) o;
-        return section == that.section && issuer.equals(that.issuer) && spectator.equals(that.spectator);
+        return section == that.section && issuer.equals(that.issuer) && spectator.equals(that.spectator)
+                && chainDepth == that.chainDepth && Objects.equals(reissuedFrom, that.reissuedFrom)
+                && Objects.equals(seat, that.seat);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(issuer, spectator, section, linearId);
+        return Objects.hash(issuer, spectator, section, linearId, chainDepth, reissuedFrom, seat);
     }
 
     @Override
@@ -81,6 +185,9 @@ public class TicketState implements LinearState {
                 ", spectator=" + spectator +
                 ", section=" + section +
                 ", linearId=" + linearId +
+                ", chainDepth=" + chainDepth +
+                ", reissuedFrom=" + reissuedFrom +
+                ", seat=" + seat +
                 '}';
     }
 }
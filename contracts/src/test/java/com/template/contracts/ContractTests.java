@@ -1,13 +1,275 @@
 package com.template.contracts;
 
+import com.template.states.InventoryState;
+import com.template.states.TicketState;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.testing.core.TestIdentity;
 import net.corda.testing.node.MockServices;
 import org.junit.Test;
 
+import java.util.Arrays;
+
+import static net.corda.testing.node.NodeTestUtils.ledger;
+
 public class ContractTests {
-    private final MockServices ledgerServices = new MockServices();
+    private final MockServices ledgerServices = new MockServices(Arrays.asList("com.template.contracts"));
+    private final TestIdentity issuer = new TestIdentity(new CordaX500Name("Issuer", "London", "GB"));
+    private final TestIdentity alice = new TestIdentity(new CordaX500Name("Alice", "London", "GB"));
+    private final TestIdentity bob = new TestIdentity(new CordaX500Name("Bob", "New York", "US"));
 
     @Test
     public void dummyTest() {
 
     }
-}
\ No newline at end of file
+
+    @Test
+    public void createInventoryOpensShards() {
+        ledger(ledgerServices, l -> {
+            l.transaction(tx -> {
+                tx.output(TicketContract.ID, new InventoryState(issuer.getParty(), 30, 0, 100, new UniqueIdentifier()));
+                tx.output(TicketContract.ID, new InventoryState(issuer.getParty(), 30, 1, 100, new UniqueIdentifier()));
+                tx.command(issuer.getPublicKey(), new TicketContract.Commands.CreateInventory());
+                return tx.verifies();
+            });
+            return null;
+        });
+    }
+
+    @Test
+    public void buyIssuesSeveralTicketsInOneTransaction() {
+        ledger(ledgerServices, l -> {
+            l.transaction(tx -> {
+                final InventoryState low = new InventoryState(issuer.getParty(), 15, 0, 10, new UniqueIdentifier());
+                final InventoryState med = new InventoryState(issuer.getParty(), 30, 0, 10, new UniqueIdentifier());
+                final InventoryState high = new InventoryState(issuer.getParty(), 50, 0, 1, new UniqueIdentifier());
+                tx.input(TicketContract.ID, low);
+                tx.input(TicketContract.ID, med);
+                tx.input(TicketContract.ID, high);
+                tx.output(TicketContract.ID, low.draw(1));
+                tx.output(TicketContract.ID, med.draw(1));
+                tx.output(TicketContract.ID, new TicketState(issuer.getParty(), alice.getParty(), 15, new UniqueIdentifier()));
+                tx.output(TicketContract.ID, new TicketState(issuer.getParty(), bob.getParty(), 30, new UniqueIdentifier()));
+                tx.output(TicketContract.ID, new TicketState(issuer.getParty(), bob.getParty(), 50, new UniqueIdentifier()));
+                tx.command(issuer.getPublicKey(), new TicketContract.Commands.Buy());
+                return tx.verifies();
+            });
+            return null;
+        });
+    }
+
+    @Test
+    public void buyCantOversellASection() {
+        ledger(ledgerServices, l -> {
+            l.transaction(tx -> {
+                final InventoryState shard = new InventoryState(issuer.getParty(), 30, 0, 1, new UniqueIdentifier());
+                tx.input(TicketContract.ID, shard);
+                tx.output(TicketContract.ID, shard.draw(2));
+                tx.output(TicketContract.ID, new TicketState(issuer.getParty(), alice.getParty(), 30, new UniqueIdentifier()));
+                tx.output(TicketContract.ID, new TicketState(issuer.getParty(), bob.getParty(), 30, new UniqueIdentifier()));
+                tx.command(issuer.getPublicKey(), new TicketContract.Commands.Buy());
+                return tx.failsWith("Inventory shard's remaining capacity can't be negative");
+            });
+            return null;
+        });
+    }
+
+    @Test
+    public void buyNeedsInventory() {
+        ledger(ledgerServices, l -> {
+            l.transaction(tx -> {
+                tx.output(TicketContract.ID, new TicketState(issuer.getParty(), alice.getParty(), 30, new UniqueIdentifier()));
+                tx.command(issuer.getPublicKey(), new TicketContract.Commands.Buy());
+                return tx.failsWith("Tickets issued have to be drawn from the inventory of their issuer and section");
+            });
+            return null;
+        });
+    }
+
+    @Test
+    public void buyChecksEveryOutput() {
+        ledger(ledgerServices, l -> {
+            l.transaction(tx -> {
+                tx.output(TicketContract.ID, new TicketState(issuer.getParty(), alice.getParty(), 15, new UniqueIdentifier()));
+                tx.output(TicketContract.ID, new TicketState(issuer.getParty(), bob.getParty(), 20, new UniqueIdentifier()));
+                tx.command(issuer.getPublicKey(), new TicketContract.Commands.Buy());
+                return tx.failsWith("Only LOW = 15, MED = 30 or HIGH = 50 section allowed");
+            });
+            return null;
+        });
+    }
+
+    @Test
+    public void transferGrowsChainDepth() {
+        ledger(ledgerServices, l -> {
+            final TicketState ticket = new TicketState(issuer.getParty(), alice.getParty(), 30, new UniqueIdentifier());
+            l.transaction(tx -> {
+                tx.input(TicketContract.ID, ticket);
+                tx.output(TicketContract.ID, new TicketState(issuer.getParty(), bob.getParty(), 30,
+                        ticket.getLinearId()));
+                tx.command(Arrays.asList(alice.getPublicKey(), bob.getPublicKey()),
+                        new TicketContract.Commands.Transfer());
+                return tx.failsWith("Chain depth has to grow by 1 in the transfer");
+            });
+            l.transaction(tx -> {
+                tx.input(TicketContract.ID, ticket);
+                tx.output(TicketContract.ID, ticket.transferTo(bob.getParty()));
+                tx.command(Arrays.asList(alice.getPublicKey(), bob.getPublicKey()),
+                        new TicketContract.Commands.Transfer());
+                return tx.verifies();
+            });
+            return null;
+        });
+    }
+
+    @Test
+    public void reissueExitsTheTicketAndReplacesItWithoutInputs() {
+        ledger(ledgerServices, l -> {
+            final TicketState ticket = new TicketState(issuer.getParty(), alice.getParty(), 30, new UniqueIdentifier())
+                    .transferTo(bob.getParty()).transferTo(alice.getParty()).withSeat(7);
+            final SecureHash exitTxId = SecureHash.randomSHA256();
+            l.transaction(tx -> {
+                tx.input(TicketContract.ID, ticket);
+                tx.command(Arrays.asList(issuer.getPublicKey(), alice.getPublicKey()),
+                        new TicketContract.Commands.Reissue());
+                return tx.verifies();
+            });
+            l.transaction(tx -> {
+                tx.input(TicketContract.ID, ticket);
+                tx.output(TicketContract.ID, ticket.reissue(exitTxId));
+                tx.command(Arrays.asList(issuer.getPublicKey(), alice.getPublicKey()),
+                        new TicketContract.Commands.Reissue());
+                return tx.failsWith("Any output can't be produced when re-issuing, the replacement is issued apart");
+            });
+            l.transaction(tx -> {
+                tx.input(TicketContract.ID, ticket);
+                tx.command(issuer.getPublicKey(), new TicketContract.Commands.Reissue());
+                return tx.failsWith("Spectator and Issuer have to signed");
+            });
+            l.transaction(tx -> {
+                tx.output(TicketContract.ID, ticket.reissue(exitTxId));
+                tx.command(issuer.getPublicKey(), new TicketContract.Commands.Replace(exitTxId));
+                return tx.verifies();
+            });
+            l.transaction(tx -> {
+                tx.input(TicketContract.ID, ticket);
+                tx.output(TicketContract.ID, ticket.reissue(exitTxId));
+                tx.command(issuer.getPublicKey(), new TicketContract.Commands.Replace(exitTxId));
+                return tx.failsWith("Any input can't be consumed when issuing replacements");
+            });
+            l.transaction(tx -> {
+                tx.output(TicketContract.ID, ticket.reissue(exitTxId));
+                tx.output(TicketContract.ID, ticket.reissue(exitTxId));
+                tx.command(issuer.getPublicKey(), new TicketContract.Commands.Replace(exitTxId));
+                return tx.failsWith("A ticket can be replaced at most once");
+            });
+            l.transaction(tx -> {
+                tx.output(TicketContract.ID, ticket.reissue(SecureHash.randomSHA256()));
+                tx.command(issuer.getPublicKey(), new TicketContract.Commands.Replace(exitTxId));
+                return tx.failsWith("A replacement's linear id has to derive from the re-issue exiting the ticket");
+            });
+            l.transaction(tx -> {
+                tx.output(TicketContract.ID, ticket.reissue(exitTxId).transferTo(bob.getParty()));
+                tx.command(issuer.getPublicKey(), new TicketContract.Commands.Replace(exitTxId));
+                return tx.failsWith("A replacement starts a new chain");
+            });
+            l.transaction(tx -> {
+                tx.output(TicketContract.ID, ticket.reissue(exitTxId));
+                tx.command(alice.getPublicKey(), new TicketContract.Commands.Replace(exitTxId));
+                return tx.failsWith("Every issuer must signed the transaction");
+            });
+            return null;
+        });
+    }
+
+    @Test
+    public void exitRetiresSeveralTicketsAtOnce() {
+        ledger(ledgerServices, l -> {
+            l.transaction(tx -> {
+                tx.input(TicketContract.ID, new TicketState(issuer.getParty(), alice.getParty(), 15, new UniqueIdentifier()));
+                tx.input(TicketContract.ID, new TicketState(issuer.getParty(), alice.getParty(), 30, new UniqueIdentifier()));
+                tx.command(Arrays.asList(issuer.getPublicKey(), alice.getPublicKey()), new TicketContract.Commands.Exit());
+                return tx.verifies();
+            });
+            l.transaction(tx -> {
+                tx.input(TicketContract.ID, new TicketState(issuer.getParty(), alice.getParty(), 15, new UniqueIdentifier()));
+                tx.input(TicketContract.ID, new TicketState(issuer.getParty(), bob.getParty(), 30, new UniqueIdentifier()));
+                tx.command(Arrays.asList(issuer.getPublicKey(), alice.getPublicKey()), new TicketContract.Commands.Exit());
+                return tx.failsWith("Spectator and Issuer have to signed");
+            });
+            return null;
+        });
+    }
+
+    @Test
+    public void oneTransactionMixesTransfersAndExits() {
+        ledger(ledgerServices, l -> {
+            final TicketState kept = new TicketState(issuer.getParty(), alice.getParty(), 15, new UniqueIdentifier());
+            final TicketState given = new TicketState(issuer.getParty(), alice.getParty(), 30, new UniqueIdentifier());
+            final TicketState retired = new TicketState(issuer.getParty(), alice.getParty(), 50, new UniqueIdentifier());
+            l.transaction(tx -> {
+                tx.input(TicketContract.ID, kept);
+                tx.input(TicketContract.ID, given);
+                tx.input(TicketContract.ID, retired);
+                tx.output(TicketContract.ID, kept.transferTo(bob.getParty()));
+                tx.output(TicketContract.ID, given.transferTo(bob.getParty()));
+                tx.command(Arrays.asList(alice.getPublicKey(), bob.getPublicKey()),
+                        new TicketContract.Commands.Transfer());
+                tx.command(Arrays.asList(issuer.getPublicKey(), alice.getPublicKey()),
+                        new TicketContract.Commands.Exit());
+                return tx.verifies();
+            });
+            l.transaction(tx -> {
+                tx.input(TicketContract.ID, given);
+                tx.input(TicketContract.ID, retired);
+                tx.output(TicketContract.ID, given.transferTo(bob.getParty()));
+                tx.command(Arrays.asList(alice.getPublicKey(), bob.getPublicKey()),
+                        new TicketContract.Commands.Transfer());
+                return tx.failsWith("An Exit command is required to exit tickets");
+            });
+            l.transaction(tx -> {
+                tx.input(TicketContract.ID, given);
+                tx.output(TicketContract.ID, given.transferTo(bob.getParty()));
+                tx.command(issuer.getPublicKey(), new TicketContract.Commands.Reissue());
+                tx.command(Arrays.asList(alice.getPublicKey(), bob.getPublicKey()),
+                        new TicketContract.Commands.Transfer());
+                return tx.failsWith("Creating inventory and re-issuing can't be combined with other commands");
+            });
+            return null;
+        });
+    }
+
+    @Test
+    public void seatsAreSoldOnceAndKeptOnTransfer() {
+        ledger(ledgerServices, l -> {
+            final InventoryState shard = new InventoryState(issuer.getParty(), 30, 0, 2, new UniqueIdentifier());
+            l.transaction(tx -> {
+                tx.input(TicketContract.ID, shard);
+                tx.output(TicketContract.ID, new TicketState(issuer.getParty(), alice.getParty(), 30,
+                        new UniqueIdentifier()).withSeat(7));
+                tx.output(TicketContract.ID, new TicketState(issuer.getParty(), bob.getParty(), 30,
+                        new UniqueIdentifier()).withSeat(7));
+                tx.command(issuer.getPublicKey(), new TicketContract.Commands.Buy());
+                return tx.failsWith("A seat can't be sold twice");
+            });
+            final TicketState ticket = new TicketState(issuer.getParty(), alice.getParty(), 30,
+                    new UniqueIdentifier()).withSeat(7);
+            l.transaction(tx -> {
+                tx.input(TicketContract.ID, ticket);
+                tx.output(TicketContract.ID, ticket.transferTo(bob.getParty()).withSeat(8));
+                tx.command(Arrays.asList(alice.getPublicKey(), bob.getPublicKey()),
+                        new TicketContract.Commands.Transfer());
+                return tx.failsWith("Seat has to be conserved in the transfer");
+            });
+            l.transaction(tx -> {
+                tx.input(TicketContract.ID, ticket);
+                tx.output(TicketContract.ID, ticket.transferTo(bob.getParty()));
+                tx.command(Arrays.asList(alice.getPublicKey(), bob.getPublicKey()),
+                        new TicketContract.Commands.Transfer());
+                return tx.verifies();
+            });
+            return null;
+        });
+    }
+}
@@ -0,0 +1,8 @@
+package com.template.loadgen;
+
+/**
+ * The flows the {@link LoadGenerator} starts.
+ */
+enum FlowKind {
+    BUY, TRANSFER, EXIT
+}
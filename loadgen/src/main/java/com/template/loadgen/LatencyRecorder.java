@@ -0,0 +1,48 @@
+package com.template.loadgen;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Records flow latencies of one {@link FlowKind} and reports throughput and percentiles over them.
+ */
+final class LatencyRecorder {
+
+    @NotNull
+    private final FlowKind kind;
+    private long[] latenciesNanos = new long[1024];
+    private int count = 0;
+    private final AtomicLong failures = new AtomicLong();
+
+    LatencyRecorder(@NotNull FlowKind kind) {
+        this.kind = kind;
+    }
+
+    synchronized void success(long latencyNanos) {
+        if (count == latenciesNanos.length) {
+            latenciesNanos = Arrays.copyOf(latenciesNanos, count * 2);
+        }
+        latenciesNanos[count++] = latencyNanos;
+    }
+
+    void failure() {
+        failures.incrementAndGet();
+    }
+
+    @NotNull
+    synchronized String report(double elapsedSeconds) {
+        final long[] sorted = Arrays.copyOf(latenciesNanos, count);
+        Arrays.sort(sorted);
+        return String.format("%-8s ok=%-7d failed=%-6d %8.1f flows/s  p50=%8.1fms  p99=%8.1fms  p999=%8.1fms",
+                kind, count, failures.get(), count / elapsedSeconds,
+                percentileMillis(sorted, 0.50), percentileMillis(sorted, 0.99), percentileMillis(sorted, 0.999));
+    }
+
+    private static double percentileMillis(long[] sorted, double percentile) {
+        if (sorted.length == 0) return 0;
+        final int index = (int) Math.min(sorted.length - 1, Math.ceil(percentile * sorted.length) - 1);
+        return sorted[Math.max(0, index)] / 1_000_000.0;
+    }
+}
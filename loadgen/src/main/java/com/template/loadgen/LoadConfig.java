@@ -0,0 +1,131 @@
+package com.template.loadgen;
+
+import net.corda.core.utilities.NetworkHostAndPort;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Command line options of the {@link LoadGenerator}.
+ *
+ * <pre>
+ *   --issuer host:port            RPC address of the issuing node
+ *   --spectators host:port,...    RPC addresses of the spectator nodes
+ *   --driver N                    start an issuer, a notary and N spectators in process instead
+ *   --user user1 --password test  RPC credentials (defaults match deployNodes)
+ *   --mix buy=60,transfer=30,exit=10
+ *   --rate R                      target flow starts per second, 0 for as fast as the concurrency allows
+ *   --concurrency C               maximum flows in flight
+ *   --duration S                  seconds to generate load for
+ *   --section 30                  section of the tickets bought
+ *   --inventory N                 open N tickets for sale in the section before starting (default 1000000
+ *                                 with --driver, 0 otherwise)
+ *   --shards S                    inventory shards the capacity is split over
+ * </pre>
+ */
+final class LoadConfig {
+
+    @NotNull
+    NetworkHostAndPort issuer = NetworkHostAndPort.parse("localhost:10006");
+    @NotNull
+    List<NetworkHostAndPort> spectators = Collections.singletonList(NetworkHostAndPort.parse("localhost:10009"));
+    int driverSpectators = 0;
+    @NotNull
+    String user = "user1";
+    @NotNull
+    String password = "test";
+    @NotNull
+    final Map<FlowKind, Integer> mix = new EnumMap<>(FlowKind.class);
+    double rate = 0;
+    int concurrency = 16;
+    int durationSeconds = 60;
+    int section = 30;
+    int inventory = -1;
+    int shards = 32;
+
+    private LoadConfig() {
+        mix.put(FlowKind.BUY, 60);
+        mix.put(FlowKind.TRANSFER, 30);
+        mix.put(FlowKind.EXIT, 10);
+    }
+
+    @NotNull
+    static LoadConfig parse(@NotNull String[] args) {
+        final LoadConfig config = new LoadConfig();
+        for (int i = 0; i < args.length; i++) {
+            final String option = args[i];
+            if (i + 1 >= args.length) throw new IllegalArgumentException("Missing value for " + option);
+            final String value = args[++i];
+            switch (option) {
+                case "--issuer":
+                    config.issuer = NetworkHostAndPort.parse(value);
+                    break;
+                case "--spectators":
+                    config.spectators = Arrays.stream(value.split(","))
+                            .map(NetworkHostAndPort::parse)
+                            .collect(Collectors.toList());
+                    break;
+                case "--driver":
+                    config.driverSpectators = Integer.parseInt(value);
+                    break;
+                case "--user":
+                    config.user = value;
+                    break;
+                case "--password":
+                    config.password = value;
+                    break;
+                case "--mix":
+                    config.mix.clear();
+                    for (String entry : value.split(",")) {
+                        final String[] kv = entry.split("=");
+                        config.mix.put(FlowKind.valueOf(kv[0].trim().toUpperCase()), Integer.parseInt(kv[1].trim()));
+                    }
+                    break;
+                case "--rate":
+                    config.rate = Double.parseDouble(value);
+                    break;
+                case "--concurrency":
+                    config.concurrency = Integer.parseInt(value);
+                    break;
+                case "--duration":
+                    config.durationSeconds = Integer.parseInt(value);
+                    break;
+                case "--section":
+                    config.section = Integer.parseInt(value);
+                    break;
+                case "--inventory":
+                    config.inventory = Integer.parseInt(value);
+                    break;
+                case "--shards":
+                    config.shards = Integer.parseInt(value);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + option);
+            }
+        }
+        if (config.mix.values().stream().mapToInt(Integer::intValue).sum() <= 0) {
+            throw new IllegalArgumentException("The flow mix needs at least one positive weight");
+        }
+        if (config.concurrency <= 0) throw new IllegalArgumentException("Concurrency must be positive");
+        if (config.inventory < 0) config.inventory = config.driverSpectators > 0 ? 1_000_000 : 0;
+        return config;
+    }
+
+    /**
+     * Expands the mix into a wheel of flow kinds, picked from uniformly at random.
+     */
+    @NotNull
+    List<FlowKind> wheel() {
+        final List<FlowKind> wheel = new ArrayList<>();
+        mix.forEach((kind, weight) -> {
+            for (int i = 0; i < weight; i++) wheel.add(kind);
+        });
+        return wheel;
+    }
+}
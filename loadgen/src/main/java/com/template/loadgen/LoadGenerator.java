@@ -0,0 +1,230 @@
+package com.template.loadgen;
+
+import com.template.flows.BuyFlows.BuyInitiator;
+import com.template.flows.ExitFlows.ExitInitiator;
+import com.template.flows.InventoryFlows.CreateInventoryInitiator;
+import com.template.flows.TransferFlows.TransferInitiator;
+import com.template.states.TicketState;
+import net.corda.client.rpc.CordaRPCClient;
+import net.corda.client.rpc.CordaRPCConnection;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.identity.Party;
+import net.corda.core.messaging.CordaRPCOps;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.core.utilities.NetworkHostAndPort;
+import net.corda.testing.driver.DriverParameters;
+import net.corda.testing.driver.NodeHandle;
+import net.corda.testing.driver.NodeParameters;
+import net.corda.testing.node.TestCordapp;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+
+import static net.corda.testing.driver.Driver.driver;
+
+/**
+ * Starts a configurable mix of buy, transfer and exit flows over RPC and reports throughput and latency
+ * percentiles per flow. Runs either against nodes produced by {@code deployNodes}/{@code deployLoadTestNodes}, or
+ * against an issuer and N spectators it starts in process with the driver. See {@link LoadConfig} for the options.
+ *
+ * Tickets bought during the run are kept in a pool and reused by the transfers and exits, which are started on the
+ * node of the spectator currently holding the ticket.
+ */
+public final class LoadGenerator {
+
+    private static final CordaX500Name ISSUER_NAME = new CordaX500Name("Issuer", "London", "GB");
+
+    @NotNull
+    private final LoadConfig config;
+    @NotNull
+    private final CordaRPCOps issuer;
+    @NotNull
+    private final List<CordaRPCOps> spectators;
+    @NotNull
+    private final List<Party> spectatorParties;
+    @NotNull
+    private final Queue<Ticket> pool = new ConcurrentLinkedQueue<>();
+    @NotNull
+    private final Map<FlowKind, LatencyRecorder> recorders = new EnumMap<>(FlowKind.class);
+
+    private LoadGenerator(@NotNull LoadConfig config, @NotNull CordaRPCOps issuer, @NotNull List<CordaRPCOps> spectators) {
+        this.config = config;
+        this.issuer = issuer;
+        this.spectators = spectators;
+        this.spectatorParties = spectators.stream()
+                .map(it -> it.nodeInfo().getLegalIdentities().get(0))
+                .collect(Collectors.toList());
+        for (FlowKind kind : FlowKind.values()) recorders.put(kind, new LatencyRecorder(kind));
+    }
+
+    public static void main(String[] args) throws Exception {
+        final LoadConfig config = LoadConfig.parse(args);
+        if (config.driverSpectators > 0) {
+            runInDriver(config);
+        } else {
+            runAgainstNodes(config);
+        }
+    }
+
+    private static void runAgainstNodes(@NotNull LoadConfig config) throws InterruptedException, ExecutionException {
+        final List<CordaRPCConnection> connections = new ArrayList<>();
+        try {
+            final CordaRPCConnection issuer = connect(config, config.issuer);
+            connections.add(issuer);
+            final List<CordaRPCOps> spectators = new ArrayList<>();
+            for (NetworkHostAndPort address : config.spectators) {
+                final CordaRPCConnection connection = connect(config, address);
+                connections.add(connection);
+                spectators.add(connection.getProxy());
+            }
+            new LoadGenerator(config, issuer.getProxy(), spectators).run();
+        } finally {
+            connections.forEach(CordaRPCConnection::notifyServerAndClose);
+        }
+    }
+
+    @NotNull
+    private static CordaRPCConnection connect(@NotNull LoadConfig config, @NotNull NetworkHostAndPort address) {
+        return new CordaRPCClient(address).start(config.user, config.password);
+    }
+
+    private static void runInDriver(@NotNull LoadConfig config) {
+        driver(new DriverParameters()
+                .withStartNodesInProcess(true)
+                .withCordappsForAllNodes(Arrays.asList(
+                        TestCordapp.findCordapp("com.template.contracts"),
+                        TestCordapp.findCordapp("com.template.flows"))), dsl -> {
+            try {
+                final NodeHandle issuer = dsl.startNode(new NodeParameters().withProvidedName(ISSUER_NAME)).get();
+                final List<CordaRPCOps> spectators = new ArrayList<>();
+                for (int i = 1; i <= config.driverSpectators; i++) {
+                    final CordaX500Name name = new CordaX500Name("Spectator" + i, "London", "GB");
+                    spectators.add(dsl.startNode(new NodeParameters().withProvidedName(name)).get().getRpc());
+                }
+                new LoadGenerator(config, issuer.getRpc(), spectators).run();
+            } catch (Exception e) {
+                throw new RuntimeException("Load generation failed: ", e);
+            }
+            return null;
+        });
+    }
+
+    private void run() throws InterruptedException, ExecutionException {
+        if (config.inventory > 0) {
+            issuer.startFlowDynamic(CreateInventoryInitiator.class, config.section, config.inventory, config.shards)
+                    .getReturnValue().get();
+        }
+        final List<FlowKind> wheel = config.wheel();
+        final Semaphore inFlight = new Semaphore(config.concurrency);
+        final ExecutorService workers = Executors.newFixedThreadPool(config.concurrency);
+        final long intervalNanos = config.rate > 0 ? (long) (1_000_000_000L / config.rate) : 0;
+        final long start = System.nanoTime();
+        final long end = start + TimeUnit.SECONDS.toNanos(config.durationSeconds);
+        long next = start;
+
+        System.out.printf("Generating load against 1 issuer and %d spectators for %ds (rate=%s, concurrency=%d)%n",
+                spectators.size(), config.durationSeconds,
+                config.rate > 0 ? config.rate + "/s" : "unbounded", config.concurrency);
+
+        while (System.nanoTime() < end) {
+            // With a target rate, latency is measured from the scheduled start so a backed up node shows up in
+            // the percentiles instead of silently slowing the generator down.
+            final long scheduled = next;
+            if (intervalNanos > 0) {
+                final long wait = next - System.nanoTime();
+                if (wait > 0) LockSupport.parkNanos(wait);
+                next += intervalNanos;
+            }
+            inFlight.acquire();
+            final FlowKind kind = wheel.get(ThreadLocalRandom.current().nextInt(wheel.size()));
+            workers.execute(() -> {
+                try {
+                    runOne(kind, intervalNanos > 0 ? scheduled : System.nanoTime());
+                } finally {
+                    inFlight.release();
+                }
+            });
+        }
+        workers.shutdown();
+        workers.awaitTermination(5, TimeUnit.MINUTES);
+
+        final double elapsedSeconds = (System.nanoTime() - start) / 1_000_000_000.0;
+        System.out.printf("Completed in %.1fs%n", elapsedSeconds);
+        recorders.values().forEach(it -> System.out.println(it.report(elapsedSeconds)));
+    }
+
+    private void runOne(@NotNull FlowKind kind, long startNanos) {
+        final Ticket ticket = kind == FlowKind.BUY ? null : pool.poll();
+        // Transfers and exits need a ticket bought earlier in the run; buy one instead while the pool is empty.
+        if (ticket == null || (kind == FlowKind.TRANSFER && spectators.size() < 2)) {
+            if (ticket != null) pool.add(ticket);
+            runBuy(startNanos);
+        } else if (kind == FlowKind.TRANSFER) {
+            runTransfer(ticket, startNanos);
+        } else {
+            runExit(ticket, startNanos);
+        }
+    }
+
+    private void runBuy(long startNanos) {
+        final int holder = ThreadLocalRandom.current().nextInt(spectators.size());
+        try {
+            final SignedTransaction stx = issuer.startFlowDynamic(BuyInitiator.class,
+                    spectatorParties.get(holder), config.section).getReturnValue().get();
+            recorders.get(FlowKind.BUY).success(System.nanoTime() - startNanos);
+            final TicketState ticket = stx.getTx().outputsOfType(TicketState.class).get(0);
+            pool.add(new Ticket(ticket.getLinearId(), holder));
+        } catch (Exception e) {
+            recorders.get(FlowKind.BUY).failure();
+        }
+    }
+
+    private void runTransfer(@NotNull Ticket ticket, long startNanos) {
+        int newHolder = ThreadLocalRandom.current().nextInt(spectators.size() - 1);
+        if (newHolder >= ticket.holder) newHolder++;
+        try {
+            spectators.get(ticket.holder).startFlowDynamic(TransferInitiator.class,
+                    ticket.linearId, spectatorParties.get(newHolder)).getReturnValue().get();
+            recorders.get(FlowKind.TRANSFER).success(System.nanoTime() - startNanos);
+            pool.add(new Ticket(ticket.linearId, newHolder));
+        } catch (Exception e) {
+            recorders.get(FlowKind.TRANSFER).failure();
+        }
+    }
+
+    private void runExit(@NotNull Ticket ticket, long startNanos) {
+        try {
+            spectators.get(ticket.holder).startFlowDynamic(ExitInitiator.class, ticket.linearId)
+                    .getReturnValue().get();
+            recorders.get(FlowKind.EXIT).success(System.nanoTime() - startNanos);
+        } catch (Exception e) {
+            recorders.get(FlowKind.EXIT).failure();
+        }
+    }
+
+    private static final class Ticket {
+        @NotNull
+        private final UniqueIdentifier linearId;
+        private final int holder;
+
+        private Ticket(@NotNull UniqueIdentifier linearId, int holder) {
+            this.linearId = linearId;
+            this.holder = holder;
+        }
+    }
+}
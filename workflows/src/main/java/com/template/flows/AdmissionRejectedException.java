@@ -0,0 +1,39 @@
+package com.template.flows;
+
+import net.corda.core.flows.FlowException;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A buy {@link AdmissionService} turned away before it started, with how long the caller should wait before trying
+ * again.
+ */
+public class AdmissionRejectedException extends FlowException {
+
+    @NotNull
+    private final String reason;
+    private final long retryAfterMillis;
+
+    /**
+     * @param reason why the buy was turned away. The retry-after hint is only added by {@link #getMessage()}, so an
+     *               exception rebuilt from its properties after crossing RPC doesn't repeat it.
+     */
+    public AdmissionRejectedException(@NotNull String reason, long retryAfterMillis) {
+        super(reason);
+        this.reason = reason;
+        this.retryAfterMillis = retryAfterMillis;
+    }
+
+    @NotNull
+    public String getReason() {
+        return reason;
+    }
+
+    public long getRetryAfterMillis() {
+        return retryAfterMillis;
+    }
+
+    @Override
+    public String getMessage() {
+        return reason + ", retry after " + retryAfterMillis + " ms";
+    }
+}
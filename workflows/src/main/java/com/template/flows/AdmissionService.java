@@ -0,0 +1,318 @@
+package com.template.flows;
+
+import net.corda.core.cordapp.CordappConfig;
+import net.corda.core.flows.FlowExternalAsyncOperation;
+import net.corda.core.flows.StateMachineRunId;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.identity.Party;
+import net.corda.core.node.AppServiceHub;
+import net.corda.core.node.services.CordaService;
+import net.corda.core.serialization.SingletonSerializeAsToken;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Admission control in front of {@link BuyFlows.BuyInitiator} and {@link BuyFlows.BulkBuyInitiator}, so a flash sale
+ * queues at the issuer instead of flooding its state machine, checkpoint store and notary. A buy is turned away at
+ * once, with a retry-after hint, when its spectator is over {@code admissionSpectatorRatePerSecond}, when
+ * {@code admissionQueueSize} (10000 by default) buys are already waiting, or when its section has no inventory left
+ * for it. Admitted buys wait in a queue that takes each spectator in turn, and are released at
+ * {@code admissionRatePerSecond} with at most {@code admissionMaxInFlight} running at once; the latter keeps the
+ * release rate to what the notary sustains, as a slot only frees up when a buy finishes. Limits that aren't configured
+ * don't apply.
+ *
+ * A bulk buy is admitted as one entry weighted by its tickets: each ticket counts against its spectator's rate and its
+ * section's inventory, and the batch takes a release token per ticket but a single running slot, as it is one
+ * transaction. It waits in the turn of its first order's spectator.
+ *
+ * The queue is in memory only: after a restart a buy still waiting is released straight away.
+ */
+@CordaService
+public class AdmissionService extends SingletonSerializeAsToken {
+
+    public static final String RATE_KEY = "admissionRatePerSecond";
+    public static final String MAX_IN_FLIGHT_KEY = "admissionMaxInFlight";
+    public static final String SPECTATOR_RATE_KEY = "admissionSpectatorRatePerSecond";
+    public static final String QUEUE_SIZE_KEY = "admissionQueueSize";
+    public static final String SOLD_OUT_RETRY_KEY = "admissionSoldOutRetrySeconds";
+    private static final int DEFAULT_QUEUE_SIZE = 10_000;
+    private static final long DEFAULT_SOLD_OUT_RETRY_SECONDS = 30;
+    // How long a section's remaining inventory is trusted before the vault is asked again.
+    private static final long REMAINING_TTL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    @NotNull
+    private final AppServiceHub serviceHub;
+    private final double rate;
+    private final double spectatorRate;
+    private final int maxInFlight;
+    private final int queueSize;
+    private final long soldOutRetryMillis;
+    @Nullable
+    private final TokenBucket releases;
+    @NotNull
+    private final Map<CordaX500Name, TokenBucket> spectatorBuckets = new ConcurrentHashMap<>();
+    @NotNull
+    private final Map<Integer, Remaining> remaining = new ConcurrentHashMap<>();
+    @NotNull
+    private final Map<Integer, AtomicInteger> pending = new ConcurrentHashMap<>();
+    @NotNull
+    private final ScheduledExecutorService releaser = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "admission-releaser");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Guarded by this: the buys entered, the waiting ones per spectator in turn order, and the running count.
+    @NotNull
+    private final Map<StateMachineRunId, Admission> admissions = new HashMap<>();
+    @NotNull
+    private final LinkedHashMap<CordaX500Name, ArrayDeque<Admission>> waiting = new LinkedHashMap<>();
+    private int queued;
+    private int running;
+    private boolean releaseScheduled;
+
+    public AdmissionService(@NotNull AppServiceHub serviceHub) {
+        this.serviceHub = serviceHub;
+        final CordappConfig config = serviceHub.getAppContext().getConfig();
+        this.rate = config.exists(RATE_KEY) ? config.getDouble(RATE_KEY) : 0;
+        this.releases = rate > 0 ? new TokenBucket(rate, Math.max(1, rate)) : null;
+        this.spectatorRate = config.exists(SPECTATOR_RATE_KEY) ? config.getDouble(SPECTATOR_RATE_KEY) : 0;
+        this.maxInFlight = config.exists(MAX_IN_FLIGHT_KEY) ? config.getInt(MAX_IN_FLIGHT_KEY) : 0;
+        this.queueSize = config.exists(QUEUE_SIZE_KEY) ? config.getInt(QUEUE_SIZE_KEY) : DEFAULT_QUEUE_SIZE;
+        this.soldOutRetryMillis = TimeUnit.SECONDS.toMillis(config.exists(SOLD_OUT_RETRY_KEY)
+                ? config.getLong(SOLD_OUT_RETRY_KEY) : DEFAULT_SOLD_OUT_RETRY_SECONDS);
+    }
+
+    /**
+     * Admits a buy of {@code section} from {@code issuer} for {@code spectator} into the queue. Entering again with the
+     * same {@code runId}, as a flow replayed from its checkpoint does, keeps its place.
+     *
+     * @throws AdmissionRejectedException if the buy is turned away.
+     */
+    public void enter(@NotNull StateMachineRunId runId, @NotNull Party spectator, @NotNull Party issuer, int section)
+            throws AdmissionRejectedException {
+        enter(runId, issuer, Collections.singletonList(new BuyFlows.TicketOrder(spectator, section)));
+    }
+
+    /**
+     * Admits a bulk buy of {@code orders} from {@code issuer} into the queue, as one entry weighted by its tickets.
+     * Entering again with the same {@code runId} keeps its place.
+     *
+     * @throws AdmissionRejectedException if the buy is turned away.
+     */
+    public void enter(@NotNull StateMachineRunId runId, @NotNull Party issuer,
+                      @NotNull List<BuyFlows.TicketOrder> orders) throws AdmissionRejectedException {
+        synchronized (this) {
+            if (admissions.containsKey(runId)) return;
+        }
+        final Map<CordaX500Name, Integer> bySpectator = new LinkedHashMap<>();
+        final Map<Integer, Integer> bySection = new LinkedHashMap<>();
+        for (BuyFlows.TicketOrder order : orders) {
+            bySpectator.merge(order.getSpectator().getName(), 1, Integer::sum);
+            bySection.merge(order.getSection(), 1, Integer::sum);
+        }
+        if (spectatorRate > 0) {
+            for (Map.Entry<CordaX500Name, Integer> entry : bySpectator.entrySet()) {
+                final TokenBucket bucket = spectatorBuckets.computeIfAbsent(entry.getKey(),
+                        it -> new TokenBucket(spectatorRate, Math.max(1, spectatorRate)));
+                if (!bucket.tryAcquire(entry.getValue())) {
+                    throw new AdmissionRejectedException("Too many buys for " + entry.getKey(),
+                            TimeUnit.NANOSECONDS.toMillis(bucket.nanosUntilAvailable(entry.getValue())) + 1);
+                }
+            }
+        }
+        for (Map.Entry<Integer, Integer> entry : bySection.entrySet()) {
+            final int section = entry.getKey();
+            final AtomicInteger sectionPending = pending.computeIfAbsent(section, it -> new AtomicInteger());
+            final int left = remaining(issuer, section) - sectionPending.get();
+            if (left < entry.getValue()) {
+                throw new AdmissionRejectedException(left <= 0 ? "Section " + section + " is sold out"
+                        : "Section " + section + " has only " + left + " tickets left", soldOutRetryMillis);
+            }
+        }
+        synchronized (this) {
+            if (queued >= queueSize) {
+                throw new AdmissionRejectedException(queued + " buys are already waiting", retryAfterMillis());
+            }
+            final Admission admission = new Admission(orders.get(0).getSpectator().getName(), bySection,
+                    orders.size());
+            admissions.put(runId, admission);
+            waiting.computeIfAbsent(admission.spectator, it -> new ArrayDeque<>()).addLast(admission);
+            queued++;
+            bySection.forEach((section, count) -> pending.get(section).addAndGet(count));
+        }
+        release();
+    }
+
+    /**
+     * The operation a buy awaits after {@link #enter}; it completes once the buy is released from the queue.
+     */
+    @NotNull
+    public FlowExternalAsyncOperation<Boolean> turn(@NotNull StateMachineRunId runId) {
+        return new Turn(this, runId);
+    }
+
+    /**
+     * Tells that the buy of {@code runId} recorded its inventory draw, so its tickets are no longer pending: the
+     * remaining inventory read from the vault counts them from now on.
+     */
+    public void drawn(@NotNull StateMachineRunId runId) {
+        synchronized (this) {
+            final Admission admission = admissions.get(runId);
+            if (admission == null || admission.drawn) return;
+            admission.drawn = true;
+            admission.sections.forEach((section, count) -> {
+                pending.get(section).addAndGet(-count);
+                remaining.remove(section);
+            });
+        }
+    }
+
+    /**
+     * Ends the buy of {@code runId}, successfully or not, freeing its slot for the next one.
+     */
+    public void leave(@NotNull StateMachineRunId runId) {
+        synchronized (this) {
+            final Admission admission = admissions.remove(runId);
+            if (admission == null) return;
+            if (!admission.drawn) {
+                admission.sections.forEach((section, count) -> pending.get(section).addAndGet(-count));
+            }
+            if (admission.released) {
+                running--;
+            } else {
+                final ArrayDeque<Admission> queue = waiting.get(admission.spectator);
+                queue.remove(admission);
+                if (queue.isEmpty()) waiting.remove(admission.spectator);
+                queued--;
+            }
+        }
+        release();
+    }
+
+    @NotNull
+    private CompletableFuture<Boolean> future(@NotNull StateMachineRunId runId) {
+        synchronized (this) {
+            final Admission admission = admissions.get(runId);
+            if (admission != null) return admission.turn;
+        }
+        return CompletableFuture.completedFuture(true);
+    }
+
+    /**
+     * Releases as many waiting buys as the rate and the running slots allow, taking each spectator in turn, and
+     * schedules itself for when the next token is due.
+     */
+    private void release() {
+        final List<CompletableFuture<Boolean>> released = new ArrayList<>();
+        synchronized (this) {
+            while (queued > 0 && (maxInFlight <= 0 || running < maxInFlight)) {
+                final CordaX500Name spectator = waiting.keySet().iterator().next();
+                final ArrayDeque<Admission> queue = waiting.get(spectator);
+                final Admission next = queue.getFirst();
+                if (releases != null && !releases.tryAcquire(next.weight)) {
+                    if (!releaseScheduled) {
+                        releaseScheduled = true;
+                        releaser.schedule(() -> {
+                            synchronized (this) {
+                                releaseScheduled = false;
+                            }
+                            release();
+                        }, releases.nanosUntilAvailable(next.weight), TimeUnit.NANOSECONDS);
+                    }
+                    break;
+                }
+                waiting.remove(spectator);
+                queue.removeFirst();
+                next.released = true;
+                released.add(next.turn);
+                // To the back of the turn order, behind every other spectator waiting.
+                if (!queue.isEmpty()) waiting.put(spectator, queue);
+                queued--;
+                running++;
+            }
+        }
+        // Completed outside the lock, the flow it wakes may call straight back in.
+        released.forEach(it -> it.complete(true));
+    }
+
+    /**
+     * About how long the queue takes to drain at the release rate.
+     */
+    private synchronized long retryAfterMillis() {
+        return rate > 0 ? (long) Math.ceil(1_000 * queued / rate) : 1_000;
+    }
+
+    private int remaining(@NotNull Party issuer, int section) {
+        final long now = System.nanoTime();
+        final Remaining cached = remaining.get(section);
+        if (cached != null && now - cached.readAt < REMAINING_TTL_NANOS) return cached.count;
+        final Remaining read = new Remaining(InventoryShards.remaining(serviceHub, issuer, section), now);
+        remaining.put(section, read);
+        return read.count;
+    }
+
+    private static final class Admission {
+        @NotNull
+        private final CordaX500Name spectator;
+        // The tickets bought per section.
+        @NotNull
+        private final Map<Integer, Integer> sections;
+        // The release tokens the buy takes, one per ticket.
+        private final int weight;
+        @NotNull
+        private final CompletableFuture<Boolean> turn = new CompletableFuture<>();
+        // Set under the service's lock when the buy leaves the queue, ahead of its turn completing.
+        private boolean released;
+        // Set under the service's lock once the buy's inventory draw is recorded.
+        private boolean drawn;
+
+        private Admission(@NotNull CordaX500Name spectator, @NotNull Map<Integer, Integer> sections, int weight) {
+            this.spectator = spectator;
+            this.sections = sections;
+            this.weight = weight;
+        }
+    }
+
+    private static final class Remaining {
+        private final int count;
+        private final long readAt;
+
+        private Remaining(int count, long readAt) {
+            this.count = count;
+            this.readAt = readAt;
+        }
+    }
+
+    private static final class Turn implements FlowExternalAsyncOperation<Boolean> {
+        @NotNull
+        private final AdmissionService service;
+        @NotNull
+        private final StateMachineRunId runId;
+
+        private Turn(@NotNull AdmissionService service, @NotNull StateMachineRunId runId) {
+            this.service = service;
+            this.runId = runId;
+        }
+
+        @NotNull
+        @Override
+        public CompletableFuture<Boolean> execute(@NotNull String deduplicationId) {
+            return service.future(runId);
+        }
+    }
+}
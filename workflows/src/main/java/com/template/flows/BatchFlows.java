@@ -0,0 +1,348 @@
+package com.template.flows;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.template.contracts.TicketContract;
+import com.template.contracts.TicketContract.Commands.Exit;
+import com.template.contracts.TicketContract.Commands.Transfer;
+import com.template.states.TicketState;
+import net.corda.core.contracts.Command;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.StateRef;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.flows.*;
+import net.corda.core.identity.Party;
+import net.corda.core.node.services.StatesNotAvailableException;
+import net.corda.core.serialization.CordaSerializable;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.core.transactions.TransactionBuilder;
+import net.corda.core.utilities.NonEmptySet;
+import net.corda.core.utilities.ProgressTracker;
+import net.corda.core.utilities.ProgressTracker.Step;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.security.PublicKey;
+import java.security.SignatureException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static net.corda.core.contracts.ContractsDSL.requireThat;
+
+/**
+ * Transfers and exits many tickets in as few transactions as possible. The contract checks every ticket against the
+ * rules of its own command, so operations with different signers share a transaction; what splits them is the
+ * notary of each ticket and {@code batchMaxOperations} (100 by default), which bounds the size of a transaction.
+ */
+public interface BatchFlows {
+
+    /**
+     * Transfers the ticket with {@code linearId} to {@code newOwner}, or exits it if there is none.
+     */
+    @CordaSerializable
+    class TicketOperation {
+        @NotNull
+        private final UniqueIdentifier linearId;
+        @Nullable
+        private final Party newOwner;
+
+        public TicketOperation(@NotNull UniqueIdentifier linearId, @Nullable Party newOwner) {
+            this.linearId = linearId;
+            this.newOwner = newOwner;
+        }
+
+        @NotNull
+        public static TicketOperation transfer(@NotNull UniqueIdentifier linearId, @NotNull Party newOwner) {
+            return new TicketOperation(linearId, newOwner);
+        }
+
+        @NotNull
+        public static TicketOperation exit(@NotNull UniqueIdentifier linearId) {
+            return new TicketOperation(linearId, null);
+        }
+
+        @NotNull
+        public UniqueIdentifier getLinearId() {
+            return linearId;
+        }
+
+        @Nullable
+        public Party getNewOwner() {
+            return newOwner;
+        }
+    }
+
+    @InitiatingFlow
+    @StartableByRPC
+    class BatchInitiator extends FlowLogic<List<SignedTransaction>> {
+        @NotNull
+        private final List<TicketOperation> operations;
+        @NotNull
+        private final ProgressTracker progressTracker;
+        @NotNull
+        private final FlowTimer timer;
+        private final static Step GENERATING_TRANSACTION = new Step(
+                "Generating transaction based on parameters.");
+        private final static Step VERIFYING_TRANSACTION = new Step(
+                "Verifying contract constraints.");
+        private final static Step SIGNING_TRANSACTION = new Step(
+                "Signing transaction with our private key.");
+        private final static Step GATHERING_SIGNS = new Step(
+                "Gathering the counter parties' signatures.");
+        private final static Step FINALISING_TRANSACTION = new Step(
+                "Obtaining notary signature and recording transaction.");
+
+        @NotNull
+        public static ProgressTracker tracker() {
+            return new ProgressTracker(GENERATING_TRANSACTION, VERIFYING_TRANSACTION, SIGNING_TRANSACTION,
+                    GATHERING_SIGNS, FINALISING_TRANSACTION);
+        }
+
+        public static final String MAX_OPERATIONS_KEY = "batchMaxOperations";
+        private static final int DEFAULT_MAX_OPERATIONS = 100;
+
+        public BatchInitiator(@NotNull List<TicketOperation> operations) {
+            this.operations = operations;
+            this.progressTracker = tracker();
+            this.timer = new FlowTimer(this, this.progressTracker);
+        }
+
+        @Override
+        @NotNull
+        public ProgressTracker getProgressTracker() {
+            return progressTracker;
+        }
+
+        /**
+         * @return the transactions recorded, one for each notary and chunk of operations.
+         */
+        @Suspendable
+        @Override
+        public List<SignedTransaction> call() throws FlowException {
+            try {
+                final List<SignedTransaction> result = batch();
+                timer.success();
+                return result;
+            } catch (FlowException | RuntimeException e) {
+                timer.failure(e);
+                throw e;
+            }
+        }
+
+        @Suspendable
+        private List<SignedTransaction> batch() throws FlowException {
+            timer.step(GENERATING_TRANSACTION);
+            final TicketIndexService index = getServiceHub().cordaService(TicketIndexService.class);
+            final Map<Party, List<StateAndRef<TicketState>>> inputsByNotary = new LinkedHashMap<>();
+            final Map<UniqueIdentifier, TicketOperation> operationsById = new LinkedHashMap<>();
+            for (TicketOperation operation : operations) {
+                final UniqueIdentifier linearId = operation.getLinearId();
+                if (operationsById.put(linearId, operation) != null) {
+                    throw new FlowException("Ticket " + linearId + " is operated on more than once");
+                }
+                final StateAndRef<TicketState> input = index.resolveUnconsumed(linearId);
+                if (input == null) throw new FlowException("No unconsumed ticket with linear id " + linearId);
+                if (!signers(input.getState().getData(), operation.getNewOwner()).contains(getOurIdentity())) {
+                    throw new FlowException("We can't sign for ticket " + linearId);
+                }
+                inputsByNotary.computeIfAbsent(input.getState().getNotary(), it -> new ArrayList<>()).add(input);
+            }
+            if (operationsById.isEmpty()) return new ArrayList<>();
+
+            // Held until the flow ends, so no other flow on this node builds on the tickets meanwhile.
+            try {
+                getServiceHub().getVaultService().softLockReserve(getRunId().getUuid(), NonEmptySet.copyOf(
+                        inputsByNotary.values().stream().flatMap(List::stream)
+                                .map(StateAndRef::getRef).collect(Collectors.<StateRef>toList())));
+            } catch (StatesNotAvailableException e) {
+                throw new FlowException("Some of the tickets are spent or held by another flow", e);
+            }
+
+            final int maxOperations = maxOperations();
+            final List<SignedTransaction> recorded = new ArrayList<>();
+            for (Map.Entry<Party, List<StateAndRef<TicketState>>> entry : inputsByNotary.entrySet()) {
+                final List<StateAndRef<TicketState>> inputs = entry.getValue();
+                for (int from = 0; from < inputs.size(); from += maxOperations) {
+                    recorded.add(record(entry.getKey(),
+                            inputs.subList(from, Math.min(from + maxOperations, inputs.size())), operationsById));
+                }
+            }
+            return recorded;
+        }
+
+        @Suspendable
+        private SignedTransaction record(@NotNull Party notary, @NotNull List<StateAndRef<TicketState>> inputs,
+                                         @NotNull Map<UniqueIdentifier, TicketOperation> operationsById)
+                throws FlowException {
+            timer.step(GENERATING_TRANSACTION);
+            final TransactionBuilder txBuilder = new TransactionBuilder(notary);
+            final List<TicketState> consumed = new ArrayList<>();
+            final List<TicketState> produced = new ArrayList<>();
+            final Set<PublicKey> transferSigners = new LinkedHashSet<>();
+            final Set<PublicKey> exitSigners = new LinkedHashSet<>();
+            final Set<Party> signers = new LinkedHashSet<>();
+            final Set<Party> parties = new LinkedHashSet<>();
+            for (StateAndRef<TicketState> input : inputs) {
+                final TicketState inputState = input.getState().getData();
+                final Party newOwner = operationsById.get(inputState.getLinearId()).getNewOwner();
+                final List<Party> required = signers(inputState, newOwner);
+                txBuilder.addInputState(input);
+                consumed.add(inputState);
+                if (newOwner == null) {
+                    required.forEach(it -> exitSigners.add(it.getOwningKey()));
+                } else {
+                    final TicketState outputState = inputState.transferTo(newOwner);
+                    txBuilder.addOutputState(outputState, TicketContract.ID);
+                    produced.add(outputState);
+                    required.forEach(it -> transferSigners.add(it.getOwningKey()));
+                    parties.add(inputState.getIssuer());
+                }
+                signers.addAll(required);
+                parties.addAll(required);
+            }
+            if (!transferSigners.isEmpty()) {
+                txBuilder.addCommand(new Command<>(new Transfer(), new ArrayList<>(transferSigners)));
+            }
+            if (!exitSigners.isEmpty()) {
+                txBuilder.addCommand(new Command<>(new Exit(), new ArrayList<>(exitSigners)));
+            }
+
+            timer.step(VERIFYING_TRANSACTION);
+            txBuilder.verify(getServiceHub());
+
+            timer.step(SIGNING_TRANSACTION);
+            final SignedTransaction partlySignedTx = getServiceHub().signInitialTransaction(txBuilder);
+
+            timer.step(GATHERING_SIGNS);
+            final List<FlowSession> sessions = new ArrayList<>();
+            final List<FlowSession> signerSessions = new ArrayList<>();
+            for (Party party : parties) {
+                if (party.equals(getOurIdentity())) continue;
+                final FlowSession session = initiateFlow(party);
+                final boolean signatureRequested = signers.contains(party);
+                session.send(TicketProposal.forParty(party, consumed, produced, signatureRequested));
+                sessions.add(session);
+                if (signatureRequested) signerSessions.add(session);
+            }
+            final SignedTransaction fullySignedTx = subFlow(new CollectSignaturesFlow(partlySignedTx,
+                    signerSessions, CollectSignaturesFlow.Companion.tracker()));
+
+            timer.step(FINALISING_TRANSACTION);
+            return subFlow(new FinalityFlow(fullySignedTx, sessions, FinalityFlow.Companion.tracker()));
+        }
+
+        /**
+         * Who has to sign for a ticket: its holder and the new one for a transfer, its holder and issuer for an exit.
+         */
+        @NotNull
+        private static List<Party> signers(@NotNull TicketState ticket, @Nullable Party newOwner) {
+            return newOwner == null
+                    ? Arrays.asList(ticket.getIssuer(), ticket.getSpectator())
+                    : Arrays.asList(ticket.getSpectator(), newOwner);
+        }
+
+        private int maxOperations() {
+            final int configured = getServiceHub().getAppContext().getConfig().exists(MAX_OPERATIONS_KEY)
+                    ? getServiceHub().getAppContext().getConfig().getInt(MAX_OPERATIONS_KEY)
+                    : DEFAULT_MAX_OPERATIONS;
+            return Math.max(1, configured);
+        }
+    }
+
+    @InitiatedBy(BatchInitiator.class)
+    class BatchResponder extends FlowLogic<SignedTransaction> {
+        @NotNull
+        private final FlowSession initiatorSession;
+        @NotNull
+        private final ProgressTracker progressTracker;
+        @NotNull
+        private final FlowTimer timer;
+        public final static Step SIGNING_TRANSACTION = new Step("About to sign transaction with our private key.") {
+            @Override
+            public ProgressTracker childProgressTracker() {
+                return SignTransactionFlow.Companion.tracker();
+            }
+        };
+        public final static Step FINALISING_TRANSACTION = new Step("Waiting to record transaction.");
+
+        @NotNull
+        public static ProgressTracker tracker() {
+            return new ProgressTracker(SIGNING_TRANSACTION, FINALISING_TRANSACTION);
+        }
+
+        public BatchResponder(@NotNull FlowSession initiatorSession) {
+            this.initiatorSession = initiatorSession;
+            this.progressTracker = tracker();
+            this.timer = new FlowTimer(this, this.progressTracker);
+        }
+
+        @Override
+        @NotNull
+        public ProgressTracker getProgressTracker() {
+            return progressTracker;
+        }
+
+        @Suspendable
+        @Override
+        public SignedTransaction call() throws FlowException {
+            try {
+                final SignedTransaction result = sign();
+                timer.success();
+                return result;
+            } catch (FlowException | RuntimeException e) {
+                timer.failure(e);
+                throw e;
+            }
+        }
+
+        @Suspendable
+        private SignedTransaction sign() throws FlowException {
+            final TicketProposal proposal = initiatorSession.receive(TicketProposal.class).unwrap(it -> it);
+            if (!proposal.isSignatureRequested()) {
+                // We only issued some of the transferred tickets, and record the transaction. The holders have signed
+                // it already, so the policy doesn't apply: turning it away would only keep it out of our vault.
+                timer.step(FINALISING_TRANSACTION);
+                return subFlow(new ReceiveFinalityFlow(initiatorSession));
+            }
+            final TicketPolicy policy = getServiceHub().cordaService(TicketPolicyService.class).getPolicy();
+            policy.admit(initiatorSession.getCounterparty());
+            policy.check(proposal);
+
+            timer.step(SIGNING_TRANSACTION);
+            final Party me = getOurIdentity();
+
+            class SignTxFlow extends SignTransactionFlow {
+                private SignTxFlow(FlowSession otherSideSession, ProgressTracker progressTracker) {
+                    super(otherSideSession, progressTracker);
+                }
+
+                @Override
+                protected void checkTransaction(@NotNull SignedTransaction stx) throws FlowException {
+                    final TicketProposal signed;
+                    try {
+                        signed = TicketProposal.forParty(me,
+                                stx.toLedgerTransaction(getServiceHub(), false).inputsOfType(TicketState.class),
+                                stx.getTx().outputsOfType(TicketState.class), true);
+                    } catch (SignatureException e) {
+                        throw new FlowException("Unable to resolve the transaction's inputs", e);
+                    }
+                    requireThat(req -> {
+                        req.using("The transaction has to match the proposal", signed.equals(proposal));
+                        return null;
+                    });
+                }
+            }
+            final SignTxFlow signTxFlow = new SignTxFlow(initiatorSession, SignTransactionFlow.Companion.tracker());
+            final SecureHash txId = subFlow(signTxFlow).getId();
+
+            timer.step(FINALISING_TRANSACTION);
+            return subFlow(new ReceiveFinalityFlow(initiatorSession, txId));
+        }
+    }
+}
@@ -6,16 +6,25 @@ import com.template.contracts.TicketContract.Commands.Buy;
 import com.template.states.TicketState;
 import net.corda.core.contracts.Command;
 import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.crypto.SecureHash;
 import net.corda.core.flows.*;
 import net.corda.core.identity.Party;
-import net.corda.core.node.StatesToRecord;
+import net.corda.core.serialization.CordaSerializable;
 import net.corda.core.transactions.SignedTransaction;
 import net.corda.core.transactions.TransactionBuilder;
 import net.corda.core.utilities.ProgressTracker;
 import net.corda.core.utilities.ProgressTracker.Step;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 
 public interface BuyFlows {
@@ -28,9 +37,20 @@ public interface BuyFlows {
         private final Party spectator;
         @NotNull
         private final int section;
+        @Nullable
+        private final String requestId;
+        // Whether this run holds the claim on requestId, and so has to release it if the buy fails.
+        private boolean claimed;
+        // The seat allocated to the ticket, released if the buy fails before the ticket is recorded.
+        @Nullable
+        private Integer seat;
+        @Nullable
+        private SecureHash txId;
 
         @NotNull
         private final ProgressTracker progressTracker;
+        @NotNull
+        private final FlowTimer timer;
         private final static Step GENERATING_TRANSACTION = new Step("Generating transaction based on parameters.");
         private final static Step VERIFYING_TRANSACTION = new Step("Verifying contract constraints.");
         private final static Step SIGNING_TRANSACTION = new Step("Signing transaction with our private key.");
@@ -48,9 +68,19 @@ public interface BuyFlows {
         }
 
         public BuyInitiator(@NotNull Party spectator, int section) {
+            this(spectator, section, null);
+        }
+
+        /**
+         * @param requestId the client's id for this buy; retrying with the same id returns the transaction of the
+         *                  first attempt instead of issuing a second ticket, see {@link BuyRequests}.
+         */
+        public BuyInitiator(@NotNull Party spectator, int section, @Nullable String requestId) {
             this.spectator = spectator;
             this.section = section;
+            this.requestId = requestId;
             this.progressTracker = tracker();
+            this.timer = new FlowTimer(this, this.progressTracker);
         }
 
         @Override
@@ -62,32 +92,73 @@ public interface BuyFlows {
         @Suspendable
         @Override
         public SignedTransaction call() throws FlowException {
+            try {
+                final SignedTransaction result = buy();
+                timer.success();
+                return result;
+            } catch (FlowException | RuntimeException e) {
+                if (claimed) getServiceHub().cordaService(BuyRequestReleaser.class).release(requestId);
+                if (seat != null) {
+                    final SeatAllocatorService seats = getServiceHub().cordaService(SeatAllocatorService.class);
+                    seats.releaseUnlessRecorded(txId, section, seat);
+                    seats.settleLater(getRunId().getUuid());
+                }
+                timer.failure(e);
+                throw e;
+            } finally {
+                getServiceHub().cordaService(AdmissionService.class).leave(getRunId());
+            }
+        }
+
+        @Suspendable
+        private SignedTransaction buy() throws FlowException {
            final Party issuer = getOurIdentity();
 
-           final Party notary = getServiceHub().getNetworkMapCache().getNotaryIdentities().get(0);
+           timer.step(GENERATING_TRANSACTION);
+            IssuerShards.requireIssued(getServiceHub(), this.section);
+            // A retry of a buy that went through is answered at once, without spending an admission token or slot.
+            if (requestId != null) {
+                final SignedTransaction issued = BuyRequests.issued(getServiceHub(), requestId, spectator, section);
+                if (issued != null) return issued;
+            }
+            final AdmissionService admission = getServiceHub().cordaService(AdmissionService.class);
+            admission.enter(getRunId(), this.spectator, issuer, this.section);
+            await(admission.turn(getRunId()));
 
-           progressTracker.setCurrentStep(GENERATING_TRANSACTION);
+            if (requestId != null) {
+                final SignedTransaction issued = BuyRequests.claim(getServiceHub(), requestId, spectator, section);
+                if (issued != null) return issued;
+                claimed = true;
+            }
 
-           final TicketState output = new TicketState(issuer, this.spectator, this.section, new UniqueIdentifier());
+           seat = getServiceHub().cordaService(SeatAllocatorService.class).claim(getRunId().getUuid(), this.section);
+           final TicketState output = new TicketState(issuer, this.spectator, this.section, new UniqueIdentifier())
+                   .withSeat(seat);
 
             final Command<Buy> commandBuy = new Command<>(new Buy(), issuer.getOwningKey());
 
-            final TransactionBuilder txBuilder = new TransactionBuilder(notary)
+            final List<Party> notaries = getServiceHub().cordaService(NotarySelectionService.class)
+                    .preferredNotaries(this.section, output.getLinearId());
+            final TransactionBuilder txBuilder = InventoryShards.draw(getServiceHub(), getRunId().getUuid(), issuer,
+                    Collections.singletonMap(this.section, 1), notaries)
                     .addCommand(commandBuy)
                     .addOutputState(output, TicketContract.ID);
 
-            progressTracker.setCurrentStep(VERIFYING_TRANSACTION);
+            timer.step(VERIFYING_TRANSACTION);
 
             txBuilder.verify(getServiceHub());
 
-            progressTracker.setCurrentStep(SIGNING_TRANSACTION);
+            timer.step(SIGNING_TRANSACTION);
             final SignedTransaction fullySignedTx = getServiceHub().signInitialTransaction(txBuilder);
+            txId = fullySignedTx.getId();
+            if (requestId != null) BuyRequests.link(getServiceHub(), requestId, fullySignedTx.getId());
 
-            progressTracker.setCurrentStep(FINALISING_TRANSACTION);
+            timer.step(FINALISING_TRANSACTION);
             FlowSession spectatorSession = initiateFlow(this.spectator);
-            final SignedTransaction notarised = subFlow(new FinalityFlow(fullySignedTx, Arrays.asList(spectatorSession)));
-            getServiceHub().recordTransactions(StatesToRecord.ALL_VISIBLE, Arrays.asList(notarised));
-            return notarised;
+            final SignedTransaction recorded = subFlow(new FinalityFlow(fullySignedTx, Arrays.asList(spectatorSession)));
+            admission.drawn(getRunId());
+            getServiceHub().cordaService(SeatAllocatorService.class).settle(getRunId().getUuid());
+            return recorded;
         }
     }
 
@@ -96,15 +167,205 @@ public interface BuyFlows {
 
         @NotNull
         private final FlowSession InitiatorSession;
+        @NotNull
+        private final FlowTimer timer;
 
         public BuyResponder(@NotNull FlowSession initiatorSession) {
             InitiatorSession = initiatorSession;
+            this.timer = new FlowTimer(this);
         }
 
         @Suspendable
         @Override
         public SignedTransaction call() throws FlowException {
+            try {
+                final SignedTransaction result = receive();
+                timer.success();
+                return result;
+            } catch (FlowException | RuntimeException e) {
+                timer.failure(e);
+                throw e;
+            }
+        }
+
+        @Suspendable
+        private SignedTransaction receive() throws FlowException {
             return subFlow(new ReceiveFinalityFlow(InitiatorSession));
         }
     }
+
+    /**
+     * One ticket to issue as part of a {@link BulkBuyInitiator} batch.
+     */
+    @CordaSerializable
+    class TicketOrder {
+        @NotNull
+        private final Party spectator;
+        private final int section;
+
+        public TicketOrder(@NotNull Party spectator, int section) {
+            this.spectator = spectator;
+            this.section = section;
+        }
+
+        @NotNull
+        public Party getSpectator() {
+            return spectator;
+        }
+
+        public int getSection() {
+            return section;
+        }
+    }
+
+    /**
+     * Issues every {@link TicketOrder} in a single transaction, so the batch pays for one signature,
+     * one notarisation and one finality round instead of one per ticket. The batch is admitted like a buy of each of
+     * its tickets, see {@link AdmissionService}.
+     */
+    @InitiatingFlow
+    @StartableByRPC
+    class BulkBuyInitiator extends FlowLogic<SignedTransaction> {
+
+        @NotNull
+        private final List<TicketOrder> orders;
+        // The tickets with the seats allocated to them, released if the buy fails before they are recorded.
+        @NotNull
+        private final List<TicketState> seated = new ArrayList<>();
+        @Nullable
+        private SecureHash txId;
+
+        @NotNull
+        private final ProgressTracker progressTracker;
+        @NotNull
+        private final FlowTimer timer;
+        private final static Step GENERATING_TRANSACTION = new Step("Generating transaction based on parameters.");
+        private final static Step VERIFYING_TRANSACTION = new Step("Verifying contract constraints.");
+        private final static Step SIGNING_TRANSACTION = new Step("Signing transaction with our private key.");
+        private final static Step FINALISING_TRANSACTION = new Step(
+                "Obtaining notary signature and recording transaction"){
+            @Override
+            public ProgressTracker childProgressTracker() {
+                return FinalityFlow.Companion.tracker();
+            }
+        };
+
+        @NotNull
+        public static ProgressTracker tracker() {
+            return new ProgressTracker(GENERATING_TRANSACTION, VERIFYING_TRANSACTION, SIGNING_TRANSACTION, FINALISING_TRANSACTION);
+        }
+
+        public BulkBuyInitiator(@NotNull List<TicketOrder> orders) {
+            this.orders = orders;
+            this.progressTracker = tracker();
+            this.timer = new FlowTimer(this, this.progressTracker);
+        }
+
+        @Override
+        @NotNull
+        public ProgressTracker getProgressTracker() {
+            return progressTracker;
+        }
+
+        @Suspendable
+        @Override
+        public SignedTransaction call() throws FlowException {
+            try {
+                final SignedTransaction result = buy();
+                timer.success();
+                return result;
+            } catch (FlowException | RuntimeException e) {
+                final SeatAllocatorService seats = getServiceHub().cordaService(SeatAllocatorService.class);
+                seated.forEach(it -> seats.releaseUnlessRecorded(txId, it.getSection(), it.getSeat()));
+                if (!seated.isEmpty()) seats.settleLater(getRunId().getUuid());
+                timer.failure(e);
+                throw e;
+            } finally {
+                getServiceHub().cordaService(AdmissionService.class).leave(getRunId());
+            }
+        }
+
+        @Suspendable
+        private SignedTransaction buy() throws FlowException {
+            if (orders.isEmpty()) throw new FlowException("At least one ticket order is required");
+            for (TicketOrder order : orders) {
+                IssuerShards.requireIssued(getServiceHub(), order.getSection());
+            }
+
+            final Party issuer = getOurIdentity();
+
+            timer.step(GENERATING_TRANSACTION);
+            final AdmissionService admission = getServiceHub().cordaService(AdmissionService.class);
+            admission.enter(getRunId(), issuer, orders);
+            await(admission.turn(getRunId()));
+
+            final SeatAllocatorService seats = getServiceHub().cordaService(SeatAllocatorService.class);
+            for (TicketOrder order : orders) {
+                seated.add(new TicketState(issuer, order.getSpectator(), order.getSection(), new UniqueIdentifier())
+                        .withSeat(seats.claim(getRunId().getUuid(), order.getSection())));
+            }
+            final List<TicketState> tickets = seated;
+            final Map<Integer, Integer> sold = orders.stream()
+                    .collect(Collectors.groupingBy(TicketOrder::getSection, Collectors.summingInt(it -> 1)));
+
+            final Command<Buy> commandBuy = new Command<>(new Buy(), issuer.getOwningKey());
+            final List<Party> notaries = getServiceHub().cordaService(NotarySelectionService.class)
+                    .preferredNotaries(tickets.get(0).getSection(), tickets.get(0).getLinearId());
+            final TransactionBuilder txBuilder = InventoryShards.draw(getServiceHub(), getRunId().getUuid(), issuer,
+                    sold, notaries)
+                    .addCommand(commandBuy);
+            tickets.forEach(it -> txBuilder.addOutputState(it, TicketContract.ID));
+
+            timer.step(VERIFYING_TRANSACTION);
+            txBuilder.verify(getServiceHub());
+
+            timer.step(SIGNING_TRANSACTION);
+            final SignedTransaction fullySignedTx = getServiceHub().signInitialTransaction(txBuilder);
+            txId = fullySignedTx.getId();
+
+            timer.step(FINALISING_TRANSACTION);
+            final Set<Party> spectators = orders.stream()
+                    .map(TicketOrder::getSpectator)
+                    .collect(Collectors.toCollection(LinkedHashSet::new));
+            final List<FlowSession> spectatorSessions = spectators.stream()
+                    .map(this::initiateFlow)
+                    .collect(Collectors.toList());
+            final SignedTransaction recorded = subFlow(new FinalityFlow(fullySignedTx, spectatorSessions));
+            admission.drawn(getRunId());
+            seats.settle(getRunId().getUuid());
+            return recorded;
+        }
+    }
+
+    @InitiatedBy(BulkBuyInitiator.class)
+    class BulkBuyResponder extends FlowLogic<SignedTransaction> {
+
+        @NotNull
+        private final FlowSession initiatorSession;
+        @NotNull
+        private final FlowTimer timer;
+
+        public BulkBuyResponder(@NotNull FlowSession initiatorSession) {
+            this.initiatorSession = initiatorSession;
+            this.timer = new FlowTimer(this);
+        }
+
+        @Suspendable
+        @Override
+        public SignedTransaction call() throws FlowException {
+            try {
+                final SignedTransaction result = receive();
+                timer.success();
+                return result;
+            } catch (FlowException | RuntimeException e) {
+                timer.failure(e);
+                throw e;
+            }
+        }
+
+        @Suspendable
+        private SignedTransaction receive() throws FlowException {
+            return subFlow(new ReceiveFinalityFlow(initiatorSession));
+        }
+    }
 }
@@ -0,0 +1,46 @@
+package com.template.flows;
+
+import net.corda.core.node.AppServiceHub;
+import net.corda.core.node.services.CordaService;
+import net.corda.core.serialization.SingletonSerializeAsToken;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Releases the {@link BuyRequests} claim of a failed buy in a database transaction of its own. Released from the flow
+ * itself, the delete would be rolled back with the rest of the failing flow's transaction, and every retry would find
+ * the id still in progress until the lease ran out.
+ */
+@CordaService
+public class BuyRequestReleaser extends SingletonSerializeAsToken {
+
+    @NotNull
+    private final AppServiceHub serviceHub;
+    // Off the flow's thread, so the release doesn't join its transaction. A node has no hook to stop its services, so
+    // the thread is a daemon and ends whenever it has been idle for a minute.
+    @NotNull
+    private final ThreadPoolExecutor releaser = new ThreadPoolExecutor(1, 1, 1, TimeUnit.MINUTES,
+            new LinkedBlockingQueue<>(), runnable -> {
+        final Thread thread = new Thread(runnable, "buy-request-releaser");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public BuyRequestReleaser(@NotNull AppServiceHub serviceHub) {
+        this.serviceHub = serviceHub;
+        releaser.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Drops the claim on {@code requestId} once the failing flow's transaction has ended, unless its ticket was
+     * issued regardless.
+     */
+    @NotNull
+    public CompletableFuture<Void> release(@NotNull String requestId) {
+        return CompletableFuture.runAsync(() -> BuyRequests.release(serviceHub, requestId), releaser);
+    }
+}
@@ -0,0 +1,116 @@
+package com.template.flows;
+
+import com.template.schemas.BuyRequestSchemaV1.PersistentBuyRequest;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.flows.FlowException;
+import net.corda.core.identity.Party;
+import net.corda.core.node.ServiceHub;
+import net.corda.core.transactions.SignedTransaction;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * The issuer's record of client request ids, so a buy retried with the same id returns the ticket already issued
+ * instead of issuing another one. A request id is claimed before the buy starts and linked to the transaction once it
+ * is signed; a claim whose buy failed is released by {@link BuyRequestReleaser}. A claim left behind by a buy that
+ * never finished is taken over once it is older than {@code buyRequestLeaseSeconds} (300 by default).
+ */
+public final class BuyRequests {
+
+    public static final String LEASE_KEY = "buyRequestLeaseSeconds";
+    private static final long DEFAULT_LEASE_SECONDS = 300;
+
+    private BuyRequests() {
+    }
+
+    /**
+     * Looks {@code requestId} up without claiming it, so a retry of a buy that already went through is answered before
+     * it is queued for admission.
+     *
+     * @return the transaction already issued for the id, or {@code null} if there is none yet.
+     * @throws FlowException if the id was used for a different order.
+     */
+    @Nullable
+    public static SignedTransaction issued(@NotNull ServiceHub serviceHub, @NotNull String requestId,
+                                           @NotNull Party spectator, int section) throws FlowException {
+        final PersistentBuyRequest existing = serviceHub.withEntityManager(em ->
+                em.find(PersistentBuyRequest.class, requestId));
+        return existing != null ? issued(serviceHub, existing, spectator, section) : null;
+    }
+
+    /**
+     * Claims {@code requestId} for a buy of {@code section} by {@code spectator}.
+     *
+     * @return the transaction already issued for the id, or {@code null} if the caller now holds the claim and
+     * should go ahead with the buy.
+     * @throws FlowException if the id was used for a different order, or its buy is still in progress.
+     */
+    @Nullable
+    public static SignedTransaction claim(@NotNull ServiceHub serviceHub, @NotNull String requestId,
+                                          @NotNull Party spectator, int section) throws FlowException {
+        final Instant now = serviceHub.getClock().instant();
+        final PersistentBuyRequest existing = serviceHub.withEntityManager(em -> {
+            final PersistentBuyRequest found = em.find(PersistentBuyRequest.class, requestId);
+            if (found == null) em.persist(new PersistentBuyRequest(requestId, spectator.getName().toString(), section, now));
+            return found;
+        });
+        if (existing == null) return null;
+
+        final SignedTransaction issued = issued(serviceHub, existing, spectator, section);
+        if (issued != null) return issued;
+        if (Duration.between(existing.getClaimedAt(), now).getSeconds() < lease(serviceHub)) {
+            throw new FlowException("Buy request " + requestId + " is still in progress");
+        }
+        serviceHub.withEntityManager(em -> {
+            final PersistentBuyRequest stale = em.find(PersistentBuyRequest.class, requestId);
+            stale.setTransactionId(null);
+            stale.setClaimedAt(now);
+            em.merge(stale);
+        });
+        return null;
+    }
+
+    /**
+     * Links {@code requestId} to the transaction issuing its ticket.
+     */
+    public static void link(@NotNull ServiceHub serviceHub, @NotNull String requestId, @NotNull SecureHash txId) {
+        serviceHub.withEntityManager(em -> {
+            final PersistentBuyRequest claimed = em.find(PersistentBuyRequest.class, requestId);
+            claimed.setTransactionId(txId.toString());
+            em.merge(claimed);
+        });
+    }
+
+    /**
+     * Drops the claim on {@code requestId} after its buy failed, unless the ticket was issued regardless. Called from
+     * a flow this would join, and be rolled back with, the flow's transaction; see {@link BuyRequestReleaser}.
+     */
+    public static void release(@NotNull ServiceHub serviceHub, @NotNull String requestId) {
+        serviceHub.withEntityManager(em -> {
+            final PersistentBuyRequest claimed = em.find(PersistentBuyRequest.class, requestId);
+            if (claimed == null) return;
+            if (claimed.getTransactionId() != null && serviceHub.getValidatedTransactions()
+                    .getTransaction(SecureHash.parse(claimed.getTransactionId())) != null) return;
+            em.remove(claimed);
+        });
+    }
+
+    @Nullable
+    private static SignedTransaction issued(@NotNull ServiceHub serviceHub, @NotNull PersistentBuyRequest existing,
+                                            @NotNull Party spectator, int section) throws FlowException {
+        if (!existing.getSpectator().equals(spectator.getName().toString()) || existing.getSection() != section) {
+            throw new FlowException("Request id " + existing.getRequestId() + " was used for a different order");
+        }
+        if (existing.getTransactionId() == null) return null;
+        return serviceHub.getValidatedTransactions().getTransaction(SecureHash.parse(existing.getTransactionId()));
+    }
+
+    private static long lease(@NotNull ServiceHub serviceHub) {
+        return serviceHub.getAppContext().getConfig().exists(LEASE_KEY)
+                ? serviceHub.getAppContext().getConfig().getLong(LEASE_KEY)
+                : DEFAULT_LEASE_SECONDS;
+    }
+}
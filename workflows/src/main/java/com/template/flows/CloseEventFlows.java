@@ -0,0 +1,420 @@
+package com.template.flows;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.template.contracts.TicketContract.Commands.Exit;
+import com.template.states.TicketState;
+import net.corda.core.contracts.ContractState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.StateRef;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.crypto.TransactionSignature;
+import net.corda.core.flows.*;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.identity.Party;
+import net.corda.core.node.StatesToRecord;
+import net.corda.core.node.services.Vault;
+import net.corda.core.node.services.vault.PageSpecification;
+import net.corda.core.node.services.vault.QueryCriteria;
+import net.corda.core.serialization.CordaSerializable;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.core.transactions.TransactionBuilder;
+import net.corda.core.utilities.ProgressTracker;
+import net.corda.core.utilities.ProgressTracker.Step;
+import net.corda.core.utilities.UntrustworthyData;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.security.PublicKey;
+import java.security.SignatureException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+/**
+ * Closing an event: the issuer exits every ticket it issued, grouped into one exit transaction per spectator, notary
+ * and at most {@code closeBatchSize} tickets. Spectators are handled {@code closeConcurrency} at a time: the exit
+ * transactions go out to all of them with one {@code sendAll}, their signatures come back with one
+ * {@code receiveAll}, and the notarised transactions are handed back the same way. A spectator that refuses, or
+ * whose tickets conflict at the notary, is reported and doesn't hold up the others.
+ */
+public interface CloseEventFlows {
+
+    String CONCURRENCY_KEY = "closeConcurrency";
+    String BATCH_SIZE_KEY = "closeBatchSize";
+
+    /**
+     * A spectator's answer to its exit transactions: their signatures, or why it refused to sign.
+     */
+    @CordaSerializable
+    class ExitReply {
+        @Nullable
+        private final List<TransactionSignature> signatures;
+        @Nullable
+        private final String rejection;
+
+        public ExitReply(@Nullable List<TransactionSignature> signatures, @Nullable String rejection) {
+            this.signatures = signatures;
+            this.rejection = rejection;
+        }
+
+        @Nullable
+        public List<TransactionSignature> getSignatures() {
+            return signatures;
+        }
+
+        @Nullable
+        public String getRejection() {
+            return rejection;
+        }
+    }
+
+    @CordaSerializable
+    class SpectatorOutcome {
+        @NotNull
+        private final CordaX500Name spectator;
+        private final int exited;
+        private final int failed;
+        @Nullable
+        private final String error;
+
+        public SpectatorOutcome(@NotNull CordaX500Name spectator, int exited, int failed, @Nullable String error) {
+            this.spectator = spectator;
+            this.exited = exited;
+            this.failed = failed;
+            this.error = error;
+        }
+
+        @NotNull
+        public CordaX500Name getSpectator() {
+            return spectator;
+        }
+
+        public int getExited() {
+            return exited;
+        }
+
+        public int getFailed() {
+            return failed;
+        }
+
+        @Nullable
+        public String getError() {
+            return error;
+        }
+    }
+
+    @InitiatingFlow
+    @StartableByRPC
+    class CloseEventInitiator extends FlowLogic<List<SpectatorOutcome>> {
+        private final int section;
+        @NotNull
+        private final ProgressTracker progressTracker;
+        @NotNull
+        private final FlowTimer timer;
+        private final static Step COLLECTING_TICKETS = new Step("Collecting the tickets to exit.");
+        public final static Step GATHERING_SIGNS = new Step("Gathering the spectators' signatures.");
+        public final static Step NOTARISING = new Step("Obtaining notary signatures.");
+        public final static Step DISTRIBUTING = new Step("Sending the exits to the spectators.");
+
+        @NotNull
+        public static ProgressTracker tracker() {
+            return new ProgressTracker(COLLECTING_TICKETS, GATHERING_SIGNS, NOTARISING, DISTRIBUTING);
+        }
+
+        /**
+         * Exits the tickets of every section.
+         */
+        public CloseEventInitiator() {
+            this(0);
+        }
+
+        public CloseEventInitiator(int section) {
+            this.section = section;
+            this.progressTracker = tracker();
+            this.timer = new FlowTimer(this, this.progressTracker);
+        }
+
+        @Override
+        @NotNull
+        public ProgressTracker getProgressTracker() {
+            return progressTracker;
+        }
+
+        /**
+         * @return what happened to each spectator's tickets.
+         */
+        @Suspendable
+        @Override
+        public List<SpectatorOutcome> call() throws FlowException {
+            try {
+                final List<SpectatorOutcome> result = close();
+                timer.success();
+                return result;
+            } catch (FlowException | RuntimeException e) {
+                timer.failure(e);
+                throw e;
+            }
+        }
+
+        @Suspendable
+        private List<SpectatorOutcome> close() throws FlowException {
+            timer.step(COLLECTING_TICKETS);
+            final int concurrency = configInt(CONCURRENCY_KEY, 32);
+            final int batchSize = configInt(BATCH_SIZE_KEY, 100);
+            final Map<Party, List<List<StateRef>>> batches = batchesBySpectator(batchSize);
+            final List<Party> spectators = new ArrayList<>(batches.keySet());
+
+            final List<SpectatorOutcome> outcomes = new ArrayList<>();
+            for (int from = 0; from < spectators.size(); from += concurrency) {
+                final List<Party> window = new ArrayList<>(
+                        spectators.subList(from, Math.min(from + concurrency, spectators.size())));
+                outcomes.addAll(closeWindow(window, batches));
+                getLogger().info("Closed tickets of {} of {} spectators", outcomes.size(), spectators.size());
+            }
+            return outcomes;
+        }
+
+        @Suspendable
+        private List<SpectatorOutcome> closeWindow(@NotNull List<Party> window,
+                                                   @NotNull Map<Party, List<List<StateRef>>> batches)
+                throws FlowException {
+            timer.step(GATHERING_SIGNS);
+            final Map<Party, FlowSession> sessions = new LinkedHashMap<>();
+            final Map<Party, List<SignedTransaction>> proposed = new LinkedHashMap<>();
+            final Map<FlowSession, Object> payloads = new LinkedHashMap<>();
+            for (Party spectator : window) {
+                final List<SignedTransaction> txs = new ArrayList<>();
+                for (List<StateRef> batch : batches.get(spectator)) txs.add(buildExit(spectator, batch));
+                final FlowSession session = initiateFlow(spectator);
+                sessions.put(spectator, session);
+                proposed.put(spectator, txs);
+                payloads.put(session, txs);
+            }
+            sendAllMap(payloads);
+            final List<FlowSession> sessionList = new ArrayList<>(sessions.values());
+            final List<ExitReply> replies = new ArrayList<>();
+            for (UntrustworthyData<ExitReply> reply : receiveAll(ExitReply.class, sessionList)) {
+                replies.add(reply.unwrap(it -> it));
+            }
+
+            final Map<Party, String> errors = new LinkedHashMap<>();
+            // Spectators that signed wait for the notarised exits, even if none of theirs made it.
+            final List<Party> signers = new ArrayList<>();
+            final Map<Party, List<SignedTransaction>> signed = new LinkedHashMap<>();
+            for (int i = 0; i < window.size(); i++) {
+                final Party spectator = window.get(i);
+                final ExitReply reply = replies.get(i);
+                if (reply.getRejection() != null || reply.getSignatures() == null) {
+                    errors.put(spectator, reply.getRejection() != null ? reply.getRejection() : "Signatures missing");
+                    continue;
+                }
+                signers.add(spectator);
+                if (reply.getSignatures().size() != proposed.get(spectator).size()) {
+                    errors.put(spectator, "Signatures missing");
+                    continue;
+                }
+                try {
+                    final List<SignedTransaction> txs = new ArrayList<>();
+                    for (int t = 0; t < reply.getSignatures().size(); t++) {
+                        final SignedTransaction stx = proposed.get(spectator).get(t)
+                                .withAdditionalSignature(reply.getSignatures().get(t));
+                        stx.verifySignaturesExcept(stx.getNotary().getOwningKey());
+                        txs.add(stx);
+                    }
+                    signed.put(spectator, txs);
+                } catch (SignatureException e) {
+                    errors.put(spectator, "Invalid signature: " + e.getMessage());
+                }
+            }
+
+            timer.step(NOTARISING);
+            final Map<Party, List<SignedTransaction>> notarised = new LinkedHashMap<>();
+            for (Map.Entry<Party, List<SignedTransaction>> entry : signed.entrySet()) {
+                final List<SignedTransaction> done = new ArrayList<>();
+                for (SignedTransaction stx : entry.getValue()) {
+                    try {
+                        final SignedTransaction notarisedTx = stx.withAdditionalSignatures(
+                                subFlow(new NotaryFlow.Client(stx)));
+                        getServiceHub().recordTransactions(StatesToRecord.ONLY_RELEVANT,
+                                Collections.singletonList(notarisedTx));
+                        done.add(notarisedTx);
+                    } catch (NotaryException e) {
+                        errors.putIfAbsent(entry.getKey(), e.getMessage());
+                    }
+                }
+                notarised.put(entry.getKey(), done);
+            }
+
+            timer.step(DISTRIBUTING);
+            final Map<FlowSession, Object> results = new LinkedHashMap<>();
+            signers.forEach(spectator -> results.put(sessions.get(spectator),
+                    notarised.getOrDefault(spectator, Collections.emptyList())));
+            if (!results.isEmpty()) sendAllMap(results);
+
+            final List<SpectatorOutcome> outcomes = new ArrayList<>();
+            for (Party spectator : window) {
+                final int total = batches.get(spectator).stream().mapToInt(List::size).sum();
+                final int exited = notarised.getOrDefault(spectator, Collections.emptyList()).stream()
+                        .mapToInt(it -> it.getInputs().size()).sum();
+                outcomes.add(new SpectatorOutcome(spectator.getName(), exited, total - exited, errors.get(spectator)));
+            }
+            return outcomes;
+        }
+
+        @NotNull
+        private SignedTransaction buildExit(@NotNull Party spectator, @NotNull List<StateRef> batch)
+                throws FlowException {
+            final List<PublicKey> signers = Arrays.asList(getOurIdentity().getOwningKey(), spectator.getOwningKey());
+            TransactionBuilder builder = null;
+            for (StateRef ref : batch) {
+                final StateAndRef<ContractState> input = getServiceHub().toStateAndRef(ref);
+                if (builder == null) builder = new TransactionBuilder(input.getState().getNotary());
+                builder.addInputState(input);
+            }
+            if (builder == null) throw new IllegalArgumentException("A batch can't be empty");
+            builder.addCommand(new Exit(), signers);
+            builder.verify(getServiceHub());
+            return getServiceHub().signInitialTransaction(builder);
+        }
+
+        /**
+         * Our unconsumed tickets, in batches of at most {@code batchSize} sharing a spectator and a notary.
+         */
+        @NotNull
+        private Map<Party, List<List<StateRef>>> batchesBySpectator(int batchSize) {
+            QueryCriteria ours = TicketQueries.byIssuer(getOurIdentity());
+            if (section != 0) ours = ours.and(TicketQueries.bySection(section));
+            final Map<Party, Map<Party, List<StateRef>>> grouped = new LinkedHashMap<>();
+            UUID after = null;
+            while (true) {
+                final Vault.Page<TicketState> page = getServiceHub().getVaultService().queryBy(TicketState.class,
+                        TicketQueries.unconsumedAfter(after).and(ours), new PageSpecification(1, 1_000),
+                        TicketQueries.linearIdOrder());
+                for (StateAndRef<TicketState> state : page.getStates()) {
+                    grouped.computeIfAbsent(state.getState().getData().getSpectator(), it -> new LinkedHashMap<>())
+                            .computeIfAbsent(state.getState().getNotary(), it -> new ArrayList<>())
+                            .add(state.getRef());
+                }
+                if (page.getStates().size() < 1_000) break;
+                after = page.getStates().get(page.getStates().size() - 1).getState().getData().getLinearId().getId();
+            }
+
+            final Map<Party, List<List<StateRef>>> batches = new LinkedHashMap<>();
+            grouped.forEach((spectator, byNotary) -> byNotary.values().forEach(refs -> {
+                for (int from = 0; from < refs.size(); from += batchSize) {
+                    batches.computeIfAbsent(spectator, it -> new ArrayList<>())
+                            .add(new ArrayList<>(refs.subList(from, Math.min(from + batchSize, refs.size()))));
+                }
+            }));
+            return batches;
+        }
+
+        private int configInt(@NotNull String key, int defaultValue) {
+            return getServiceHub().getAppContext().getConfig().exists(key)
+                    ? getServiceHub().getAppContext().getConfig().getInt(key)
+                    : defaultValue;
+        }
+    }
+
+    @InitiatedBy(CloseEventInitiator.class)
+    class CloseEventResponder extends FlowLogic<Void> {
+        @NotNull
+        private final FlowSession issuerSession;
+        @NotNull
+        private final FlowTimer timer;
+
+        public CloseEventResponder(@NotNull FlowSession issuerSession) {
+            this.issuerSession = issuerSession;
+            this.timer = new FlowTimer(this);
+        }
+
+        @Suspendable
+        @Override
+        public Void call() throws FlowException {
+            try {
+                respond();
+                timer.success();
+                return null;
+            } catch (FlowException | RuntimeException e) {
+                timer.failure(e);
+                throw e;
+            }
+        }
+
+        @Suspendable
+        private void respond() throws FlowException {
+            final List<SignedTransaction> proposed = receiveTransactions();
+            final List<TransactionSignature> signatures = new ArrayList<>();
+            try {
+                getServiceHub().cordaService(TicketPolicyService.class).getPolicy()
+                        .admit(issuerSession.getCounterparty());
+                for (SignedTransaction stx : proposed) {
+                    check(stx);
+                    signatures.add(getServiceHub().createSignature(stx));
+                }
+            } catch (FlowException e) {
+                issuerSession.send(new ExitReply(null, e.getMessage()));
+                return;
+            }
+            issuerSession.send(new ExitReply(signatures, null));
+
+            final Set<SecureHash> signed = proposed.stream().map(SignedTransaction::getId).collect(Collectors.toSet());
+            final List<SignedTransaction> notarised = receiveTransactions();
+            for (SignedTransaction stx : notarised) {
+                if (!signed.contains(stx.getId())) throw new FlowException("Transaction " + stx.getId() + " wasn't signed");
+                try {
+                    stx.verifyRequiredSignatures();
+                } catch (SignatureException e) {
+                    throw new FlowException("Transaction " + stx.getId() + " isn't notarised", e);
+                }
+            }
+            getServiceHub().recordTransactions(StatesToRecord.ONLY_RELEVANT, notarised);
+        }
+
+        /**
+         * Only exits of our own tickets from the requesting issuer, nothing else, are signed.
+         */
+        private void check(@NotNull SignedTransaction stx) throws FlowException {
+            if (!stx.getTx().getOutputs().isEmpty()
+                    || !stx.getTx().getCommands().stream().allMatch(it -> it.getValue() instanceof Exit)) {
+                throw new FlowException("Transaction " + stx.getId() + " is not an exit");
+            }
+            final Party us = getOurIdentity();
+            final List<TicketState> tickets = new ArrayList<>();
+            for (StateRef ref : stx.getInputs()) {
+                final ContractState state = getServiceHub().toStateAndRef(ref).getState().getData();
+                if (!(state instanceof TicketState)
+                        || !((TicketState) state).getSpectator().equals(us)
+                        || !((TicketState) state).getIssuer().equals(issuerSession.getCounterparty())) {
+                    throw new FlowException("Transaction " + stx.getId() + " exits a ticket that isn't ours");
+                }
+                tickets.add((TicketState) state);
+            }
+            getServiceHub().cordaService(TicketPolicyService.class).getPolicy()
+                    .check(TicketProposal.of(tickets, true));
+            try {
+                stx.verify(getServiceHub(), false);
+            } catch (SignatureException e) {
+                throw new FlowException("Transaction " + stx.getId() + " has an invalid signature", e);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        @Suspendable
+        @NotNull
+        private List<SignedTransaction> receiveTransactions() throws FlowException {
+            return issuerSession.receive(List.class).unwrap(it -> {
+                for (Object tx : it) {
+                    if (!(tx instanceof SignedTransaction)) throw new FlowException("Expected transactions");
+                }
+                return (List<SignedTransaction>) it;
+            });
+        }
+    }
+}
@@ -9,19 +9,19 @@ import net.corda.core.contracts.UniqueIdentifier;
 import net.corda.core.crypto.SecureHash;
 import net.corda.core.flows.*;
 import net.corda.core.identity.Party;
-import net.corda.core.node.services.Vault;
-import net.corda.core.node.services.vault.QueryCriteria;
 import net.corda.core.transactions.SignedTransaction;
 import net.corda.core.transactions.TransactionBuilder;
 import net.corda.core.utilities.ProgressTracker;
 import net.corda.core.utilities.ProgressTracker.Step;
 import org.jetbrains.annotations.NotNull;
 
+import java.security.SignatureException;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.List;
 import java.util.stream.Collectors;
 
+import static net.corda.core.contracts.ContractsDSL.requireThat;
+
 public interface ExitFlows {
 
     @InitiatingFlow
@@ -31,6 +31,8 @@ public interface ExitFlows {
         private final UniqueIdentifier linearId;
         @NotNull
         private final ProgressTracker progressTracker;
+        @NotNull
+        private final FlowTimer timer;
         private final static Step GENERATING_TRANSACTION = new Step(
                 "Generating transaction based on parameters.");
         private final static Step VERIFYING_TRANSACTION = new Step(
@@ -60,6 +62,7 @@ public interface ExitFlows {
         public ExitInitiator(@NotNull UniqueIdentifier linearId) {
             this.linearId = linearId;
             this.progressTracker = tracker();
+            this.timer = new FlowTimer(this, this.progressTracker);
         }
 
         @Override
@@ -71,15 +74,23 @@ public interface ExitFlows {
         @Suspendable
         @Override
         public SignedTransaction call() throws FlowException {
-            progressTracker.setCurrentStep(GENERATING_TRANSACTION);
+            try {
+                final SignedTransaction result = exit();
+                timer.success();
+                return result;
+            } catch (FlowException | RuntimeException e) {
+                timer.failure(e);
+                throw e;
+            }
+        }
+
+        @Suspendable
+        private SignedTransaction exit() throws FlowException {
+            timer.step(GENERATING_TRANSACTION);
 
-            final QueryCriteria assetCriteria = new QueryCriteria.LinearStateQueryCriteria(
-                    null, Collections.singletonList(linearId.getId()),
-                    null, Vault.StateStatus.UNCONSUMED);
-            final List<StateAndRef<TicketState>> asset = getServiceHub()
-                    .getVaultService()
-                    .queryBy(TicketState.class, assetCriteria).getStates();
-            final StateAndRef<TicketState> input = asset.get(0);
+            final StateAndRef<TicketState> input = getServiceHub().cordaService(TicketIndexService.class)
+                    .resolveUnconsumed(linearId);
+            if (input == null) throw new FlowException("No unconsumed ticket with linear id " + linearId);
 
             final Party notary = input.getState().getNotary();
             final TicketState inputState = input.getState().getData();
@@ -91,21 +102,23 @@ public interface ExitFlows {
                     .addCommand(commandExit)
                     .addInputState(input);
 
-            progressTracker.setCurrentStep(VERIFYING_TRANSACTION);
+            timer.step(VERIFYING_TRANSACTION);
             txBuilder.verify(getServiceHub());
 
-            progressTracker.setCurrentStep(SIGNING_TRANSACTION);
+            timer.step(SIGNING_TRANSACTION);
             final SignedTransaction partlySignedTx = getServiceHub().signInitialTransaction(txBuilder);
 
+            timer.step(GATHERING_SIGNS);
             FlowSession otherOwnerSession;
             if (getOurIdentity().equals(inputState.getIssuer())){
                 otherOwnerSession = initiateFlow(inputState.getSpectator());
             } else {
                 otherOwnerSession = initiateFlow(inputState.getIssuer());
             }
+            otherOwnerSession.send(TicketProposal.of(Collections.singletonList(inputState), true));
             final SignedTransaction fullySignedTx = subFlow(new CollectSignaturesFlow(partlySignedTx,
                     Arrays.asList(otherOwnerSession), CollectSignaturesFlow.Companion.tracker()));
-            progressTracker.setCurrentStep(FINALISING_TRANSACTION);
+            timer.step(FINALISING_TRANSACTION);
             return subFlow(new FinalityFlow(fullySignedTx, Arrays.asList(otherOwnerSession)));
         }
     }
@@ -117,6 +130,8 @@ public interface ExitFlows {
         private final FlowSession otherOwnerSession;
         @NotNull
         private final ProgressTracker progressTracker;
+        @NotNull
+        private final FlowTimer timer;
         public final static Step SIGNING_TRANSACTION = new Step("About to sign transaction with our private key.") {
             @Override
             public ProgressTracker childProgressTracker() {
@@ -142,6 +157,7 @@ public interface ExitFlows {
         public ExitResponder(@NotNull final FlowSession otherOwnerSession, @NotNull final ProgressTracker progressTracker) {
             this.otherOwnerSession = otherOwnerSession;
             this.progressTracker = progressTracker;
+            this.timer = new FlowTimer(this, this.progressTracker);
         }
 
         @Override
@@ -153,7 +169,26 @@ public interface ExitFlows {
         @Suspendable
         @Override
         public SignedTransaction call() throws FlowException {
-            progressTracker.setCurrentStep(SIGNING_TRANSACTION);
+            try {
+                final SignedTransaction result = sign();
+                timer.success();
+                return result;
+            } catch (FlowException | RuntimeException e) {
+                timer.failure(e);
+                throw e;
+            }
+        }
+
+        @Suspendable
+        private SignedTransaction sign() throws FlowException {
+            final TicketPolicy policy = getServiceHub().cordaService(TicketPolicyService.class).getPolicy();
+            policy.admit(otherOwnerSession.getCounterparty());
+            final TicketProposal proposal = otherOwnerSession.receive(TicketProposal.class).unwrap(it -> {
+                policy.check(it);
+                return it;
+            });
+
+            timer.step(SIGNING_TRANSACTION);
 
             class SignTxFlow extends SignTransactionFlow {
                 public SignTxFlow(@NotNull FlowSession otherSideSession, ProgressTracker progressTracker) {
@@ -162,11 +197,22 @@ public interface ExitFlows {
 
                 @Override
                 protected void checkTransaction(@NotNull SignedTransaction stx) throws FlowException {
+                    final TicketProposal signed;
+                    try {
+                        signed = TicketProposal.of(stx.toLedgerTransaction(getServiceHub(), false)
+                                .inputsOfType(TicketState.class), true);
+                    } catch (SignatureException e) {
+                        throw new FlowException("Unable to resolve the transaction's inputs", e);
+                    }
+                    requireThat(req -> {
+                        req.using("The transaction has to match the proposal", signed.equals(proposal));
+                        return null;
+                    });
                 }
             }
             final SignTxFlow signTxFlow = new SignTxFlow(otherOwnerSession, SignTransactionFlow.Companion.tracker());
             final SecureHash txId = subFlow(signTxFlow).getId();
-            progressTracker.setCurrentStep(FINALISING_TRANSACTION);
+            timer.step(FINALISING_TRANSACTION);
             return subFlow(new ReceiveFinalityFlow(otherOwnerSession, txId));
         }
     }
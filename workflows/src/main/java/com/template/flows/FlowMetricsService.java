@@ -0,0 +1,104 @@
+package com.template.flows;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.jmx.JmxReporter;
+import kotlin.Unit;
+import net.corda.core.flows.NotaryError;
+import net.corda.core.flows.NotaryException;
+import net.corda.core.node.AppServiceHub;
+import net.corda.core.node.services.CordaService;
+import net.corda.core.serialization.SingletonSerializeAsToken;
+import net.corda.core.utilities.ProgressTracker.Step;
+import org.jetbrains.annotations.NotNull;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-flow and per-step latency histograms, plus success, failure and notary conflict counts, exported over JMX
+ * under the {@code com.template.flows} domain. Flows record into it through a {@link FlowTimer}.
+ *
+ * Metric names are {@code <Flow>.<STEP>} for the time spent in each progress tracker step, named after the step's
+ * field (e.g. {@code TransferInitiator.GATHERING_SIGNS}), and {@code <Flow>.duration}, {@code <Flow>.success},
+ * {@code <Flow>.failure} and {@code <Flow>.notaryConflict} for whole flows.
+ */
+@CordaService
+public class FlowMetricsService extends SingletonSerializeAsToken {
+
+    public static final String JMX_DOMAIN = "com.template.flows";
+
+    @NotNull
+    private final MetricRegistry registry = new MetricRegistry();
+    @NotNull
+    private final Map<Class<?>, Map<Step, String>> stepNames = new ConcurrentHashMap<>();
+
+    public FlowMetricsService(@NotNull AppServiceHub serviceHub) {
+        final JmxReporter reporter = JmxReporter.forRegistry(registry)
+                .inDomain(JMX_DOMAIN)
+                .convertDurationsTo(TimeUnit.MILLISECONDS)
+                .build();
+        reporter.start();
+        serviceHub.registerUnloadHandler(() -> {
+            reporter.stop();
+            return Unit.INSTANCE;
+        });
+    }
+
+    @NotNull
+    public MetricRegistry getRegistry() {
+        return registry;
+    }
+
+    void recordStep(@NotNull Class<?> flowClass, @NotNull Step step, long nanos) {
+        final String stepName = stepNames.computeIfAbsent(flowClass, FlowMetricsService::stepFieldNames)
+                .getOrDefault(step, step.getLabel());
+        registry.timer(MetricRegistry.name(flowClass.getSimpleName(), stepName)).update(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    void recordSuccess(@NotNull Class<?> flowClass, long nanos) {
+        registry.timer(MetricRegistry.name(flowClass.getSimpleName(), "duration")).update(nanos, TimeUnit.NANOSECONDS);
+        registry.counter(MetricRegistry.name(flowClass.getSimpleName(), "success")).inc();
+    }
+
+    void recordFailure(@NotNull Class<?> flowClass, long nanos, @NotNull Throwable error) {
+        registry.timer(MetricRegistry.name(flowClass.getSimpleName(), "duration")).update(nanos, TimeUnit.NANOSECONDS);
+        registry.counter(MetricRegistry.name(flowClass.getSimpleName(), "failure")).inc();
+        if (isNotaryConflict(error)) {
+            registry.counter(MetricRegistry.name(flowClass.getSimpleName(), "notaryConflict")).inc();
+        }
+    }
+
+    static boolean isNotaryConflict(@NotNull Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof NotaryException
+                    && ((NotaryException) cause).getError() instanceof NotaryError.Conflict) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Maps the static {@link Step} fields of a flow to their field names, which are short and stable enough to be
+     * used as metric names.
+     */
+    @NotNull
+    private static Map<Step, String> stepFieldNames(@NotNull Class<?> flowClass) {
+        final Map<Step, String> names = new IdentityHashMap<>();
+        for (Field field : flowClass.getDeclaredFields()) {
+            if (!Modifier.isStatic(field.getModifiers()) || !Step.class.isAssignableFrom(field.getType())) continue;
+            try {
+                field.setAccessible(true);
+                names.put((Step) field.get(null), field.getName());
+            } catch (IllegalAccessException e) {
+                // Falls back to the step's label.
+            }
+        }
+        return Collections.unmodifiableMap(names);
+    }
+}
@@ -0,0 +1,81 @@
+package com.template.flows;
+
+import net.corda.core.flows.FlowLogic;
+import net.corda.core.utilities.ProgressTracker;
+import net.corda.core.utilities.ProgressTracker.Step;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Times a flow and its progress tracker steps into the {@link FlowMetricsService}. It is a field of the flow, so it
+ * is checkpointed with it and a step spanning a suspension is timed end to end. The times are wall clock instants:
+ * unlike {@link System#nanoTime()} they still mean something in a flow resumed after a node restart, whose steps
+ * and total then include the downtime.
+ */
+public final class FlowTimer {
+
+    @NotNull
+    private final FlowLogic<?> flow;
+    @Nullable
+    private final ProgressTracker progressTracker;
+    @NotNull
+    private final Instant flowStart = Instant.now();
+    @Nullable
+    private Step currentStep;
+    @Nullable
+    private Instant stepStart;
+
+    public FlowTimer(@NotNull FlowLogic<?> flow, @Nullable ProgressTracker progressTracker) {
+        this.flow = flow;
+        this.progressTracker = progressTracker;
+    }
+
+    public FlowTimer(@NotNull FlowLogic<?> flow) {
+        this(flow, null);
+    }
+
+    /**
+     * Moves the progress tracker to {@code step}, recording the time spent in the previous one.
+     */
+    public void step(@NotNull Step step) {
+        if (progressTracker != null) progressTracker.setCurrentStep(step);
+        final Instant now = Instant.now();
+        endStep(now);
+        currentStep = step;
+        stepStart = now;
+    }
+
+    public void success() {
+        final Instant now = Instant.now();
+        endStep(now);
+        metrics().recordSuccess(flow.getClass(), nanosBetween(flowStart, now));
+    }
+
+    public void failure(@NotNull Throwable error) {
+        final Instant now = Instant.now();
+        endStep(now);
+        metrics().recordFailure(flow.getClass(), nanosBetween(flowStart, now), error);
+    }
+
+    private void endStep(@NotNull Instant now) {
+        if (currentStep != null && stepStart != null) {
+            metrics().recordStep(flow.getClass(), currentStep, nanosBetween(stepStart, now));
+            currentStep = null;
+        }
+    }
+
+    /**
+     * Never negative, should the wall clock be set back while the flow runs.
+     */
+    private static long nanosBetween(@NotNull Instant start, @NotNull Instant end) {
+        return Math.max(0, Duration.between(start, end).toNanos());
+    }
+
+    @NotNull
+    private FlowMetricsService metrics() {
+        return flow.getServiceHub().cordaService(FlowMetricsService.class);
+    }
+}
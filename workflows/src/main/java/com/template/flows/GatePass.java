@@ -0,0 +1,159 @@
+package com.template.flows;
+
+import com.template.states.TicketState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.StateRef;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.crypto.Crypto;
+import net.corda.core.crypto.SecureHash;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.security.PublicKey;
+import java.util.UUID;
+
+/**
+ * A compact, issuer-signed token for one ticket state, checked at the gates without asking a node. It names the
+ * ticket state by its {@link StateRef}, so it is void once the ticket is transferred or exited, which the gates
+ * learn from the issuer's revocations.
+ *
+ * The encoding is {@code version(1) section(2) linearId(16) txId(32) index(2) issuerKeyId(8) sigLength(1) sig},
+ * about 130 bytes with the default EdDSA node keys, small enough for a QR code.
+ */
+public final class GatePass {
+
+    public static final byte VERSION = 1;
+    private static final int PAYLOAD_SIZE = 1 + 2 + 16 + 32 + 2 + 8;
+
+    private final int section;
+    @NotNull
+    private final UniqueIdentifier linearId;
+    @NotNull
+    private final StateRef ref;
+    private final long issuerKeyId;
+    @NotNull
+    private final byte[] signature;
+
+    private GatePass(int section, @NotNull UniqueIdentifier linearId, @NotNull StateRef ref, long issuerKeyId,
+                     @NotNull byte[] signature) {
+        this.section = section;
+        this.linearId = linearId;
+        this.ref = ref;
+        this.issuerKeyId = issuerKeyId;
+        this.signature = signature;
+    }
+
+    /**
+     * The bytes the issuer signs for {@code ticket}.
+     */
+    @NotNull
+    public static byte[] payload(@NotNull StateAndRef<TicketState> ticket) {
+        final TicketState state = ticket.getState().getData();
+        return payload(state.getSection(), state.getLinearId(), ticket.getRef(),
+                keyId(state.getIssuer().getOwningKey()));
+    }
+
+    @NotNull
+    public static GatePass signed(@NotNull StateAndRef<TicketState> ticket, @NotNull byte[] signature) {
+        final TicketState state = ticket.getState().getData();
+        return new GatePass(state.getSection(), state.getLinearId(), ticket.getRef(),
+                keyId(state.getIssuer().getOwningKey()), signature);
+    }
+
+    /**
+     * @throws IllegalArgumentException if {@code encoded} isn't a gate pass of this version.
+     */
+    @NotNull
+    public static GatePass decode(@NotNull byte[] encoded) {
+        try {
+            final ByteBuffer buffer = ByteBuffer.wrap(encoded);
+            if (buffer.get() != VERSION) throw new IllegalArgumentException("Unknown gate pass version");
+            final int section = buffer.getShort() & 0xffff;
+            final UniqueIdentifier linearId = new UniqueIdentifier(null, new UUID(buffer.getLong(), buffer.getLong()));
+            final byte[] txId = new byte[32];
+            buffer.get(txId);
+            final int index = buffer.getShort() & 0xffff;
+            final long issuerKeyId = buffer.getLong();
+            final byte[] signature = new byte[buffer.get() & 0xff];
+            buffer.get(signature);
+            if (buffer.hasRemaining()) throw new IllegalArgumentException("Trailing bytes after the gate pass");
+            return new GatePass(section, linearId, new StateRef(new SecureHash.SHA256(txId), index), issuerKeyId,
+                    signature);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated gate pass", e);
+        }
+    }
+
+    @NotNull
+    public byte[] encode() {
+        return ByteBuffer.allocate(PAYLOAD_SIZE + 1 + signature.length)
+                .put(payload(section, linearId, ref, issuerKeyId))
+                .put((byte) signature.length)
+                .put(signature)
+                .array();
+    }
+
+    /**
+     * Whether the pass was signed by {@code issuerKey}, whose {@link #keyId} the caller looked it up by.
+     */
+    public boolean isSignedBy(@NotNull PublicKey issuerKey) {
+        try {
+            return Crypto.isValid(issuerKey, signature, payload(section, linearId, ref, issuerKeyId));
+        } catch (Exception e) {
+            // A malformed signature or a key of an unsupported scheme.
+            return false;
+        }
+    }
+
+    /**
+     * A short id for an issuer's key, so a pass doesn't have to carry the key itself.
+     */
+    public static long keyId(@NotNull PublicKey key) {
+        return ByteBuffer.wrap(SecureHash.sha256(key.getEncoded()).getBytes()).getLong();
+    }
+
+    /**
+     * The 16 byte key a revoked {@link StateRef} is stored under: the first 14 bytes of the transaction id, which
+     * is already a hash, then the output index.
+     */
+    @NotNull
+    public static byte[] revocationKey(@NotNull StateRef ref) {
+        return ByteBuffer.allocate(16)
+                .put(ref.getTxhash().getBytes(), 0, 14)
+                .putShort((short) ref.getIndex())
+                .array();
+    }
+
+    public int getSection() {
+        return section;
+    }
+
+    @NotNull
+    public UniqueIdentifier getLinearId() {
+        return linearId;
+    }
+
+    @NotNull
+    public StateRef getRef() {
+        return ref;
+    }
+
+    public long getIssuerKeyId() {
+        return issuerKeyId;
+    }
+
+    @NotNull
+    private static byte[] payload(int section, @NotNull UniqueIdentifier linearId, @NotNull StateRef ref,
+                                  long issuerKeyId) {
+        return ByteBuffer.allocate(PAYLOAD_SIZE)
+                .put(VERSION)
+                .putShort((short) section)
+                .putLong(linearId.getId().getMostSignificantBits())
+                .putLong(linearId.getId().getLeastSignificantBits())
+                .put(ref.getTxhash().getBytes())
+                .putShort((short) ref.getIndex())
+                .putLong(issuerKeyId)
+                .array();
+    }
+}
@@ -0,0 +1,123 @@
+package com.template.flows;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.template.states.TicketState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.StateRef;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.flows.*;
+import net.corda.core.identity.Party;
+import net.corda.core.node.services.Vault;
+import net.corda.core.node.services.vault.QueryCriteria;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Gets a {@link GatePass} for one of our tickets. The spectator's node asks the issuer to sign the current state of
+ * the ticket; the pass is then shown at the gates, which check it offline.
+ */
+public interface GatePassFlows {
+
+    @InitiatingFlow
+    @StartableByRPC
+    class GatePassInitiator extends FlowLogic<byte[]> {
+        @NotNull
+        private final UniqueIdentifier linearId;
+        @NotNull
+        private final FlowTimer timer;
+
+        public GatePassInitiator(@NotNull UniqueIdentifier linearId) {
+            this.linearId = linearId;
+            this.timer = new FlowTimer(this);
+        }
+
+        /**
+         * @return the encoded pass.
+         */
+        @Suspendable
+        @Override
+        public byte[] call() throws FlowException {
+            try {
+                final byte[] result = requestPass();
+                timer.success();
+                return result;
+            } catch (FlowException | RuntimeException e) {
+                timer.failure(e);
+                throw e;
+            }
+        }
+
+        @Suspendable
+        private byte[] requestPass() throws FlowException {
+            final StateAndRef<TicketState> ticket = getServiceHub().cordaService(TicketIndexService.class)
+                    .resolveUnconsumed(linearId);
+            if (ticket == null) throw new FlowException("No unconsumed ticket with linear id " + linearId);
+            final TicketState state = ticket.getState().getData();
+            if (!state.getSpectator().equals(getOurIdentity())) {
+                throw new FlowException("Ticket " + linearId + " isn't held by us");
+            }
+
+            final Party issuer = state.getIssuer();
+            final byte[] signature = initiateFlow(issuer).sendAndReceive(byte[].class, ticket.getRef())
+                    .unwrap(it -> it);
+            final GatePass pass = GatePass.signed(ticket, signature);
+            if (!pass.isSignedBy(issuer.getOwningKey())) {
+                throw new FlowException("The issuer's signature on the gate pass doesn't verify");
+            }
+            return pass.encode();
+        }
+    }
+
+    @InitiatedBy(GatePassInitiator.class)
+    class GatePassResponder extends FlowLogic<Void> {
+        @NotNull
+        private final FlowSession spectatorSession;
+        @NotNull
+        private final FlowTimer timer;
+
+        public GatePassResponder(@NotNull FlowSession spectatorSession) {
+            this.spectatorSession = spectatorSession;
+            this.timer = new FlowTimer(this);
+        }
+
+        @Suspendable
+        @Override
+        public Void call() throws FlowException {
+            try {
+                sign();
+                timer.success();
+                return null;
+            } catch (FlowException | RuntimeException e) {
+                timer.failure(e);
+                throw e;
+            }
+        }
+
+        @Suspendable
+        private void sign() throws FlowException {
+            final TicketPolicy policy = getServiceHub().cordaService(TicketPolicyService.class).getPolicy();
+            final Party spectator = spectatorSession.getCounterparty();
+            policy.admit(spectator);
+            final StateRef ref = spectatorSession.receive(StateRef.class).unwrap(it -> it);
+
+            final QueryCriteria criteria = new QueryCriteria.VaultQueryCriteria(Vault.StateStatus.UNCONSUMED)
+                    .withStateRefs(Collections.singletonList(ref));
+            final List<StateAndRef<TicketState>> states = getServiceHub().getVaultService()
+                    .queryBy(TicketState.class, criteria).getStates();
+            if (states.isEmpty()) throw new FlowException("Ticket " + ref + " isn't a current ticket of ours");
+            final StateAndRef<TicketState> ticket = states.get(0);
+            final TicketState state = ticket.getState().getData();
+            if (!getServiceHub().getMyInfo().isLegalIdentity(state.getIssuer())) {
+                throw new FlowException("Ticket " + ref + " wasn't issued by us");
+            }
+            if (!state.getSpectator().equals(spectator)) {
+                throw new FlowException("Ticket " + ref + " isn't held by " + spectator.getName());
+            }
+
+            spectatorSession.send(getServiceHub().getKeyManagementService()
+                    .sign(GatePass.payload(ticket), state.getIssuer().getOwningKey()).getBytes());
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.template.flows;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.template.contracts.TicketContract;
+import com.template.contracts.TicketContract.Commands.CreateInventory;
+import com.template.states.InventoryState;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.flows.*;
+import net.corda.core.identity.Party;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.core.transactions.TransactionBuilder;
+import net.corda.core.utilities.ProgressTracker;
+import net.corda.core.utilities.ProgressTracker.Step;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public interface InventoryFlows {
+
+    /**
+     * Opens {@code capacity} tickets for sale in {@code section}, split as evenly as possible over {@code shards}
+     * inventory states. Each shard is placed on the notary chosen by the node's {@link NotarySelector}, with one
+     * transaction per notary.
+     */
+    @StartableByRPC
+    class CreateInventoryInitiator extends FlowLogic<List<SignedTransaction>> {
+
+        private final int section;
+        private final int capacity;
+        private final int shards;
+
+        @NotNull
+        private final ProgressTracker progressTracker;
+        private final static Step GENERATING_TRANSACTION = new Step("Generating transaction based on parameters.");
+        private final static Step VERIFYING_TRANSACTION = new Step("Verifying contract constraints.");
+        private final static Step SIGNING_TRANSACTION = new Step("Signing transaction with our private key.");
+        private final static Step FINALISING_TRANSACTION = new Step(
+                "Obtaining notary signature and recording transaction"){
+            @Override
+            public ProgressTracker childProgressTracker() {
+                return FinalityFlow.Companion.tracker();
+            }
+        };
+
+        @NotNull
+        public static ProgressTracker tracker() {
+            return new ProgressTracker(GENERATING_TRANSACTION, VERIFYING_TRANSACTION, SIGNING_TRANSACTION, FINALISING_TRANSACTION);
+        }
+
+        public CreateInventoryInitiator(int section, int capacity, int shards) {
+            this.section = section;
+            this.capacity = capacity;
+            this.shards = shards;
+            this.progressTracker = tracker();
+        }
+
+        @Override
+        @NotNull
+        public ProgressTracker getProgressTracker() {
+            return progressTracker;
+        }
+
+        @Suspendable
+        @Override
+        public List<SignedTransaction> call() throws FlowException {
+            if (shards <= 0 || capacity < shards) {
+                throw new FlowException("Capacity must be at least the number of shards, and shards positive");
+            }
+            IssuerShards.requireIssued(getServiceHub(), section);
+            final Party issuer = getOurIdentity();
+            final NotarySelectionService notarySelection = getServiceHub().cordaService(NotarySelectionService.class);
+
+            progressTracker.setCurrentStep(GENERATING_TRANSACTION);
+            final Map<Party, TransactionBuilder> txBuilders = new LinkedHashMap<>();
+            for (int shard = 0; shard < shards; shard++) {
+                final int shardCapacity = capacity / shards + (shard < capacity % shards ? 1 : 0);
+                final InventoryState inventory = new InventoryState(issuer, section, shard, shardCapacity,
+                        new UniqueIdentifier());
+                final Party notary = notarySelection.select(section, inventory.getLinearId());
+                txBuilders.computeIfAbsent(notary, it -> new TransactionBuilder(it)
+                        .addCommand(new CreateInventory(), issuer.getOwningKey()))
+                        .addOutputState(inventory, TicketContract.ID);
+            }
+
+            progressTracker.setCurrentStep(VERIFYING_TRANSACTION);
+            for (TransactionBuilder txBuilder : txBuilders.values()) {
+                txBuilder.verify(getServiceHub());
+            }
+
+            progressTracker.setCurrentStep(SIGNING_TRANSACTION);
+            final List<SignedTransaction> signedTxs = new ArrayList<>();
+            for (TransactionBuilder txBuilder : txBuilders.values()) {
+                signedTxs.add(getServiceHub().signInitialTransaction(txBuilder));
+            }
+
+            progressTracker.setCurrentStep(FINALISING_TRANSACTION);
+            final List<SignedTransaction> notarised = new ArrayList<>();
+            for (SignedTransaction signedTx : signedTxs) {
+                notarised.add(subFlow(new FinalityFlow(signedTx, Collections.emptyList())));
+            }
+            return notarised;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.template.flows;
+
+import com.template.contracts.TicketContract;
+import com.template.schemas.InventorySchemaV1.PersistentInventory;
+import com.template.states.InventoryState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.flows.FlowException;
+import net.corda.core.identity.Party;
+import net.corda.core.node.ServiceHub;
+import net.corda.core.node.services.StatesNotAvailableException;
+import net.corda.core.node.services.Vault;
+import net.corda.core.node.services.vault.Builder;
+import net.corda.core.node.services.vault.FieldInfo;
+import net.corda.core.node.services.vault.PageSpecification;
+import net.corda.core.node.services.vault.QueryCriteria;
+import net.corda.core.transactions.TransactionBuilder;
+import net.corda.core.utilities.NonEmptySet;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import static net.corda.core.node.services.vault.QueryCriteriaUtils.DEFAULT_PAGE_NUM;
+import static net.corda.core.node.services.vault.QueryCriteriaUtils.MAX_PAGE_SIZE;
+import static net.corda.core.node.services.vault.QueryCriteriaUtils.getField;
+
+/**
+ * Picks the inventory shards a buy draws its tickets from. Shards are tried in random order and soft locked as
+ * they are taken, so concurrent buys on this node spread over different shards instead of racing for the same
+ * one at the notary. A transaction has a single notary, so all the shards of one buy come from the same notary.
+ */
+public final class InventoryShards {
+
+    private InventoryShards() {
+    }
+
+    /**
+     * Starts a transaction drawing {@code sold} tickets per section from the inventory. The shards drawn from are
+     * all on one notary, the first of {@code notaries} with enough capacity left, and the transaction is built on
+     * that notary. Shards that still have capacity after the draw are added back as outputs.
+     *
+     * @throws FlowException if no notary has enough capacity left for every section.
+     */
+    @NotNull
+    public static TransactionBuilder draw(@NotNull ServiceHub serviceHub, @NotNull UUID lockId, @NotNull Party issuer,
+                                          @NotNull Map<Integer, Integer> sold, @NotNull List<Party> notaries)
+            throws FlowException {
+        final List<StateAndRef<InventoryState>> available = available(serviceHub, issuer, sold.keySet(), notaries);
+        for (Party notary : notaries) {
+            final List<StateAndRef<InventoryState>> taken = new ArrayList<>();
+            final List<InventoryState> drawnDown = new ArrayList<>();
+            if (reserveOn(serviceHub, lockId, notary, sold, available, taken, drawnDown)) {
+                final TransactionBuilder txBuilder = new TransactionBuilder(notary);
+                taken.forEach(txBuilder::addInputState);
+                drawnDown.forEach(it -> txBuilder.addOutputState(it, TicketContract.ID));
+                return txBuilder;
+            }
+            if (!taken.isEmpty()) {
+                serviceHub.getVaultService().softLockRelease(lockId, NonEmptySet.copyOf(
+                        taken.stream().map(StateAndRef::getRef).collect(Collectors.toList())));
+            }
+        }
+        throw new FlowException("Sections " + sold.keySet() + " are sold out");
+    }
+
+    private static boolean reserveOn(@NotNull ServiceHub serviceHub, @NotNull UUID lockId, @NotNull Party notary,
+                                     @NotNull Map<Integer, Integer> sold,
+                                     @NotNull List<StateAndRef<InventoryState>> available,
+                                     @NotNull List<StateAndRef<InventoryState>> taken,
+                                     @NotNull List<InventoryState> drawnDown) {
+        for (Map.Entry<Integer, Integer> entry : sold.entrySet()) {
+            int needed = entry.getValue();
+            for (StateAndRef<InventoryState> shard : available) {
+                if (needed == 0) break;
+                if (shard.getState().getData().getSection() != entry.getKey()) continue;
+                if (!shard.getState().getNotary().equals(notary)) continue;
+                if (!reserve(serviceHub, lockId, shard)) continue;
+                final InventoryState state = shard.getState().getData();
+                final int drawn = Math.min(needed, state.getRemaining());
+                taken.add(shard);
+                if (state.getRemaining() > drawn) {
+                    drawnDown.add(state.draw(drawn));
+                }
+                needed -= drawn;
+            }
+            if (needed > 0) return false;
+        }
+        return true;
+    }
+
+    /**
+     * The remaining capacity of {@code section}, summed over its unconsumed shards by the database.
+     */
+    public static int remaining(@NotNull ServiceHub serviceHub, @NotNull Party issuer, int section) {
+        final QueryCriteria sum = new QueryCriteria.VaultCustomQueryCriteria(
+                Builder.sum(field("remaining")), Vault.StateStatus.UNCONSUMED);
+        final List<Object> results = serviceHub.getVaultService().queryBy(InventoryState.class,
+                withCapacity(issuer, Collections.singleton(section)).and(sum)).getOtherResults();
+        return results.isEmpty() || results.get(0) == null ? 0 : ((Number) results.get(0)).intValue();
+    }
+
+    /**
+     * The unlocked shards of {@code sections} with capacity left on any of {@code notaries}, in random order. The
+     * issuer, section, capacity and notary are all matched by the one vault query.
+     */
+    @NotNull
+    private static List<StateAndRef<InventoryState>> available(@NotNull ServiceHub serviceHub, @NotNull Party issuer,
+                                                               @NotNull Collection<Integer> sections,
+                                                               @NotNull List<Party> notaries) {
+        if (notaries.isEmpty()) return new ArrayList<>();
+        final QueryCriteria unlocked = new QueryCriteria.VaultQueryCriteria(Vault.StateStatus.UNCONSUMED)
+                .withNotary(notaries)
+                .withSoftLockingCondition(new QueryCriteria.SoftLockingCondition(
+                        QueryCriteria.SoftLockingType.UNLOCKED_ONLY, Collections.emptyList()));
+        final List<StateAndRef<InventoryState>> shards = new ArrayList<>(serviceHub.getVaultService()
+                .queryBy(InventoryState.class, unlocked.and(withCapacity(issuer, sections)),
+                        new PageSpecification(DEFAULT_PAGE_NUM, MAX_PAGE_SIZE))
+                .getStates());
+        Collections.shuffle(shards);
+        return shards;
+    }
+
+    @NotNull
+    private static QueryCriteria withCapacity(@NotNull Party issuer, @NotNull Collection<Integer> sections) {
+        return new QueryCriteria.VaultCustomQueryCriteria(Builder.equal(field("issuer"), issuer.getName().toString()))
+                .and(new QueryCriteria.VaultCustomQueryCriteria(Builder.in(field("section"), sections)))
+                .and(new QueryCriteria.VaultCustomQueryCriteria(Builder.greaterThan(field("remaining"), 0)));
+    }
+
+    @NotNull
+    private static FieldInfo field(@NotNull String name) {
+        try {
+            return getField(name, PersistentInventory.class);
+        } catch (NoSuchFieldException e) {
+            throw new IllegalStateException("Unknown inventory column " + name, e);
+        }
+    }
+
+    private static boolean reserve(@NotNull ServiceHub serviceHub, @NotNull UUID lockId,
+                                   @NotNull StateAndRef<InventoryState> shard) {
+        try {
+            serviceHub.getVaultService().softLockReserve(lockId, NonEmptySet.of(shard.getRef()));
+            return true;
+        } catch (StatesNotAvailableException e) {
+            // Another buy took this shard since it was queried.
+            return false;
+        }
+    }
+}
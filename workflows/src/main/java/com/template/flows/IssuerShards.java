@@ -0,0 +1,44 @@
+package com.template.flows;
+
+import com.template.contracts.TicketContract;
+import net.corda.core.cordapp.CordappConfig;
+import net.corda.core.flows.FlowException;
+import net.corda.core.node.ServiceHub;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * The sections this issuer node sells, so an event's sections can be sharded over several issuer nodes. Each node
+ * lists its own in the {@code issuedSections} CorDapp config key, e.g. {@code "15,30"}; a node without it sells
+ * every section. Tickets name their issuer, so transfers, exits and gate passes reach the right shard on their own;
+ * only buys have to be routed, see {@link ShardFlows.IssuedSectionsFlow}.
+ */
+public final class IssuerShards {
+
+    public static final String ISSUED_SECTIONS_KEY = "issuedSections";
+
+    private IssuerShards() {
+    }
+
+    @NotNull
+    public static List<Integer> issuedSections(@NotNull ServiceHub serviceHub) {
+        final CordappConfig config = serviceHub.getAppContext().getConfig();
+        if (!config.exists(ISSUED_SECTIONS_KEY)) return TicketContract.SECTIONS;
+        return Arrays.stream(config.getString(ISSUED_SECTIONS_KEY).split(","))
+                .map(String::trim).filter(it -> !it.isEmpty())
+                .map(Integer::parseInt)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * @throws FlowException if {@code section} is sold by another issuer node.
+     */
+    public static void requireIssued(@NotNull ServiceHub serviceHub, int section) throws FlowException {
+        if (!issuedSections(serviceHub).contains(section)) {
+            throw new FlowException("Section " + section + " is sold by another issuer node");
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.template.flows;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.template.states.TicketState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.flows.FlowException;
+import net.corda.core.flows.FlowLogic;
+import net.corda.core.flows.StartableByRPC;
+import net.corda.core.node.services.Vault;
+import net.corda.core.node.services.vault.PageSpecification;
+import net.corda.core.node.services.vault.Sort;
+import net.corda.core.node.services.vault.SortAttribute;
+import net.corda.core.serialization.CordaSerializable;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import static net.corda.core.node.services.vault.QueryCriteriaUtils.DEFAULT_PAGE_NUM;
+import static net.corda.core.node.services.vault.QueryCriteriaUtils.MAX_PAGE_SIZE;
+
+/**
+ * Looks up many tickets in one call, for clients rendering a wallet or checking a list of tickets.
+ */
+public interface LookupFlows {
+
+    /**
+     * A ticket's holder and section as this node's vault knows them, and whether the vault holds it consumed. Consumed
+     * is vault-local: it means the last state of the ticket this node recorded was spent, not that the ticket is gone.
+     * On the issuer that is an exit or a re-issue, the latter under a new linear id; on a spectator's node it is also a
+     * transfer away, after which the ticket lives on with a holder this node doesn't see. For a consumed ticket the
+     * holder is the last one this node recorded.
+     */
+    @CordaSerializable
+    class TicketLookup {
+        @NotNull
+        private final String holder;
+        private final int section;
+        private final boolean consumed;
+
+        public TicketLookup(@NotNull String holder, int section, boolean consumed) {
+            this.holder = holder;
+            this.section = section;
+            this.consumed = consumed;
+        }
+
+        @NotNull
+        public String getHolder() {
+            return holder;
+        }
+
+        public int getSection() {
+            return section;
+        }
+
+        /**
+         * Whether this node's vault holds the ticket consumed; see {@link TicketLookup} for what that does and doesn't
+         * mean.
+         */
+        public boolean isConsumed() {
+            return consumed;
+        }
+    }
+
+    /**
+     * Resolves up to {@link #MAX_LINEAR_IDS} linear ids with a few IN queries of {@link #CHUNK_SIZE} ids each: one
+     * for the unconsumed tickets, and one for the consumed history of those not found. Ids the vault doesn't know
+     * are left out of the result.
+     */
+    @StartableByRPC
+    class TicketLookupFlow extends FlowLogic<Map<UniqueIdentifier, TicketLookup>> {
+        public static final int MAX_LINEAR_IDS = 10_000;
+        public static final int CHUNK_SIZE = 500;
+
+        @NotNull
+        private final List<UniqueIdentifier> linearIds;
+
+        public TicketLookupFlow(@NotNull List<UniqueIdentifier> linearIds) {
+            this.linearIds = linearIds;
+        }
+
+        @Suspendable
+        @Override
+        public Map<UniqueIdentifier, TicketLookup> call() throws FlowException {
+            if (linearIds.size() > MAX_LINEAR_IDS) {
+                throw new FlowException("At most " + MAX_LINEAR_IDS + " tickets can be looked up at once");
+            }
+            final Map<UUID, UniqueIdentifier> requested = new LinkedHashMap<>();
+            linearIds.forEach(it -> requested.put(it.getId(), it));
+            final Map<UniqueIdentifier, TicketLookup> found = new LinkedHashMap<>();
+            final List<UUID> ids = new ArrayList<>(requested.keySet());
+            for (int from = 0; from < ids.size(); from += CHUNK_SIZE) {
+                final List<UUID> chunk = ids.subList(from, Math.min(from + CHUNK_SIZE, ids.size()));
+                final Set<UUID> missing = new LinkedHashSet<>(chunk);
+                for (StateAndRef<TicketState> state : query(chunk, Vault.StateStatus.UNCONSUMED,
+                        TicketQueries.linearIdOrder())) {
+                    final TicketState ticket = state.getState().getData();
+                    missing.remove(ticket.getLinearId().getId());
+                    found.put(requested.get(ticket.getLinearId().getId()), lookup(ticket, false));
+                }
+                if (missing.isEmpty()) continue;
+                // Latest consumed first, so the first state of each id is its last.
+                final Sort latestFirst = new Sort(Collections.singleton(new Sort.SortColumn(
+                        new SortAttribute.Standard(Sort.VaultStateAttribute.CONSUMED_TIME), Sort.Direction.DESC)));
+                for (StateAndRef<TicketState> state : query(new ArrayList<>(missing), Vault.StateStatus.CONSUMED,
+                        latestFirst)) {
+                    final TicketState ticket = state.getState().getData();
+                    found.putIfAbsent(requested.get(ticket.getLinearId().getId()), lookup(ticket, true));
+                }
+            }
+            return found;
+        }
+
+        @NotNull
+        private List<StateAndRef<TicketState>> query(@NotNull List<UUID> ids, @NotNull Vault.StateStatus status,
+                                                     @NotNull Sort sort) {
+            return getServiceHub().getVaultService().queryBy(TicketState.class, TicketQueries.byLinearIds(ids, status),
+                    new PageSpecification(DEFAULT_PAGE_NUM, MAX_PAGE_SIZE), sort).getStates();
+        }
+
+        @NotNull
+        private static TicketLookup lookup(@NotNull TicketState ticket, boolean consumed) {
+            return new TicketLookup(ticket.getSpectator().getName().toString(), ticket.getSection(), consumed);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.template.flows;
+
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.identity.Party;
+import net.corda.core.node.AppServiceHub;
+import net.corda.core.node.services.CordaService;
+import net.corda.core.serialization.SingletonSerializeAsToken;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Holds the node's {@link NotarySelector}, read from the {@code notarySelection} CorDapp config key
+ * ({@code first} by default).
+ */
+@CordaService
+public class NotarySelectionService extends SingletonSerializeAsToken {
+
+    public static final String STRATEGY_KEY = "notarySelection";
+
+    @NotNull
+    private final AppServiceHub serviceHub;
+    @NotNull
+    private final NotarySelector selector;
+
+    public NotarySelectionService(@NotNull AppServiceHub serviceHub) {
+        this.serviceHub = serviceHub;
+        this.selector = NotarySelector.fromName(serviceHub.getAppContext().getConfig().exists(STRATEGY_KEY)
+                ? serviceHub.getAppContext().getConfig().getString(STRATEGY_KEY)
+                : "first");
+    }
+
+    /**
+     * The network's notaries, the selected one first and the rest in their order, so callers can fall back when the
+     * selected notary can't serve the request. The order is the network map's for the {@code first} strategy, as
+     * before notary selection was configurable, and by name otherwise.
+     */
+    @NotNull
+    public List<Party> preferredNotaries(int section, @NotNull UniqueIdentifier linearId) {
+        final List<Party> notaries = new ArrayList<>(serviceHub.getNetworkMapCache().getNotaryIdentities());
+        if (notaries.isEmpty()) throw new IllegalStateException("The network has no notary");
+        // Sorting by name gives every node the same order, so hashing strategies agree across nodes.
+        if (selector.needsStableOrder()) notaries.sort(Comparator.comparing(it -> it.getName().toString()));
+        final Party selected = selector.select(notaries, section, linearId);
+        notaries.remove(selected);
+        notaries.add(0, selected);
+        return notaries;
+    }
+
+    @NotNull
+    public Party select(int section, @NotNull UniqueIdentifier linearId) {
+        return preferredNotaries(section, linearId).get(0);
+    }
+}
@@ -0,0 +1,110 @@
+package com.template.flows;
+
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.identity.Party;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Chooses the notary new tickets and inventory are issued on. Transfers and exits always stay on the notary of the
+ * ticket they consume. The strategy is set with the {@code notarySelection} CorDapp config key, see
+ * {@link NotarySelectionService}.
+ */
+public interface NotarySelector {
+
+    /**
+     * @param notaries the network's notaries, in a stable order shared by every node if {@link #needsStableOrder()}
+     *                 and in the network map's order otherwise.
+     * @param section the section being issued.
+     * @param linearId the linear id of the state being issued.
+     */
+    @NotNull
+    Party select(@NotNull List<Party> notaries, int section, @NotNull UniqueIdentifier linearId);
+
+    /**
+     * Whether the strategy needs the notaries in an order shared by every node, rather than the network map's.
+     */
+    default boolean needsStableOrder() {
+        return true;
+    }
+
+    @NotNull
+    static NotarySelector fromName(@NotNull String name) {
+        switch (name) {
+            case "first":
+                return new First();
+            case "section":
+                return new BySection();
+            case "linearId":
+                return new ByLinearId();
+            case "leastRecentlyUsed":
+                return new LeastRecentlyUsed();
+            default:
+                throw new IllegalArgumentException("Unknown notary selection strategy " + name);
+        }
+    }
+
+    /**
+     * Always the first notary, as before notary selection was configurable.
+     */
+    class First implements NotarySelector {
+        @NotNull
+        @Override
+        public Party select(@NotNull List<Party> notaries, int section, @NotNull UniqueIdentifier linearId) {
+            return notaries.get(0);
+        }
+
+        @Override
+        public boolean needsStableOrder() {
+            return false;
+        }
+    }
+
+    /**
+     * Pins each section to one notary.
+     */
+    class BySection implements NotarySelector {
+        @NotNull
+        @Override
+        public Party select(@NotNull List<Party> notaries, int section, @NotNull UniqueIdentifier linearId) {
+            return notaries.get(Math.floorMod(Integer.hashCode(section), notaries.size()));
+        }
+    }
+
+    /**
+     * Spreads issuance evenly over the notaries by hashing the linear id.
+     */
+    class ByLinearId implements NotarySelector {
+        @NotNull
+        @Override
+        public Party select(@NotNull List<Party> notaries, int section, @NotNull UniqueIdentifier linearId) {
+            return notaries.get(Math.floorMod(linearId.getId().hashCode(), notaries.size()));
+        }
+    }
+
+    /**
+     * The notary this node has gone longest without selecting.
+     */
+    class LeastRecentlyUsed implements NotarySelector {
+        private final Map<Party, Long> lastUsed = new ConcurrentHashMap<>();
+
+        @NotNull
+        @Override
+        public synchronized Party select(@NotNull List<Party> notaries, int section, @NotNull UniqueIdentifier linearId) {
+            Party selected = notaries.get(0);
+            long oldest = Long.MAX_VALUE;
+            for (Party notary : notaries) {
+                final long used = lastUsed.getOrDefault(notary, Long.MIN_VALUE);
+                if (used < oldest) {
+                    oldest = used;
+                    selected = notary;
+                }
+            }
+            lastUsed.put(selected, System.nanoTime());
+            return selected;
+        }
+    }
+}
@@ -0,0 +1,364 @@
+package com.template.flows;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.template.flows.TicketDigests.Bucket;
+import net.corda.core.contracts.StateRef;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.flows.*;
+import net.corda.core.identity.Party;
+import net.corda.core.node.StatesToRecord;
+import net.corda.core.serialization.CordaSerializable;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.core.utilities.ProgressTracker;
+import net.corda.core.utilities.ProgressTracker.Step;
+import net.corda.core.utilities.UntrustworthyData;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Checks that our vault and a counterparty's agree on the unconsumed tickets we share, and exchanges the
+ * transactions either side is missing. The sides compare {@link TicketDigests} section by section and descend, one
+ * hex digit of linear id at a time, only into buckets that differ; once a differing bucket holds at most
+ * {@link #LEAF_SIZE} tickets the two sides list its tickets instead. The messages exchanged grow with the number of
+ * differing tickets rather than with the size of the vaults. Each side reads the vault once per reconciliation.
+ */
+public interface ReconcileFlows {
+
+    int LEAF_SIZE = 64;
+
+    @CordaSerializable
+    enum Kind {DIGESTS, TICKETS, EXCHANGE}
+
+    /**
+     * Receives one transaction from {@code session} and records it, failing before it is recorded unless it is one
+     * of {@code expected}, which it is taken off.
+     */
+    @Suspendable
+    @NotNull
+    static SignedTransaction receiveExpected(@NotNull FlowLogic<?> flow, @NotNull FlowSession session,
+                                             @NotNull Set<SecureHash> expected) throws FlowException {
+        final SignedTransaction stx = flow.subFlow(new ReceiveTransactionFlow(session, true, StatesToRecord.NONE));
+        if (!expected.remove(stx.getId())) throw new FlowException("Transaction " + stx.getId() + " wasn't asked for");
+        flow.getServiceHub().recordTransactions(StatesToRecord.ONLY_RELEVANT, Collections.singletonList(stx));
+        return stx;
+    }
+
+    /**
+     * One step of the reconciliation, from initiator to responder. {@code keys} is {@code null} to ask for the
+     * section roots.
+     */
+    @CordaSerializable
+    class Request {
+        @NotNull
+        private final Kind kind;
+        @Nullable
+        private final List<String> keys;
+        @NotNull
+        private final List<SecureHash> wanted;
+        @NotNull
+        private final List<SecureHash> pushed;
+
+        public Request(@NotNull Kind kind, @Nullable List<String> keys, @NotNull List<SecureHash> wanted,
+                       @NotNull List<SecureHash> pushed) {
+            this.kind = kind;
+            this.keys = keys;
+            this.wanted = wanted;
+            this.pushed = pushed;
+        }
+
+        @NotNull
+        public Kind getKind() {
+            return kind;
+        }
+
+        @Nullable
+        public List<String> getKeys() {
+            return keys;
+        }
+
+        @NotNull
+        public List<SecureHash> getWanted() {
+            return wanted;
+        }
+
+        @NotNull
+        public List<SecureHash> getPushed() {
+            return pushed;
+        }
+    }
+
+    /**
+     * Tickets the two vaults disagreed on, and the transactions exchanged to fix it.
+     */
+    @CordaSerializable
+    class Report {
+        private final int roundTrips;
+        @NotNull
+        private final List<UUID> mismatched;
+        @NotNull
+        private final List<SecureHash> received;
+        @NotNull
+        private final List<SecureHash> sent;
+
+        public Report(int roundTrips, @NotNull List<UUID> mismatched, @NotNull List<SecureHash> received,
+                      @NotNull List<SecureHash> sent) {
+            this.roundTrips = roundTrips;
+            this.mismatched = mismatched;
+            this.received = received;
+            this.sent = sent;
+        }
+
+        public int getRoundTrips() {
+            return roundTrips;
+        }
+
+        @NotNull
+        public List<UUID> getMismatched() {
+            return mismatched;
+        }
+
+        @NotNull
+        public List<SecureHash> getReceived() {
+            return received;
+        }
+
+        @NotNull
+        public List<SecureHash> getSent() {
+            return sent;
+        }
+
+        public boolean isInSync() {
+            return mismatched.isEmpty();
+        }
+    }
+
+    @InitiatingFlow
+    @StartableByRPC
+    class ReconcileInitiator extends FlowLogic<Report> {
+        @NotNull
+        private final Party counterparty;
+        @NotNull
+        private final ProgressTracker progressTracker;
+        @NotNull
+        private final FlowTimer timer;
+        // Transient, so it stays out of checkpoints; a flow restored from one reads the vault again.
+        @Nullable
+        private transient TicketDigests digests;
+        public final static Step COMPARING_DIGESTS = new Step("Comparing bucket digests.");
+        public final static Step COMPARING_TICKETS = new Step("Comparing tickets of differing buckets.");
+        public final static Step EXCHANGING_TRANSACTIONS = new Step("Exchanging missing transactions.");
+
+        @NotNull
+        public static ProgressTracker tracker() {
+            return new ProgressTracker(COMPARING_DIGESTS, COMPARING_TICKETS, EXCHANGING_TRANSACTIONS);
+        }
+
+        public ReconcileInitiator(@NotNull Party counterparty) {
+            this.counterparty = counterparty;
+            this.progressTracker = tracker();
+            this.timer = new FlowTimer(this, this.progressTracker);
+        }
+
+        @Override
+        @NotNull
+        public ProgressTracker getProgressTracker() {
+            return progressTracker;
+        }
+
+        @Suspendable
+        @Override
+        public Report call() throws FlowException {
+            try {
+                final Report result = reconcile();
+                timer.success();
+                return result;
+            } catch (FlowException | RuntimeException e) {
+                timer.failure(e);
+                throw e;
+            }
+        }
+
+        @Suspendable
+        private Report reconcile() throws FlowException {
+            timer.step(COMPARING_DIGESTS);
+            final FlowSession session = initiateFlow(counterparty);
+            int roundTrips = 0;
+            final List<String> leaves = new ArrayList<>();
+            List<String> keys = null;
+            while (keys == null || !keys.isEmpty()) {
+                final Map<String, Bucket> ours = keys == null ? digests().roots() : digests().digests(keys);
+                final Map<String, Bucket> theirs = receiveBuckets(session.sendAndReceive(Map.class,
+                        new Request(Kind.DIGESTS, keys, Collections.emptyList(), Collections.emptyList())));
+                roundTrips++;
+
+                final Set<String> compared = new LinkedHashSet<>(ours.keySet());
+                compared.addAll(theirs.keySet());
+                final List<String> next = new ArrayList<>();
+                for (String key : compared) {
+                    final Bucket our = ours.getOrDefault(key, Bucket.EMPTY);
+                    final Bucket their = theirs.getOrDefault(key, Bucket.EMPTY);
+                    if (our.equals(their)) continue;
+                    if (Math.max(our.getCount(), their.getCount()) <= LEAF_SIZE) {
+                        leaves.add(key);
+                    } else {
+                        next.addAll(Arrays.asList(TicketDigests.children(key)));
+                    }
+                }
+                keys = next;
+            }
+
+            timer.step(COMPARING_TICKETS);
+            final List<UUID> mismatched = new ArrayList<>();
+            final List<SecureHash> wanted = new ArrayList<>();
+            final List<SecureHash> pushed = new ArrayList<>();
+            if (!leaves.isEmpty()) {
+                final Map<UUID, StateRef> ours = digests().tickets(leaves);
+                final Map<UUID, StateRef> theirs = receiveTickets(session.sendAndReceive(Map.class,
+                        new Request(Kind.TICKETS, leaves, Collections.emptyList(), Collections.emptyList())));
+                roundTrips++;
+                final Set<UUID> ids = new LinkedHashSet<>(ours.keySet());
+                ids.addAll(theirs.keySet());
+                final Set<SecureHash> wantedSet = new LinkedHashSet<>();
+                final Set<SecureHash> pushedSet = new LinkedHashSet<>();
+                for (UUID id : ids) {
+                    final StateRef our = ours.get(id);
+                    final StateRef their = theirs.get(id);
+                    if (Objects.equals(our, their)) continue;
+                    mismatched.add(id);
+                    if (their != null && getServiceHub().getValidatedTransactions().getTransaction(their.getTxhash()) == null) {
+                        wantedSet.add(their.getTxhash());
+                    }
+                    if (our != null) pushedSet.add(our.getTxhash());
+                }
+                wanted.addAll(wantedSet);
+                pushed.addAll(pushedSet);
+            }
+
+            timer.step(EXCHANGING_TRANSACTIONS);
+            session.send(new Request(Kind.EXCHANGE, null, wanted, pushed));
+            final Set<SecureHash> expected = new HashSet<>(wanted);
+            for (int i = 0; i < wanted.size(); i++) {
+                receiveExpected(this, session, expected);
+            }
+            for (SecureHash id : pushed) {
+                final SignedTransaction stx = getServiceHub().getValidatedTransactions().getTransaction(id);
+                if (stx == null) throw new FlowException("Transaction " + id + " is missing from our storage");
+                subFlow(new SendTransactionFlow(session, stx));
+            }
+            return new Report(roundTrips, mismatched, wanted, pushed);
+        }
+
+        @NotNull
+        private TicketDigests digests() {
+            if (digests == null) digests = TicketDigests.of(getServiceHub(), counterparty);
+            return digests;
+        }
+
+        @SuppressWarnings("unchecked")
+        @NotNull
+        private static Map<String, Bucket> receiveBuckets(@NotNull UntrustworthyData<Map> data)
+                throws FlowException {
+            return data.unwrap(it -> {
+                for (Map.Entry<?, ?> entry : ((Map<?, ?>) it).entrySet()) {
+                    if (!(entry.getKey() instanceof String) || !(entry.getValue() instanceof Bucket)) {
+                        throw new FlowException("Unexpected bucket digests");
+                    }
+                }
+                return (Map<String, Bucket>) it;
+            });
+        }
+
+        @SuppressWarnings("unchecked")
+        @NotNull
+        private static Map<UUID, StateRef> receiveTickets(@NotNull UntrustworthyData<Map> data)
+                throws FlowException {
+            return data.unwrap(it -> {
+                for (Map.Entry<?, ?> entry : ((Map<?, ?>) it).entrySet()) {
+                    if (!(entry.getKey() instanceof UUID) || !(entry.getValue() instanceof StateRef)) {
+                        throw new FlowException("Unexpected ticket listing");
+                    }
+                }
+                return (Map<UUID, StateRef>) it;
+            });
+        }
+    }
+
+    @InitiatedBy(ReconcileInitiator.class)
+    class ReconcileResponder extends FlowLogic<Void> {
+        @NotNull
+        private final FlowSession counterpartySession;
+        @NotNull
+        private final FlowTimer timer;
+        // Transient, so it stays out of checkpoints; a flow restored from one reads the vault again.
+        @Nullable
+        private transient TicketDigests digests;
+
+        public ReconcileResponder(@NotNull FlowSession counterpartySession) {
+            this.counterpartySession = counterpartySession;
+            this.timer = new FlowTimer(this);
+        }
+
+        @Suspendable
+        @Override
+        public Void call() throws FlowException {
+            try {
+                respond();
+                timer.success();
+                return null;
+            } catch (FlowException | RuntimeException e) {
+                timer.failure(e);
+                throw e;
+            }
+        }
+
+        @Suspendable
+        private void respond() throws FlowException {
+            final Party counterparty = counterpartySession.getCounterparty();
+            getServiceHub().cordaService(TicketPolicyService.class).getPolicy().admit(counterparty);
+            // Only transactions of tickets we listed to the counterparty may be requested.
+            final Set<SecureHash> listed = new HashSet<>();
+            while (true) {
+                final Request request = counterpartySession.receive(Request.class).unwrap(it -> it);
+                if (request.getKind() == Kind.DIGESTS) {
+                    counterpartySession.send(request.getKeys() == null
+                            ? digests(counterparty).roots()
+                            : digests(counterparty).digests(request.getKeys()));
+                } else if (request.getKind() == Kind.TICKETS) {
+                    if (request.getKeys() == null) throw new FlowException("No buckets to list");
+                    final Map<UUID, StateRef> tickets = digests(counterparty).tickets(request.getKeys());
+                    tickets.values().forEach(it -> listed.add(it.getTxhash()));
+                    counterpartySession.send(tickets);
+                } else {
+                    for (SecureHash id : request.getWanted()) {
+                        if (!listed.contains(id)) throw new FlowException("Transaction " + id + " was not listed");
+                        final SignedTransaction stx = getServiceHub().getValidatedTransactions().getTransaction(id);
+                        if (stx == null) throw new FlowException("Transaction " + id + " is missing from our storage");
+                        subFlow(new SendTransactionFlow(counterpartySession, stx));
+                    }
+                    final Set<SecureHash> expected = new HashSet<>(request.getPushed());
+                    for (int i = 0; i < request.getPushed().size(); i++) {
+                        receiveExpected(this, counterpartySession, expected);
+                    }
+                    return;
+                }
+            }
+        }
+
+        @NotNull
+        private TicketDigests digests(@NotNull Party counterparty) {
+            if (digests == null) digests = TicketDigests.of(getServiceHub(), counterparty);
+            return digests;
+        }
+    }
+}
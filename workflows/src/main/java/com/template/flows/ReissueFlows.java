@@ -0,0 +1,231 @@
+package com.template.flows;
+
+import co.paralleluniverse.fibers.Suspendable;
+import com.template.contracts.TicketContract;
+import com.template.contracts.TicketContract.Commands.Reissue;
+import com.template.contracts.TicketContract.Commands.Replace;
+import com.template.states.TicketState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.flows.*;
+import net.corda.core.identity.Party;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.core.transactions.TransactionBuilder;
+import net.corda.core.utilities.ProgressTracker;
+import net.corda.core.utilities.ProgressTracker.Step;
+import org.jetbrains.annotations.NotNull;
+
+import java.security.PublicKey;
+import java.security.SignatureException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static net.corda.core.contracts.ContractsDSL.requireThat;
+
+/**
+ * Re-issuance of long-lived tickets. The issuer and the spectator first exit the ticket in a notarised transaction,
+ * then the issuer alone issues an equivalent one, with the same spectator, section and seat, in a transaction without
+ * inputs, so the replacement's backchain starts afresh instead of carrying every transfer of the old ticket. The
+ * replacement keeps the old linear id in {@link TicketState#getReissuedFrom()}, gets a new one derived from the exit
+ * transaction, and counts its chain depth from 0 again. Both steps run in one flow, so an exit the notary accepted is
+ * always followed by its replacement.
+ */
+public interface ReissueFlows {
+
+    @InitiatingFlow
+    @StartableByRPC
+    @StartableByService
+    class ReissueInitiator extends FlowLogic<SignedTransaction> {
+        @NotNull
+        private final UniqueIdentifier linearId;
+        @NotNull
+        private final ProgressTracker progressTracker;
+        @NotNull
+        private final FlowTimer timer;
+        private final static Step GENERATING_TRANSACTION = new Step("Generating the re-issue transaction.");
+        private final static Step VERIFYING_TRANSACTION = new Step(
+                "Verifying contract constraints.");
+        private final static Step SIGNING_TRANSACTION = new Step(
+                "Signing transaction with our private key.");
+        public final static Step GATHERING_SIGNS = new Step(
+                "Gathering the spectator's signature.");
+        public final static Step FINALISING_TRANSACTION = new Step(
+                "Obtaining notary signature and recording transaction.");
+        public final static Step ISSUING_REPLACEMENT = new Step("Issuing and recording the replacement ticket.");
+
+        @NotNull
+        public static ProgressTracker tracker() {
+            return new ProgressTracker(GENERATING_TRANSACTION, VERIFYING_TRANSACTION, SIGNING_TRANSACTION,
+                    GATHERING_SIGNS, FINALISING_TRANSACTION, ISSUING_REPLACEMENT);
+        }
+
+        public ReissueInitiator(@NotNull UniqueIdentifier linearId) {
+            this.linearId = linearId;
+            this.progressTracker = tracker();
+            this.timer = new FlowTimer(this, this.progressTracker);
+        }
+
+        @Override
+        @NotNull
+        public ProgressTracker getProgressTracker() {
+            return progressTracker;
+        }
+
+        /**
+         * @return the transaction replacing the ticket.
+         */
+        @Suspendable
+        @Override
+        public SignedTransaction call() throws FlowException {
+            try {
+                final SignedTransaction result = reissue();
+                timer.success();
+                return result;
+            } catch (FlowException | RuntimeException e) {
+                timer.failure(e);
+                throw e;
+            }
+        }
+
+        @Suspendable
+        private SignedTransaction reissue() throws FlowException {
+            timer.step(GENERATING_TRANSACTION);
+            final StateAndRef<TicketState> input = getServiceHub().cordaService(TicketIndexService.class)
+                    .resolveUnconsumed(linearId);
+            if (input == null) throw new FlowException("No unconsumed ticket with linear id " + linearId);
+            final TicketState ticket = input.getState().getData();
+            if (!getOurIdentity().equals(ticket.getIssuer())) {
+                throw new FlowException("Only the issuer of a ticket can re-issue it");
+            }
+            final List<PublicKey> signers = ticket.getParticipants().stream()
+                    .map(it -> it.getOwningKey())
+                    .collect(Collectors.toList());
+
+            final Party notary = input.getState().getNotary();
+            final TransactionBuilder exitBuilder = new TransactionBuilder(notary)
+                    .addCommand(new Reissue(), signers)
+                    .addInputState(input);
+
+            timer.step(VERIFYING_TRANSACTION);
+            exitBuilder.verify(getServiceHub());
+
+            timer.step(SIGNING_TRANSACTION);
+            final SignedTransaction partlySignedTx = getServiceHub().signInitialTransaction(exitBuilder);
+
+            timer.step(GATHERING_SIGNS);
+            final FlowSession spectatorSession = initiateFlow(ticket.getSpectator());
+            final SignedTransaction fullySignedTx = subFlow(new CollectSignaturesFlow(partlySignedTx,
+                    Arrays.asList(spectatorSession)));
+
+            timer.step(FINALISING_TRANSACTION);
+            final SecureHash exitTxId = subFlow(new FinalityFlow(fullySignedTx, Arrays.asList(spectatorSession)))
+                    .getId();
+
+            // No input, so nothing to notarise: the replacement stays on the old ticket's notary for when it moves on.
+            timer.step(ISSUING_REPLACEMENT);
+            final TransactionBuilder replaceBuilder = new TransactionBuilder(notary)
+                    .addCommand(new Replace(exitTxId), getOurIdentity().getOwningKey())
+                    .addOutputState(ticket.reissue(exitTxId), TicketContract.ID);
+            replaceBuilder.verify(getServiceHub());
+            final SignedTransaction replaceTx = getServiceHub().signInitialTransaction(replaceBuilder);
+            return subFlow(new FinalityFlow(replaceTx, Arrays.asList(spectatorSession)));
+        }
+    }
+
+    @InitiatedBy(ReissueInitiator.class)
+    class ReissueResponder extends FlowLogic<SignedTransaction> {
+
+        @NotNull
+        private final FlowSession issuerSession;
+        @NotNull
+        private final ProgressTracker progressTracker;
+        @NotNull
+        private final FlowTimer timer;
+        public final static Step SIGNING_TRANSACTION = new Step("Signing the re-issue transaction.");
+        public final static Step FINALISING_TRANSACTION = new Step("Waiting to record transaction.");
+        public final static Step RECEIVING_REPLACEMENT = new Step("Waiting to record the replacement ticket.");
+
+        @NotNull
+        public static ProgressTracker tracker() {
+            return new ProgressTracker(SIGNING_TRANSACTION, FINALISING_TRANSACTION, RECEIVING_REPLACEMENT);
+        }
+
+        public ReissueResponder(@NotNull FlowSession issuerSession) {
+            this.issuerSession = issuerSession;
+            this.progressTracker = tracker();
+            this.timer = new FlowTimer(this, this.progressTracker);
+        }
+
+        @Override
+        @NotNull
+        public ProgressTracker getProgressTracker() {
+            return progressTracker;
+        }
+
+        @Suspendable
+        @Override
+        public SignedTransaction call() throws FlowException {
+            try {
+                final SignedTransaction result = sign();
+                timer.success();
+                return result;
+            } catch (FlowException | RuntimeException e) {
+                timer.failure(e);
+                throw e;
+            }
+        }
+
+        @Suspendable
+        private SignedTransaction sign() throws FlowException {
+            getServiceHub().cordaService(TicketPolicyService.class).getPolicy().admit(issuerSession.getCounterparty());
+            final Party issuer = issuerSession.getCounterparty();
+            final Party us = getOurIdentity();
+
+            timer.step(SIGNING_TRANSACTION);
+
+            class SignReissueFlow extends SignTransactionFlow {
+                private SignReissueFlow(FlowSession otherPartyFlow) {
+                    super(otherPartyFlow);
+                }
+
+                @Override
+                protected void checkTransaction(@NotNull SignedTransaction stx) throws FlowException {
+                    final List<TicketState> replaced;
+                    try {
+                        replaced = stx.toLedgerTransaction(getServiceHub(), false).inputsOfType(TicketState.class);
+                    } catch (SignatureException e) {
+                        throw new FlowException("Unable to resolve the transaction's inputs", e);
+                    }
+                    requireThat(req -> {
+                        req.using("Only 1 ticket is re-issued at a time", replaced.size() == 1);
+                        req.using("The re-issued ticket has to be ours, from the requesting issuer",
+                                replaced.get(0).getSpectator().equals(us) && replaced.get(0).getIssuer().equals(issuer));
+                        return null;
+                    });
+                }
+            }
+            final SecureHash exitTxId = subFlow(new SignReissueFlow(issuerSession)).getId();
+
+            timer.step(FINALISING_TRANSACTION);
+            final SignedTransaction exitTx = subFlow(new ReceiveFinalityFlow(issuerSession, exitTxId));
+
+            timer.step(RECEIVING_REPLACEMENT);
+            final SignedTransaction replaceTx = subFlow(new ReceiveFinalityFlow(issuerSession));
+            final TicketState replaced;
+            try {
+                replaced = exitTx.toLedgerTransaction(getServiceHub(), false).inputsOfType(TicketState.class).get(0);
+            } catch (SignatureException e) {
+                throw new FlowException("Unable to resolve the transaction's inputs", e);
+            }
+            // The contract leaves the issuer free to change what the replacement holds, so we check it here.
+            if (!replaceTx.getTx().outputsOfType(TicketState.class).equals(
+                    Collections.singletonList(replaced.reissue(exitTxId)))) {
+                throw new FlowException("The replacement issued isn't the ticket re-issued in " + exitTxId);
+            }
+            return replaceTx;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.template.flows;
+
+import com.template.flows.ReissueFlows.ReissueInitiator;
+import com.template.states.TicketState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.node.AppServiceHub;
+import net.corda.core.node.services.CordaService;
+import net.corda.core.node.services.ServiceLifecycleEvent;
+import net.corda.core.node.services.Vault;
+import net.corda.core.node.services.vault.PageSpecification;
+import net.corda.core.node.services.vault.QueryCriteria;
+import net.corda.core.serialization.SingletonSerializeAsToken;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Re-issues tickets we issued once they have been transferred {@code reissueChainDepth} times, keeping the
+ * backchain a buyer has to resolve bounded. Disabled when the CorDapp config key is absent or 0. Tickets already past
+ * the depth when the node starts are re-issued too.
+ */
+@CordaService
+public class ReissueService extends SingletonSerializeAsToken {
+
+    public static final String CHAIN_DEPTH_KEY = "reissueChainDepth";
+    private static final int SCAN_PAGE_SIZE = 1_000;
+
+    @NotNull
+    private final AppServiceHub serviceHub;
+    private final int chainDepth;
+    // Linear ids with a re-issue in flight, so a replayed update doesn't start a second one.
+    @NotNull
+    private final Set<UniqueIdentifier> inFlight = ConcurrentHashMap.newKeySet();
+    // Flows can't be started from the vault observer's thread, it would deadlock the node. A node has no hook to stop
+    // its services, so the thread is a daemon and ends whenever it has been idle for a minute.
+    @NotNull
+    private final ThreadPoolExecutor starter = new ThreadPoolExecutor(1, 1, 1, TimeUnit.MINUTES,
+            new LinkedBlockingQueue<>(), runnable -> {
+        final Thread thread = new Thread(runnable, "reissue-starter");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public ReissueService(@NotNull AppServiceHub serviceHub) {
+        this.serviceHub = serviceHub;
+        this.chainDepth = serviceHub.getAppContext().getConfig().exists(CHAIN_DEPTH_KEY)
+                ? serviceHub.getAppContext().getConfig().getInt(CHAIN_DEPTH_KEY)
+                : 0;
+        starter.allowCoreThreadTimeOut(true);
+        serviceHub.register(event -> {
+            if (event == ServiceLifecycleEvent.STATE_MACHINE_STARTED && chainDepth > 0) {
+                track();
+            }
+        });
+    }
+
+    public int getChainDepth() {
+        return chainDepth;
+    }
+
+    private void track() {
+        final QueryCriteria unconsumed = new QueryCriteria.VaultQueryCriteria(Vault.StateStatus.UNCONSUMED);
+        serviceHub.getVaultService().trackBy(TicketState.class, unconsumed, new PageSpecification(1, 1))
+                .getUpdates().subscribe(update -> update.getProduced().forEach(this::onProduced));
+        scan();
+    }
+
+    /**
+     * Goes through the tickets we issued that are unconsumed, by key, for those that reached the depth before the
+     * updates feed was followed.
+     */
+    private void scan() {
+        final QueryCriteria issuedByUs = TicketQueries.byIssuer(serviceHub.getMyInfo().getLegalIdentities().get(0));
+        UUID after = null;
+        while (true) {
+            final List<StateAndRef<TicketState>> page = serviceHub.getVaultService().queryBy(TicketState.class,
+                    issuedByUs.and(TicketQueries.unconsumedAfter(after)), new PageSpecification(1, SCAN_PAGE_SIZE),
+                    TicketQueries.linearIdOrder()).getStates();
+            page.forEach(this::onProduced);
+            if (page.size() < SCAN_PAGE_SIZE) return;
+            after = page.get(page.size() - 1).getState().getData().getLinearId().getId();
+        }
+    }
+
+    private void onProduced(@NotNull StateAndRef<TicketState> state) {
+        final TicketState ticket = state.getState().getData();
+        if (ticket.getChainDepth() < chainDepth) return;
+        if (!serviceHub.getMyInfo().isLegalIdentity(ticket.getIssuer())) return;
+        final UniqueIdentifier linearId = ticket.getLinearId();
+        if (!inFlight.add(linearId)) return;
+        starter.execute(() -> {
+            try {
+                serviceHub.startFlow(new ReissueInitiator(linearId)).getReturnValue().then(done -> {
+                    inFlight.remove(linearId);
+                    return null;
+                });
+            } catch (RuntimeException e) {
+                // Not started, so the next update or scan may try again.
+                inFlight.remove(linearId);
+                throw e;
+            }
+        });
+    }
+}
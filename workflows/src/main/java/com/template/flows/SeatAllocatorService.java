@@ -0,0 +1,215 @@
+package com.template.flows;
+
+import com.template.schemas.SeatClaimSchemaV1.PersistentSeatClaim;
+import com.template.states.TicketState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.identity.Party;
+import net.corda.core.node.AppServiceHub;
+import net.corda.core.node.services.CordaService;
+import net.corda.core.serialization.SingletonSerializeAsToken;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import javax.persistence.TypedQuery;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Allocates the issuer's seats, one bitmap per section with a bit per seat. A buy claims the lowest free seat with a
+ * compare-and-set on one word of the bitmap, so concurrent buys get distinct seats without a lock or a database row
+ * per purchase, and releases it if the buy fails. Seats need no capacity of their own: the inventory already bounds
+ * how many tickets are sold, and the lowest free seat keeps the seats sold dense.
+ *
+ * The seats are persisted on the tickets themselves, and in {@code seat_claims} while their buy runs: a claim is
+ * written in the buy's own transaction, so it is committed with the checkpoint a restarted buy resumes from, and
+ * dropped by {@link #settle} once the ticket is recorded or by {@link #settleLater} if the buy fails. A section's
+ * bitmap is loaded from the seats of every ticket the vault has of it, consumed or not, and of every claim on first
+ * use, and seats recorded afterwards, by any flow, are marked as they are.
+ */
+@CordaService
+public class SeatAllocatorService extends SingletonSerializeAsToken {
+
+    @NotNull
+    private final AppServiceHub serviceHub;
+    @NotNull
+    private final Map<Integer, SeatMap> sections = new ConcurrentHashMap<>();
+    // Off the flow's thread, so settleLater doesn't join a failing flow's transaction. A node has no hook to stop its
+    // services, so the thread is a daemon and ends whenever it has been idle for a minute.
+    @NotNull
+    private final ThreadPoolExecutor settler = new ThreadPoolExecutor(1, 1, 1, TimeUnit.MINUTES,
+            new LinkedBlockingQueue<>(), runnable -> {
+        final Thread thread = new Thread(runnable, "seat-claim-settler");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public SeatAllocatorService(@NotNull AppServiceHub serviceHub) {
+        this.serviceHub = serviceHub;
+        settler.allowCoreThreadTimeOut(true);
+        serviceHub.getVaultService().rawUpdates().subscribe(update -> {
+            for (StateAndRef<?> produced : update.getProduced()) {
+                if (!(produced.getState().getData() instanceof TicketState)) continue;
+                final TicketState ticket = (TicketState) produced.getState().getData();
+                final SeatMap seats = sections.get(ticket.getSection());
+                if (seats != null && ticket.getSeat() != null && ticket.getIssuer().equals(issuer())) {
+                    seats.mark(ticket.getSeat());
+                }
+            }
+        });
+    }
+
+    /**
+     * Claims the lowest free seat of {@code section} for the buy of flow {@code runId}, recording the claim in the
+     * caller's transaction.
+     *
+     * @throws IllegalStateException if every seat the bitmap can hold is taken.
+     */
+    public int claim(@NotNull UUID runId, int section) {
+        final int seat = seats(section).claim();
+        serviceHub.withEntityManager(em -> {
+            em.persist(new PersistentSeatClaim(runId, section, seat));
+        });
+        return seat;
+    }
+
+    /**
+     * Drops the claims of the buy of flow {@code runId}, in the caller's transaction, once its tickets are recorded
+     * and hold the seats themselves.
+     */
+    public void settle(@NotNull UUID runId) {
+        serviceHub.withEntityManager(em -> {
+            em.createQuery("delete from PersistentSeatClaim c where c.runId = :runId")
+                    .setParameter("runId", runId)
+                    .executeUpdate();
+        });
+    }
+
+    /**
+     * Drops the claims of the failed buy of flow {@code runId} in a transaction of its own, as the failing flow's is
+     * rolled back. Release the seats themselves with {@link #releaseUnlessRecorded}.
+     */
+    public void settleLater(@NotNull UUID runId) {
+        settler.execute(() -> settle(runId));
+    }
+
+    /**
+     * Frees {@code seat} of {@code section} again, after the buy it was claimed for failed.
+     */
+    public void release(int section, int seat) {
+        seats(section).release(seat);
+    }
+
+    /**
+     * Frees {@code seat} of {@code section} after its buy failed, unless the transaction {@code txId} issuing it was
+     * recorded regardless.
+     */
+    public void releaseUnlessRecorded(@Nullable SecureHash txId, int section, int seat) {
+        if (txId != null && serviceHub.getValidatedTransactions().getTransaction(txId) != null) return;
+        release(section, seat);
+    }
+
+    @NotNull
+    private SeatMap seats(int section) {
+        // Buys of a section wait for its bitmap to load; other sections carry on.
+        return sections.computeIfAbsent(section, this::load);
+    }
+
+    @NotNull
+    private SeatMap load(int section) {
+        final SeatMap seats = new SeatMap();
+        final Set<Integer> taken = serviceHub.withEntityManager(em -> {
+            final TypedQuery<Integer> sold = em.createQuery(
+                    "select distinct t.seat from PersistentTicket t"
+                            + " where t.issuer = :issuer and t.section = :section and t.seat is not null",
+                    Integer.class);
+            sold.setParameter("issuer", issuer().getName().toString());
+            sold.setParameter("section", section);
+            // Seats of buys still running, resumed from their checkpoints after a restart.
+            final TypedQuery<Integer> claimed = em.createQuery(
+                    "select c.seat from PersistentSeatClaim c where c.section = :section", Integer.class);
+            claimed.setParameter("section", section);
+            final Set<Integer> seats = new HashSet<>(sold.getResultList());
+            seats.addAll(claimed.getResultList());
+            return seats;
+        });
+        taken.forEach(seats::mark);
+        return seats;
+    }
+
+    @NotNull
+    private Party issuer() {
+        return serviceHub.getMyInfo().getLegalIdentities().get(0);
+    }
+
+    /**
+     * A bitmap of taken seats, grown a segment at a time as seats are claimed. All operations are lock free.
+     */
+    private static final class SeatMap {
+        private static final int SEGMENT_WORDS = 1024;
+        private static final int MAX_SEGMENTS = 1024;
+
+        @NotNull
+        private final AtomicReferenceArray<AtomicLongArray> segments = new AtomicReferenceArray<>(MAX_SEGMENTS);
+        // Where claims start looking; the words below it are full, short of a release racing a claim.
+        @NotNull
+        private final AtomicInteger firstFreeWord = new AtomicInteger();
+
+        int claim() {
+            final int start = firstFreeWord.get();
+            for (int word = start; word < SEGMENT_WORDS * MAX_SEGMENTS; word++) {
+                final AtomicLongArray segment = segment(word / SEGMENT_WORDS);
+                final int index = word % SEGMENT_WORDS;
+                long value;
+                while ((value = segment.get(index)) != -1L) {
+                    final long bit = Long.lowestOneBit(~value);
+                    if (segment.compareAndSet(index, value, value | bit)) {
+                        // Fails if a seat below was released meanwhile, which is what the hint should then point at.
+                        if (word > start) firstFreeWord.compareAndSet(start, word);
+                        return word * 64 + Long.numberOfTrailingZeros(bit);
+                    }
+                }
+            }
+            throw new IllegalStateException("Every seat is taken");
+        }
+
+        void mark(int seat) {
+            final AtomicLongArray segment = segment(seat / 64 / SEGMENT_WORDS);
+            final int index = seat / 64 % SEGMENT_WORDS;
+            final long bit = 1L << (seat % 64);
+            long value;
+            do {
+                value = segment.get(index);
+            } while ((value & bit) == 0 && !segment.compareAndSet(index, value, value | bit));
+        }
+
+        void release(int seat) {
+            final AtomicLongArray segment = segment(seat / 64 / SEGMENT_WORDS);
+            final int index = seat / 64 % SEGMENT_WORDS;
+            final long bit = 1L << (seat % 64);
+            long value;
+            do {
+                value = segment.get(index);
+            } while ((value & bit) != 0 && !segment.compareAndSet(index, value, value & ~bit));
+            firstFreeWord.accumulateAndGet(seat / 64, Math::min);
+        }
+
+        @NotNull
+        private AtomicLongArray segment(int number) {
+            final AtomicLongArray segment = segments.get(number);
+            if (segment != null) return segment;
+            segments.compareAndSet(number, null, new AtomicLongArray(SEGMENT_WORDS));
+            return segments.get(number);
+        }
+    }
+}
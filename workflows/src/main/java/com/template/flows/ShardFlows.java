@@ -0,0 +1,26 @@
+package com.template.flows;
+
+import co.paralleluniverse.fibers.Suspendable;
+import net.corda.core.flows.FlowException;
+import net.corda.core.flows.FlowLogic;
+import net.corda.core.flows.StartableByRPC;
+
+import java.util.List;
+
+/**
+ * What a router in front of several issuer nodes needs to know about each of them; see {@link IssuerShards}.
+ */
+public interface ShardFlows {
+
+    /**
+     * The sections this node sells.
+     */
+    @StartableByRPC
+    class IssuedSectionsFlow extends FlowLogic<List<Integer>> {
+        @Suspendable
+        @Override
+        public List<Integer> call() throws FlowException {
+            return IssuerShards.issuedSections(getServiceHub());
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package com.template.flows;
+
+import co.paralleluniverse.fibers.Suspendable;
+import net.corda.core.flows.FlowException;
+import net.corda.core.flows.FlowLogic;
+import net.corda.core.flows.StartableByRPC;
+import net.corda.core.identity.Party;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Map;
+
+/**
+ * Read-only ticket counts for dashboards, computed in the database; see {@link TicketStatistics}.
+ */
+public interface StatisticsFlows {
+
+    /**
+     * Unconsumed tickets per section: sold tickets on the issuer, holdings on a spectator. Served from the
+     * {@link TicketStatsService} summary when it is enabled.
+     */
+    @StartableByRPC
+    class SectionCountsFlow extends FlowLogic<Map<Integer, Long>> {
+        @Suspendable
+        @Override
+        public Map<Integer, Long> call() throws FlowException {
+            final Map<Integer, Long> summary = getServiceHub().cordaService(TicketStatsService.class).sectionCounts();
+            return summary != null ? summary : TicketStatistics.sectionCounts(getServiceHub());
+        }
+    }
+
+    @StartableByRPC
+    class HoldingFlow extends FlowLogic<Long> {
+        @NotNull
+        private final Party spectator;
+
+        public HoldingFlow(@NotNull Party spectator) {
+            this.spectator = spectator;
+        }
+
+        @Suspendable
+        @Override
+        public Long call() throws FlowException {
+            return TicketStatistics.holding(getServiceHub(), spectator);
+        }
+    }
+
+    /**
+     * The biggest holders and how many tickets each holds, in one section or in all of them when it is 0.
+     */
+    @StartableByRPC
+    class HolderCountsFlow extends FlowLogic<Map<String, Long>> {
+        private final int section;
+        private final int limit;
+
+        public HolderCountsFlow(int section, int limit) {
+            this.section = section;
+            this.limit = limit;
+        }
+
+        @Suspendable
+        @Override
+        public Map<String, Long> call() throws FlowException {
+            if (limit <= 0) throw new FlowException("The limit has to be positive");
+            return TicketStatistics.holderCounts(getServiceHub(), section, limit);
+        }
+    }
+}
@@ -0,0 +1,197 @@
+package com.template.flows;
+
+import com.template.states.TicketState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.StateRef;
+import net.corda.core.crypto.SecureHash;
+import net.corda.core.identity.Party;
+import net.corda.core.node.ServiceHub;
+import net.corda.core.node.services.Vault;
+import net.corda.core.node.services.vault.PageSpecification;
+import net.corda.core.serialization.CordaSerializable;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * Digests of the unconsumed tickets shared with a counterparty, bucketed by section and then by linear id prefix.
+ * A bucket key is {@code "<section>/<hex prefix>"}: {@code "30/"} holds every ticket of section 30 and
+ * {@code "30/a"} those whose linear id starts with {@code a}. A bucket's digest is the XOR of the hashes of its
+ * tickets' linear id and state ref, so it doesn't depend on the order tickets are read in.
+ *
+ * The vault is read once, one page at a time, by {@link #of}; the snapshot then answers every level of a
+ * reconciliation from memory, each bucket from the range of linear ids it covers.
+ */
+public final class TicketDigests {
+
+    private static final int PAGE_SIZE = 1_000;
+
+    // Per section, the shared tickets by linear id in hex.
+    @NotNull
+    private final Map<Integer, TreeMap<String, Ticket>> sections;
+
+    private TicketDigests(@NotNull Map<Integer, TreeMap<String, Ticket>> sections) {
+        this.sections = sections;
+    }
+
+    @CordaSerializable
+    public static class Bucket {
+        public static final Bucket EMPTY = new Bucket(0, SecureHash.getZeroHash());
+
+        private final int count;
+        @NotNull
+        private final SecureHash digest;
+
+        public Bucket(int count, @NotNull SecureHash digest) {
+            this.count = count;
+            this.digest = digest;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        @NotNull
+        public SecureHash getDigest() {
+            return digest;
+        }
+
+        @NotNull
+        Bucket plus(@NotNull Bucket other) {
+            final byte[] bytes = digest.getBytes().clone();
+            final byte[] otherBytes = other.digest.getBytes();
+            for (int i = 0; i < bytes.length; i++) bytes[i] ^= otherBytes[i];
+            return new Bucket(count + other.count, new SecureHash.SHA256(bytes));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Bucket that = (Bucket) o;
+            return count == that.count && digest.equals(that.digest);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(count, digest);
+        }
+    }
+
+    /**
+     * Reads the unconsumed tickets we share with {@code counterparty}.
+     */
+    @NotNull
+    public static TicketDigests of(@NotNull ServiceHub serviceHub, @NotNull Party counterparty) {
+        final Map<Integer, TreeMap<String, Ticket>> sections = new HashMap<>();
+        UUID after = null;
+        while (true) {
+            final Vault.Page<TicketState> page = serviceHub.getVaultService().queryBy(TicketState.class,
+                    TicketQueries.unconsumedAfter(after).and(TicketQueries.involving(counterparty)),
+                    new PageSpecification(1, PAGE_SIZE), TicketQueries.linearIdOrder());
+            final List<StateAndRef<TicketState>> states = page.getStates();
+            for (StateAndRef<TicketState> state : states) {
+                final TicketState ticket = state.getState().getData();
+                sections.computeIfAbsent(ticket.getSection(), it -> new TreeMap<>())
+                        .put(hex(ticket.getLinearId().getId()), new Ticket(ticket.getLinearId().getId(), state.getRef()));
+            }
+            if (states.size() < PAGE_SIZE) return new TicketDigests(sections);
+            after = states.get(states.size() - 1).getState().getData().getLinearId().getId();
+        }
+    }
+
+    /**
+     * The section buckets, {@code "<section>/"}, of every section we share tickets in.
+     */
+    @NotNull
+    public Map<String, Bucket> roots() {
+        final List<String> keys = new ArrayList<>();
+        sections.keySet().forEach(section -> keys.add(section + "/"));
+        return digests(keys);
+    }
+
+    /**
+     * The digests of {@code keys}. Keys without tickets, or that aren't bucket keys, are left out.
+     */
+    @NotNull
+    public Map<String, Bucket> digests(@NotNull Collection<String> keys) {
+        final Map<String, Bucket> buckets = new LinkedHashMap<>();
+        for (String key : keys) {
+            Bucket bucket = Bucket.EMPTY;
+            for (Ticket ticket : bucket(key).values()) bucket = bucket.plus(ticket.bucket);
+            if (bucket.getCount() > 0) buckets.put(key, bucket);
+        }
+        return buckets;
+    }
+
+    /**
+     * The tickets in {@code keys}, by linear id.
+     */
+    @NotNull
+    public Map<UUID, StateRef> tickets(@NotNull Collection<String> keys) {
+        final Map<UUID, StateRef> tickets = new LinkedHashMap<>();
+        for (String key : keys) {
+            bucket(key).values().forEach(it -> tickets.put(it.linearId, it.ref));
+        }
+        return tickets;
+    }
+
+    /**
+     * The 16 buckets one hex digit below {@code key}.
+     */
+    @NotNull
+    public static String[] children(@NotNull String key) {
+        final String[] children = new String[16];
+        for (int i = 0; i < 16; i++) children[i] = key + Character.forDigit(i, 16);
+        return children;
+    }
+
+    /**
+     * The tickets of bucket {@code key}: the linear ids from its prefix up to, not including, the prefix followed by
+     * {@code g}, which sorts after every hex digit.
+     */
+    @NotNull
+    private SortedMap<String, Ticket> bucket(@NotNull String key) {
+        final int slash = key.indexOf('/');
+        if (slash < 0) return Collections.emptySortedMap();
+        final TreeMap<String, Ticket> section;
+        try {
+            section = sections.get(Integer.parseInt(key.substring(0, slash)));
+        } catch (NumberFormatException e) {
+            return Collections.emptySortedMap();
+        }
+        if (section == null) return Collections.emptySortedMap();
+        final String prefix = key.substring(slash + 1);
+        return section.subMap(prefix, prefix + "g");
+    }
+
+    @NotNull
+    private static String hex(@NotNull UUID id) {
+        return String.format("%016x%016x", id.getMostSignificantBits(), id.getLeastSignificantBits());
+    }
+
+    private static final class Ticket {
+        @NotNull
+        private final UUID linearId;
+        @NotNull
+        private final StateRef ref;
+        @NotNull
+        private final Bucket bucket;
+
+        private Ticket(@NotNull UUID linearId, @NotNull StateRef ref) {
+            this.linearId = linearId;
+            this.ref = ref;
+            this.bucket = new Bucket(1, SecureHash.sha256(linearId + "@" + ref));
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package com.template.flows;
+
+import com.template.states.TicketState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.StateRef;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.node.AppServiceHub;
+import net.corda.core.node.services.CordaService;
+import net.corda.core.node.services.ServiceLifecycleEvent;
+import net.corda.core.node.services.Vault;
+import net.corda.core.node.services.vault.PageSpecification;
+import net.corda.core.node.services.vault.QueryCriteria;
+import net.corda.core.serialization.SingletonSerializeAsToken;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * Node-local index of unconsumed tickets by linear id, so the transfer and exit flows can resolve their input
+ * without a vault query. The index is warmed once the node's state machine has started and is kept current from
+ * the vault updates feed; it holds at most {@code ticketIndexCapacity} entries, evicting the least recently used.
+ */
+@CordaService
+public class TicketIndexService extends SingletonSerializeAsToken {
+
+    public static final String CAPACITY_KEY = "ticketIndexCapacity";
+    private static final int DEFAULT_CAPACITY = 100_000;
+    private static final int WARM_PAGE_SIZE = 1_000;
+
+    @NotNull
+    private final AppServiceHub serviceHub;
+    private final int capacity;
+    @NotNull
+    private final Map<UUID, StateAndRef<TicketState>> index;
+    // Refs consumed while the index is being warmed, so a stale page cannot re-add them.
+    @Nullable
+    private Set<StateRef> consumedWhileWarming = new HashSet<>();
+    // Counts the refs consumed, so a vault read that raced a consume is not cached.
+    private long consumedCount;
+
+    public TicketIndexService(@NotNull AppServiceHub serviceHub) {
+        this.serviceHub = serviceHub;
+        this.capacity = serviceHub.getAppContext().getConfig().exists(CAPACITY_KEY)
+                ? serviceHub.getAppContext().getConfig().getInt(CAPACITY_KEY)
+                : DEFAULT_CAPACITY;
+        this.index = new LinkedHashMap<UUID, StateAndRef<TicketState>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<UUID, StateAndRef<TicketState>> eldest) {
+                return size() > capacity;
+            }
+        };
+        serviceHub.register(event -> {
+            if (event == ServiceLifecycleEvent.STATE_MACHINE_STARTED) {
+                track();
+            }
+        });
+    }
+
+    /**
+     * Returns the unconsumed ticket with {@code linearId}, from the index when present and otherwise from the
+     * vault, or {@code null} if the vault holds no such unconsumed ticket.
+     */
+    @Nullable
+    public StateAndRef<TicketState> resolveUnconsumed(@NotNull UniqueIdentifier linearId) {
+        final StateAndRef<TicketState> cached = get(linearId);
+        if (cached != null) return cached;
+
+        final long consumedBefore;
+        synchronized (index) {
+            consumedBefore = consumedCount;
+        }
+        final List<StateAndRef<TicketState>> states = serviceHub.getVaultService()
+                .queryBy(TicketState.class, TicketQueries.unconsumedByLinearId(linearId)).getStates();
+        if (states.isEmpty()) return null;
+        final StateAndRef<TicketState> state = states.get(0);
+        putResolved(state, consumedBefore);
+        return state;
+    }
+
+    @Nullable
+    public StateAndRef<TicketState> get(@NotNull UniqueIdentifier linearId) {
+        synchronized (index) {
+            return index.get(linearId.getId());
+        }
+    }
+
+    public int size() {
+        synchronized (index) {
+            return index.size();
+        }
+    }
+
+    private void put(@NotNull StateAndRef<TicketState> state) {
+        synchronized (index) {
+            index.put(state.getState().getData().getLinearId().getId(), state);
+        }
+    }
+
+    private void putResolved(@NotNull StateAndRef<TicketState> state, long consumedBefore) {
+        synchronized (index) {
+            // The ticket may have been consumed since it was read; the flow's notarisation catches that, the index
+            // must not keep it.
+            if (consumedCount != consumedBefore) return;
+            if (consumedWhileWarming != null && consumedWhileWarming.contains(state.getRef())) return;
+            index.putIfAbsent(state.getState().getData().getLinearId().getId(), state);
+        }
+    }
+
+    private void putWarm(@NotNull StateAndRef<TicketState> state) {
+        synchronized (index) {
+            if (consumedWhileWarming != null && consumedWhileWarming.contains(state.getRef())) return;
+            index.putIfAbsent(state.getState().getData().getLinearId().getId(), state);
+        }
+    }
+
+    private void remove(@NotNull StateAndRef<TicketState> state) {
+        synchronized (index) {
+            consumedCount++;
+            if (consumedWhileWarming != null) consumedWhileWarming.add(state.getRef());
+            final UUID id = state.getState().getData().getLinearId().getId();
+            // A transfer consumes and produces the same linear id; only drop the entry if it is the consumed ref.
+            final StateAndRef<TicketState> current = index.get(id);
+            if (current != null && current.getRef().equals(state.getRef())) {
+                index.remove(id);
+            }
+        }
+    }
+
+    private void track() {
+        final QueryCriteria unconsumed = new QueryCriteria.VaultQueryCriteria(Vault.StateStatus.UNCONSUMED);
+        // Only the updates feed is needed here; the snapshot is loaded page by page in warm().
+        serviceHub.getVaultService().trackBy(TicketState.class, unconsumed, new PageSpecification(1, 1))
+                .getUpdates().subscribe(update -> {
+            update.getConsumed().forEach(this::remove);
+            update.getProduced().forEach(this::put);
+        });
+        warm(unconsumed);
+    }
+
+    private void warm(@NotNull QueryCriteria unconsumed) {
+        int pageNumber = 1;
+        int loaded = 0;
+        while (loaded < capacity) {
+            final Vault.Page<TicketState> page = serviceHub.getVaultService().queryBy(TicketState.class, unconsumed,
+                    new PageSpecification(pageNumber, WARM_PAGE_SIZE));
+            page.getStates().forEach(this::putWarm);
+            loaded += page.getStates().size();
+            if (page.getStates().size() < WARM_PAGE_SIZE) break;
+            pageNumber++;
+        }
+        synchronized (index) {
+            consumedWhileWarming = null;
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package com.template.flows;
+
+import net.corda.core.cordapp.CordappConfig;
+import net.corda.core.flows.FlowException;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.identity.Party;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * The rules responders apply before signing anything, compiled once from the CorDapp config:
+ *
+ * <pre>
+ *   allowedSections = "15,30,50"                      sections a ticket may be in
+ *   allowedIssuers = "O=Issuer,L=London,C=GB;..."     issuers accepted, any when absent
+ *   counterpartyRatePerSecond = 50                    requests accepted per counterparty, unlimited when absent
+ *   maxBatchSize = 100                                tickets accepted in one request
+ * </pre>
+ */
+public final class TicketPolicy {
+
+    public static final String ALLOWED_SECTIONS_KEY = "allowedSections";
+    public static final String ALLOWED_ISSUERS_KEY = "allowedIssuers";
+    public static final String RATE_KEY = "counterpartyRatePerSecond";
+    public static final String MAX_BATCH_SIZE_KEY = "maxBatchSize";
+
+    private static final int MAX_SECTION = 1024;
+
+    @NotNull
+    private final BitSet allowedSections;
+    @NotNull
+    private final Set<CordaX500Name> allowedIssuers;
+    private final double counterpartyRatePerSecond;
+    private final int maxBatchSize;
+    @NotNull
+    private final Map<CordaX500Name, TokenBucket> counterpartyBuckets = new ConcurrentHashMap<>();
+
+    public TicketPolicy(@NotNull Set<Integer> allowedSections, @NotNull Set<CordaX500Name> allowedIssuers,
+                        double counterpartyRatePerSecond, int maxBatchSize) {
+        this.allowedSections = new BitSet(MAX_SECTION);
+        allowedSections.forEach(this.allowedSections::set);
+        this.allowedIssuers = allowedIssuers;
+        this.counterpartyRatePerSecond = counterpartyRatePerSecond;
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    @NotNull
+    public static TicketPolicy fromConfig(@NotNull CordappConfig config) {
+        final Set<Integer> sections = Arrays.stream((config.exists(ALLOWED_SECTIONS_KEY)
+                ? config.getString(ALLOWED_SECTIONS_KEY) : "15,30,50").split(","))
+                .map(String::trim).filter(it -> !it.isEmpty())
+                .map(Integer::parseInt)
+                .collect(Collectors.toSet());
+        final Set<CordaX500Name> issuers = config.exists(ALLOWED_ISSUERS_KEY)
+                ? Arrays.stream(config.getString(ALLOWED_ISSUERS_KEY).split(";"))
+                        .map(String::trim).filter(it -> !it.isEmpty())
+                        .map(CordaX500Name::parse)
+                        .collect(Collectors.toSet())
+                : Collections.emptySet();
+        final double rate = config.exists(RATE_KEY) ? config.getDouble(RATE_KEY) : 0;
+        final int maxBatchSize = config.exists(MAX_BATCH_SIZE_KEY) ? config.getInt(MAX_BATCH_SIZE_KEY) : Integer.MAX_VALUE;
+        return new TicketPolicy(sections, issuers, rate, maxBatchSize);
+    }
+
+    /**
+     * Counts a request from {@code counterparty} against its rate cap.
+     *
+     * @throws FlowException if the counterparty is over its cap.
+     */
+    public void admit(@NotNull Party counterparty) throws FlowException {
+        if (counterpartyRatePerSecond <= 0) return;
+        final TokenBucket bucket = counterpartyBuckets.computeIfAbsent(counterparty.getName(),
+                it -> new TokenBucket(counterpartyRatePerSecond, Math.max(1, counterpartyRatePerSecond)));
+        if (!bucket.tryAcquire()) {
+            throw new FlowException("Too many requests from " + counterparty.getName() + ", try again later");
+        }
+    }
+
+    /**
+     * @throws FlowException naming the first rule {@code proposal} breaks.
+     */
+    public void check(@NotNull TicketProposal proposal) throws FlowException {
+        if (proposal.size() > maxBatchSize) {
+            throw new FlowException("At most " + maxBatchSize + " tickets are accepted per request");
+        }
+        for (int section : proposal.getSections()) {
+            if (section < 0 || section >= MAX_SECTION || !allowedSections.get(section)) {
+                throw new FlowException("Tickets of section " + section + " are not accepted");
+            }
+        }
+        if (!allowedIssuers.isEmpty()) {
+            for (CordaX500Name issuer : proposal.getIssuers()) {
+                if (!allowedIssuers.contains(issuer)) {
+                    throw new FlowException("Tickets issued by " + issuer + " are not accepted");
+                }
+            }
+        }
+    }
+}
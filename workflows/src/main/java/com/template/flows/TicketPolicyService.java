@@ -0,0 +1,25 @@
+package com.template.flows;
+
+import net.corda.core.node.AppServiceHub;
+import net.corda.core.node.services.CordaService;
+import net.corda.core.serialization.SingletonSerializeAsToken;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Holds the node's {@link TicketPolicy}, compiled from the CorDapp config when the node starts.
+ */
+@CordaService
+public class TicketPolicyService extends SingletonSerializeAsToken {
+
+    @NotNull
+    private final TicketPolicy policy;
+
+    public TicketPolicyService(@NotNull AppServiceHub serviceHub) {
+        this.policy = TicketPolicy.fromConfig(serviceHub.getAppContext().getConfig());
+    }
+
+    @NotNull
+    public TicketPolicy getPolicy() {
+        return policy;
+    }
+}
@@ -0,0 +1,99 @@
+package com.template.flows;
+
+import com.template.states.TicketState;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.identity.CordaX500Name;
+import net.corda.core.identity.Party;
+import net.corda.core.serialization.CordaSerializable;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * What a transfer or exit is about, sent to each counterparty ahead of the transaction so the responder's
+ * {@link TicketPolicy} can turn it away before resolving dependencies or signing. Counterparties that only record
+ * the transaction, such as the issuer of a transferred ticket, are told no signature is requested.
+ */
+@CordaSerializable
+public class TicketProposal {
+    @NotNull
+    private final List<Integer> sections;
+    @NotNull
+    private final List<CordaX500Name> issuers;
+    private final boolean signatureRequested;
+
+    public TicketProposal(@NotNull List<Integer> sections, @NotNull List<CordaX500Name> issuers,
+                          boolean signatureRequested) {
+        this.sections = sections;
+        this.issuers = issuers;
+        this.signatureRequested = signatureRequested;
+    }
+
+    @NotNull
+    public static TicketProposal of(@NotNull List<TicketState> tickets, boolean signatureRequested) {
+        return new TicketProposal(
+                tickets.stream().map(TicketState::getSection).collect(Collectors.toList()),
+                tickets.stream().map(it -> it.getIssuer().getName()).collect(Collectors.toList()),
+                signatureRequested);
+    }
+
+    /**
+     * The proposal for {@code party} in a transaction consuming {@code consumed} and producing {@code produced}
+     * tickets: every ticket it holds or issued before or after the transaction, as produced if it was transferred
+     * and as consumed if it was exited.
+     */
+    @NotNull
+    public static TicketProposal forParty(@NotNull Party party, @NotNull List<TicketState> consumed,
+                                          @NotNull List<TicketState> produced, boolean signatureRequested) {
+        final Set<UniqueIdentifier> involved = new HashSet<>();
+        consumed.stream().filter(it -> it.getParticipants().contains(party))
+                .forEach(it -> involved.add(it.getLinearId()));
+        produced.stream().filter(it -> it.getParticipants().contains(party))
+                .forEach(it -> involved.add(it.getLinearId()));
+        final Set<UniqueIdentifier> transferred = produced.stream()
+                .map(TicketState::getLinearId).collect(Collectors.toSet());
+        final List<TicketState> tickets = new ArrayList<>();
+        produced.stream().filter(it -> involved.contains(it.getLinearId())).forEach(tickets::add);
+        consumed.stream()
+                .filter(it -> involved.contains(it.getLinearId()) && !transferred.contains(it.getLinearId()))
+                .forEach(tickets::add);
+        return of(tickets, signatureRequested);
+    }
+
+    @NotNull
+    public List<Integer> getSections() {
+        return sections;
+    }
+
+    @NotNull
+    public List<CordaX500Name> getIssuers() {
+        return issuers;
+    }
+
+    public boolean isSignatureRequested() {
+        return signatureRequested;
+    }
+
+    public int size() {
+        return sections.size();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        TicketProposal that = (TicketProposal) o;
+        return signatureRequested == that.signatureRequested && sections.equals(that.sections)
+                && issuers.equals(that.issuers);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(sections, issuers, signatureRequested);
+    }
+}
@@ -0,0 +1,109 @@
+package com.template.flows;
+
+import com.template.schemas.TicketSchemaV1.PersistentTicket;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.identity.Party;
+import net.corda.core.node.services.Vault;
+import net.corda.core.node.services.vault.Builder;
+import net.corda.core.node.services.vault.CriteriaExpression;
+import net.corda.core.node.services.vault.FieldInfo;
+import net.corda.core.node.services.vault.QueryCriteria;
+import net.corda.core.node.services.vault.Sort;
+import net.corda.core.node.services.vault.SortAttribute;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.UUID;
+
+import static net.corda.core.node.services.vault.QueryCriteriaUtils.getField;
+
+/**
+ * Vault criteria over the indexed columns of {@link com.template.schemas.TicketSchemaV1}.
+ */
+public final class TicketQueries {
+
+    private TicketQueries() {
+    }
+
+    @NotNull
+    public static QueryCriteria byLinearId(@NotNull UniqueIdentifier linearId, @NotNull Vault.StateStatus status) {
+        return custom(Builder.equal(field("linearId"), linearId.getId()), status);
+    }
+
+    /**
+     * Tickets with any of {@code linearIds}, as one IN over the indexed column. Keep the list to a few hundred ids,
+     * some databases cap the size of an IN list.
+     */
+    @NotNull
+    public static QueryCriteria byLinearIds(@NotNull Collection<UUID> linearIds, @NotNull Vault.StateStatus status) {
+        return custom(Builder.in(field("linearId"), linearIds), status);
+    }
+
+    @NotNull
+    public static QueryCriteria unconsumedByLinearId(@NotNull UniqueIdentifier linearId) {
+        return byLinearId(linearId, Vault.StateStatus.UNCONSUMED);
+    }
+
+    @NotNull
+    public static QueryCriteria byIssuer(@NotNull Party issuer) {
+        return custom(Builder.equal(field("issuer"), issuer.getName().toString()), Vault.StateStatus.UNCONSUMED);
+    }
+
+    @NotNull
+    public static QueryCriteria bySpectator(@NotNull Party spectator) {
+        return custom(Builder.equal(field("spectator"), spectator.getName().toString()), Vault.StateStatus.UNCONSUMED);
+    }
+
+    @NotNull
+    public static QueryCriteria bySection(int section) {
+        return custom(Builder.equal(field("section"), section), Vault.StateStatus.UNCONSUMED);
+    }
+
+    /**
+     * Tickets currently held by {@code spectator} in {@code section}.
+     */
+    @NotNull
+    public static QueryCriteria bySpectatorAndSection(@NotNull Party spectator, int section) {
+        return bySpectator(spectator).and(bySection(section));
+    }
+
+    /**
+     * Tickets {@code counterparty} takes part in, as issuer or as spectator.
+     */
+    @NotNull
+    public static QueryCriteria involving(@NotNull Party counterparty) {
+        return bySpectator(counterparty).or(byIssuer(counterparty));
+    }
+
+    /**
+     * Unconsumed tickets with a linear id after {@code after}, or all of them when it is {@code null}. Together with
+     * {@link #linearIdOrder()} this pages through the vault by key, which stays stable while tickets come and go.
+     */
+    @NotNull
+    public static QueryCriteria unconsumedAfter(@Nullable UUID after) {
+        return custom(after == null ? Builder.notNull(field("linearId")) : Builder.greaterThan(field("linearId"), after),
+                Vault.StateStatus.UNCONSUMED);
+    }
+
+    @NotNull
+    public static Sort linearIdOrder() {
+        return new Sort(Collections.singleton(new Sort.SortColumn(
+                new SortAttribute.Custom(PersistentTicket.class, "linearId"), Sort.Direction.ASC)));
+    }
+
+    @NotNull
+    static FieldInfo field(@NotNull String name) {
+        try {
+            return getField(name, PersistentTicket.class);
+        } catch (NoSuchFieldException e) {
+            throw new IllegalStateException("Unknown ticket column " + name, e);
+        }
+    }
+
+    @NotNull
+    private static QueryCriteria custom(@NotNull CriteriaExpression expression, @NotNull Vault.StateStatus status) {
+        return new QueryCriteria.VaultCustomQueryCriteria(expression, status);
+    }
+}
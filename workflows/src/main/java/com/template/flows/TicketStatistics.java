@@ -0,0 +1,75 @@
+package com.template.flows;
+
+import com.template.contracts.TicketContract;
+import com.template.states.TicketState;
+import net.corda.core.identity.Party;
+import net.corda.core.node.ServiceHub;
+import net.corda.core.node.services.Vault;
+import net.corda.core.node.services.vault.Builder;
+import net.corda.core.node.services.vault.QueryCriteria;
+import org.jetbrains.annotations.NotNull;
+
+import javax.persistence.TypedQuery;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Ticket counts computed by the database over the indexed {@link com.template.schemas.TicketSchemaV1} columns, so
+ * no ticket is loaded to count it.
+ */
+public final class TicketStatistics {
+
+    private TicketStatistics() {
+    }
+
+    /**
+     * Unconsumed tickets in the vault per section, with a vault {@code count} aggregate per section.
+     */
+    @NotNull
+    public static Map<Integer, Long> sectionCounts(@NotNull ServiceHub serviceHub) {
+        final Map<Integer, Long> counts = new LinkedHashMap<>();
+        for (int section : TicketContract.SECTIONS) {
+            counts.put(section, count(serviceHub, TicketQueries.bySection(section)));
+        }
+        return counts;
+    }
+
+    /**
+     * Unconsumed tickets in the vault held by {@code spectator}.
+     */
+    public static long holding(@NotNull ServiceHub serviceHub, @NotNull Party spectator) {
+        return count(serviceHub, TicketQueries.bySpectator(spectator));
+    }
+
+    /**
+     * The {@code limit} biggest holders of unconsumed tickets, in {@code section} or in any section when it is 0,
+     * by number of tickets held. The vault aggregates can't group a count, so this is one JPQL group by.
+     */
+    @NotNull
+    public static Map<String, Long> holderCounts(@NotNull ServiceHub serviceHub, int section, int limit) {
+        return serviceHub.withEntityManager(em -> {
+            final TypedQuery<Object[]> query = em.createQuery(
+                    "select t.spectator, count(t) from PersistentTicket t, VaultStates v"
+                            + " where t.stateRef.txId = v.stateRef.txId and t.stateRef.index = v.stateRef.index"
+                            + " and v.stateStatus = :status"
+                            + (section != 0 ? " and t.section = :section" : "")
+                            + " group by t.spectator order by count(t) desc", Object[].class);
+            query.setParameter("status", Vault.StateStatus.UNCONSUMED);
+            if (section != 0) query.setParameter("section", section);
+            query.setMaxResults(limit);
+            final List<Object[]> rows = query.getResultList();
+            final Map<String, Long> counts = new LinkedHashMap<>();
+            rows.forEach(row -> counts.put((String) row[0], (Long) row[1]));
+            return counts;
+        });
+    }
+
+    private static long count(@NotNull ServiceHub serviceHub, @NotNull QueryCriteria criteria) {
+        final QueryCriteria count = new QueryCriteria.VaultCustomQueryCriteria(
+                Builder.count(TicketQueries.field("linearId")), Vault.StateStatus.UNCONSUMED);
+        final List<Object> results = serviceHub.getVaultService()
+                .queryBy(TicketState.class, criteria.and(count)).getOtherResults();
+        return results.isEmpty() || results.get(0) == null ? 0 : ((Number) results.get(0)).longValue();
+    }
+}
@@ -0,0 +1,76 @@
+package com.template.flows;
+
+import com.template.contracts.TicketContract;
+import com.template.states.TicketState;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.node.AppServiceHub;
+import net.corda.core.node.services.CordaService;
+import net.corda.core.node.services.DataFeed;
+import net.corda.core.node.services.ServiceLifecycleEvent;
+import net.corda.core.node.services.Vault;
+import net.corda.core.node.services.vault.PageSpecification;
+import net.corda.core.serialization.SingletonSerializeAsToken;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps a running count of unconsumed tickets per section, so dashboards read it without touching the vault.
+ * Enabled with the {@code ticketStatsSummary} CorDapp config key. Each section's count starts from the total of
+ * a {@code trackBy} snapshot and follows that feed's updates, so no update is counted twice or missed.
+ */
+@CordaService
+public class TicketStatsService extends SingletonSerializeAsToken {
+
+    public static final String SUMMARY_KEY = "ticketStatsSummary";
+
+    @NotNull
+    private final AppServiceHub serviceHub;
+    private final boolean enabled;
+    @NotNull
+    private final Map<Integer, AtomicLong> sectionCounts = new ConcurrentHashMap<>();
+
+    public TicketStatsService(@NotNull AppServiceHub serviceHub) {
+        this.serviceHub = serviceHub;
+        this.enabled = serviceHub.getAppContext().getConfig().exists(SUMMARY_KEY)
+                && serviceHub.getAppContext().getConfig().getBoolean(SUMMARY_KEY);
+        serviceHub.register(event -> {
+            if (event == ServiceLifecycleEvent.STATE_MACHINE_STARTED && enabled) {
+                TicketContract.SECTIONS.forEach(this::track);
+            }
+        });
+    }
+
+    /**
+     * The running counts per section, or {@code null} when the summary is disabled or still starting.
+     */
+    @Nullable
+    public Map<Integer, Long> sectionCounts() {
+        if (!enabled || sectionCounts.size() < TicketContract.SECTIONS.size()) return null;
+        final Map<Integer, Long> counts = new LinkedHashMap<>();
+        TicketContract.SECTIONS.forEach(section -> counts.put(section, sectionCounts.get(section).get()));
+        return counts;
+    }
+
+    private void track(int section) {
+        final DataFeed<Vault.Page<TicketState>, Vault.Update<TicketState>> feed = serviceHub.getVaultService()
+                .trackBy(TicketState.class, TicketQueries.bySection(section), new PageSpecification(1, 1));
+        final AtomicLong count = new AtomicLong(feed.getSnapshot().getTotalStatesAvailable());
+        // The updates aren't filtered by the criteria, only by state type.
+        feed.getUpdates().subscribe(update -> {
+            long delta = 0;
+            for (StateAndRef<TicketState> produced : update.getProduced()) {
+                if (produced.getState().getData().getSection() == section) delta++;
+            }
+            for (StateAndRef<TicketState> consumed : update.getConsumed()) {
+                if (consumed.getState().getData().getSection() == section) delta--;
+            }
+            if (delta != 0) count.addAndGet(delta);
+        });
+        sectionCounts.put(section, count);
+    }
+}
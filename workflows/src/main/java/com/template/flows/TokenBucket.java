@@ -0,0 +1,60 @@
+package com.template.flows;
+
+/**
+ * A thread-safe token bucket refilled continuously at {@code ratePerSecond} up to {@code burst} tokens.
+ */
+public final class TokenBucket {
+
+    private final double ratePerNano;
+    private final double burst;
+    private double tokens;
+    private long lastRefill;
+
+    public TokenBucket(double ratePerSecond, double burst) {
+        if (ratePerSecond <= 0 || burst < 1) throw new IllegalArgumentException("Rate must be positive and burst at least 1");
+        this.ratePerNano = ratePerSecond / 1_000_000_000.0;
+        this.burst = burst;
+        this.tokens = burst;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /**
+     * Takes a token if one is available.
+     */
+    public boolean tryAcquire() {
+        return tryAcquire(1);
+    }
+
+    /**
+     * Takes {@code permits} tokens if that many are available, or if the bucket is full when it can't hold that many;
+     * the tokens it is short of are paid back before the next ones are handed out.
+     */
+    public synchronized boolean tryAcquire(int permits) {
+        refill();
+        if (tokens < Math.min(permits, burst)) return false;
+        tokens -= permits;
+        return true;
+    }
+
+    /**
+     * Nanoseconds until the next token is available, 0 if one is available now.
+     */
+    public long nanosUntilAvailable() {
+        return nanosUntilAvailable(1);
+    }
+
+    /**
+     * Nanoseconds until {@link #tryAcquire(int)} can take {@code permits} tokens, 0 if it can now.
+     */
+    public synchronized long nanosUntilAvailable(int permits) {
+        refill();
+        final double needed = Math.min(permits, burst);
+        return tokens >= needed ? 0 : (long) Math.ceil((needed - tokens) / ratePerNano);
+    }
+
+    private void refill() {
+        final long now = System.nanoTime();
+        tokens = Math.min(burst, tokens + (now - lastRefill) * ratePerNano);
+        lastRefill = now;
+    }
+}
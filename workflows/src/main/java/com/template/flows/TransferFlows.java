@@ -5,19 +5,20 @@ import com.template.contracts.TicketContract;
 import com.template.contracts.TicketContract.Commands.Transfer;
 import com.template.states.TicketState;
 import net.corda.core.contracts.Command;
-import net.corda.core.contracts.ContractState;
 import net.corda.core.contracts.StateAndRef;
 import net.corda.core.contracts.UniqueIdentifier;
 import net.corda.core.crypto.SecureHash;
 import net.corda.core.flows.*;
 import net.corda.core.identity.Party;
-import net.corda.core.node.services.vault.QueryCriteria;
+import net.corda.core.node.services.StatesNotAvailableException;
 import net.corda.core.transactions.SignedTransaction;
 import net.corda.core.transactions.TransactionBuilder;
+import net.corda.core.utilities.NonEmptySet;
 import net.corda.core.utilities.ProgressTracker;
 import net.corda.core.utilities.ProgressTracker.Step;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
@@ -35,6 +36,8 @@ public interface TransferFlows {
         private final Party newOwner;
         @NotNull
         private final ProgressTracker progressTracker;
+        @NotNull
+        private final FlowTimer timer;
         private final static Step GENERATING_TRANSACTION = new ProgressTracker.Step(
                 "Generating transaction based on parameters.");
         private final static Step VERIFYING_TRANSACTION = new ProgressTracker.Step(
@@ -65,28 +68,67 @@ public interface TransferFlows {
             this.linearId = linearId;
             this.newOwner = newOwner;
             this.progressTracker = tracker();
+            this.timer = new FlowTimer(this, this.progressTracker);
         }
 
         @Suspendable
         @Override
         public SignedTransaction call() throws FlowException {
-            progressTracker.setCurrentStep(GENERATING_TRANSACTION);
-            final QueryCriteria assetCriteria = new QueryCriteria.LinearStateQueryCriteria()
-                    .withUuid(Collections.singletonList(linearId.getId())
-            );
-            final List<StateAndRef<TicketState>> asset = getServiceHub()
-                    .getVaultService()
-                    .queryBy(TicketState.class, assetCriteria).getStates();
-            final StateAndRef<TicketState> inputState = asset.get(0);
+            try {
+                final SignedTransaction result = transferInTurn();
+                timer.success();
+                return result;
+            } catch (FlowException | RuntimeException e) {
+                timer.failure(e);
+                throw e;
+            }
+        }
+
+        /**
+         * Waits for the transfers of this ticket queued before us on this node, then transfers it. A notary conflict
+         * means the ticket was spent by a flow we couldn't queue behind, from another node; that spend changed its
+         * holder or retired it, so there is nothing left to retry and the transfer fails at once.
+         */
+        @Suspendable
+        private SignedTransaction transferInTurn() throws FlowException {
+            final TransferQueueService queue = getServiceHub().cordaService(TransferQueueService.class);
+            try {
+                await(queue.turn(linearId.getId(), getRunId()));
+                timer.step(GENERATING_TRANSACTION);
+                final StateAndRef<TicketState> inputState = getServiceHub().cordaService(TicketIndexService.class)
+                        .resolveUnconsumed(linearId);
+                if (inputState == null) throw new FlowException("No unconsumed ticket with linear id " + linearId);
+                try {
+                    return transfer(inputState);
+                } catch (NotaryException e) {
+                    if (!(e.getError() instanceof NotaryError.Conflict)) throw e;
+                    final StateConsumptionDetails spentBy = ((NotaryError.Conflict) e.getError()).getConsumedStates()
+                            .get(inputState.getRef());
+                    throw new FlowException("Ticket " + linearId + " was already spent"
+                            + (spentBy != null ? " by the transaction hashed " + spentBy.getHashOfTransactionId() : ""),
+                            e);
+                }
+            } finally {
+                queue.release(linearId.getId(), getRunId());
+            }
+        }
+
+        @Suspendable
+        private SignedTransaction transfer(@NotNull StateAndRef<TicketState> inputState) throws FlowException {
+            // Held until the flow ends, so no other flow on this node builds on the ticket meanwhile.
+            try {
+                getServiceHub().getVaultService().softLockReserve(getRunId().getUuid(),
+                        NonEmptySet.of(inputState.getRef()));
+            } catch (StatesNotAvailableException e) {
+                throw new FlowException("Ticket " + linearId + " is spent or held by another flow", e);
+            }
 
             final Party notary = inputState.getState().getNotary();
 
             final Party inputIssuer = inputState.getState().getData().getIssuer();
             final Party oldOwner = inputState.getState().getData().getSpectator();
-            final int inputSection = inputState.getState().getData().getSection();
-            final UniqueIdentifier conservedLinearId = inputState.getState().getData().getLinearId();
 
-            final TicketState outputState = new TicketState(inputIssuer, this.newOwner, inputSection, conservedLinearId);
+            final TicketState outputState = inputState.getState().getData().transferTo(this.newOwner);
             final Command<Transfer> commandTransfer = new Command<>(new Transfer()
                     , Arrays.asList(oldOwner.getOwningKey(), this.newOwner.getOwningKey()));
             
@@ -95,27 +137,28 @@ public interface TransferFlows {
                     .addInputState(inputState)
                     .addOutputState(outputState, TicketContract.ID );
             
-            progressTracker.setCurrentStep(VERIFYING_TRANSACTION);
+            timer.step(VERIFYING_TRANSACTION);
             txBuilder.verify(getServiceHub());
             
-            progressTracker.setCurrentStep(SIGNING_TRANSACTION);
+            timer.step(SIGNING_TRANSACTION);
             final SignedTransaction partlySignedTx = getServiceHub().signInitialTransaction(txBuilder);
 
-            progressTracker.setCurrentStep(GATHERING_SIGNS);
-            FlowSession otherOwnerSession;
-            if (getOurIdentity().equals(oldOwner)){
-                otherOwnerSession = initiateFlow(newOwner);
-            } else {
-                otherOwnerSession = initiateFlow(oldOwner);
+            timer.step(GATHERING_SIGNS);
+            final Party otherOwner = getOurIdentity().equals(oldOwner) ? newOwner : oldOwner;
+            final FlowSession otherOwnerSession = initiateFlow(otherOwner);
+            final List<FlowSession> sessions = new ArrayList<>(Collections.singletonList(otherOwnerSession));
+            otherOwnerSession.send(TicketProposal.of(Collections.singletonList(outputState), true));
+            // The issuer only records the transfer, and needs no session of its own when it is already a party to it.
+            if (!inputIssuer.equals(getOurIdentity()) && !inputIssuer.equals(otherOwner)) {
+                final FlowSession issuerSession = initiateFlow(inputIssuer);
+                issuerSession.send(TicketProposal.of(Collections.singletonList(outputState), false));
+                sessions.add(issuerSession);
             }
             final SignedTransaction fullSignedTx = subFlow(new CollectSignaturesFlow(partlySignedTx,
                     Arrays.asList(otherOwnerSession),
                     GATHERING_SIGNS.childProgressTracker()));
-            progressTracker.setCurrentStep(FINALISING_TRANSACTION);
-            final SignedTransaction notarised = subFlow(new FinalityFlow(fullSignedTx,
-                    Arrays.asList(otherOwnerSession, initiateFlow(inputIssuer)),
-                    FINALISING_TRANSACTION.childProgressTracker()));
-            return notarised;
+            timer.step(FINALISING_TRANSACTION);
+            return subFlow(new FinalityFlow(fullSignedTx, sessions, FINALISING_TRANSACTION.childProgressTracker()));
         }
     }
 
@@ -125,6 +168,8 @@ public interface TransferFlows {
         private final FlowSession otherOwnerSession;
         @NotNull
         private final ProgressTracker progressTracker;
+        @NotNull
+        private final FlowTimer timer;
         public final static Step SIGNING_TRANSACTION = new Step("About to sign transaction with our private key."){
             @Override
             public ProgressTracker childProgressTracker() {
@@ -149,12 +194,36 @@ public interface TransferFlows {
         public TransferResponder(@NotNull FlowSession otherOwnerSession, @NotNull ProgressTracker progressTracker) {
             this.otherOwnerSession = otherOwnerSession;
             this.progressTracker = progressTracker;
+            this.timer = new FlowTimer(this, this.progressTracker);
         }
 
         @Suspendable
         @Override
         public SignedTransaction call() throws FlowException {
-            progressTracker.setCurrentStep(SIGNING_TRANSACTION);
+            try {
+                final SignedTransaction result = sign();
+                timer.success();
+                return result;
+            } catch (FlowException | RuntimeException e) {
+                timer.failure(e);
+                throw e;
+            }
+        }
+
+        @Suspendable
+        private SignedTransaction sign() throws FlowException {
+            final TicketProposal proposal = otherOwnerSession.receive(TicketProposal.class).unwrap(it -> it);
+            if (!proposal.isSignatureRequested()) {
+                // We're the ticket's issuer and only record the transfer. The holders have signed it already, so the
+                // policy doesn't apply: turning it away would only keep it out of our vault.
+                timer.step(FINALISING_TRANSACTION);
+                return subFlow(new ReceiveFinalityFlow(otherOwnerSession));
+            }
+            final TicketPolicy policy = getServiceHub().cordaService(TicketPolicyService.class).getPolicy();
+            policy.admit(otherOwnerSession.getCounterparty());
+            policy.check(proposal);
+
+            timer.step(SIGNING_TRANSACTION);
 
             class SignTxFlow extends SignTransactionFlow {
                 private SignTxFlow(FlowSession otherPartyFlow, ProgressTracker progressTracker) {
@@ -163,10 +232,10 @@ public interface TransferFlows {
 
                 @Override
                 protected void checkTransaction(@NotNull SignedTransaction stx) throws FlowException {
+                    final TicketProposal signed = TicketProposal.of(
+                            stx.getTx().outputsOfType(TicketState.class), true);
                     requireThat ( req -> {
-                        ContractState output = stx.getTx().getOutputs().get(0).getData();
-                        TicketState ticket = (TicketState) output;
-                        req.using("Only accepted ticket of section = 30", ticket.getSection() == 30);
+                        req.using("The transaction has to match the proposal", signed.equals(proposal));
                         return null;
                     });
                 }
@@ -174,7 +243,7 @@ public interface TransferFlows {
             final SignTxFlow signTxFlow = new SignTxFlow(otherOwnerSession, SignTransactionFlow.Companion.tracker());
             final SecureHash txId = subFlow(signTxFlow).getId();
 
-            progressTracker.setCurrentStep(FINALISING_TRANSACTION);
+            timer.step(FINALISING_TRANSACTION);
             return subFlow(new ReceiveFinalityFlow(otherOwnerSession, txId));
         }
     }
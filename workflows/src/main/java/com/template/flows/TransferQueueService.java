@@ -0,0 +1,102 @@
+package com.template.flows;
+
+import net.corda.core.flows.FlowExternalAsyncOperation;
+import net.corda.core.flows.StateMachineRunId;
+import net.corda.core.node.AppServiceHub;
+import net.corda.core.node.services.CordaService;
+import net.corda.core.serialization.SingletonSerializeAsToken;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Node-local FIFO of the transfers waiting on each ticket, so two transfers of the same linear id run one after the
+ * other instead of both collecting signatures and racing at the notary. A flow awaits {@link #turn} before it reads
+ * the ticket and calls {@link #release} when it is done, successfully or not. The queues are in memory only: after a
+ * restart a flow still waiting re-enters its queue, and one already past it simply goes on.
+ */
+@CordaService
+public class TransferQueueService extends SingletonSerializeAsToken {
+
+    @NotNull
+    private final Map<UUID, LinkedHashMap<StateMachineRunId, CompletableFuture<Boolean>>> queues = new HashMap<>();
+
+    public TransferQueueService(@NotNull AppServiceHub serviceHub) {
+    }
+
+    /**
+     * The operation a flow awaits for its turn on {@code linearId}; it completes once the transfers ahead released it.
+     */
+    @NotNull
+    public FlowExternalAsyncOperation<Boolean> turn(@NotNull UUID linearId, @NotNull StateMachineRunId runId) {
+        return new Turn(this, linearId, runId);
+    }
+
+    /**
+     * Leaves the queue of {@code linearId}, handing the turn to the next transfer if {@code runId} held it.
+     */
+    public void release(@NotNull UUID linearId, @NotNull StateMachineRunId runId) {
+        CompletableFuture<Boolean> next = null;
+        synchronized (queues) {
+            final LinkedHashMap<StateMachineRunId, CompletableFuture<Boolean>> queue = queues.get(linearId);
+            if (queue == null) return;
+            final boolean hadTurn = queue.keySet().iterator().next().equals(runId);
+            if (queue.remove(runId) == null) return;
+            if (queue.isEmpty()) {
+                queues.remove(linearId);
+            } else if (hadTurn) {
+                next = queue.values().iterator().next();
+            }
+        }
+        // Completed outside the lock, the flow it wakes may call straight back in.
+        if (next != null) next.complete(true);
+    }
+
+    public int waiting(@NotNull UUID linearId) {
+        synchronized (queues) {
+            final LinkedHashMap<StateMachineRunId, CompletableFuture<Boolean>> queue = queues.get(linearId);
+            return queue == null ? 0 : queue.size();
+        }
+    }
+
+    @NotNull
+    private CompletableFuture<Boolean> enqueue(@NotNull UUID linearId, @NotNull StateMachineRunId runId) {
+        synchronized (queues) {
+            final LinkedHashMap<StateMachineRunId, CompletableFuture<Boolean>> queue =
+                    queues.computeIfAbsent(linearId, it -> new LinkedHashMap<>());
+            // A flow replayed from its checkpoint asks again; it keeps its place.
+            final CompletableFuture<Boolean> queued = queue.get(runId);
+            if (queued != null) return queued;
+            final CompletableFuture<Boolean> turn = new CompletableFuture<>();
+            if (queue.isEmpty()) turn.complete(true);
+            queue.put(runId, turn);
+            return turn;
+        }
+    }
+
+    private static final class Turn implements FlowExternalAsyncOperation<Boolean> {
+        @NotNull
+        private final TransferQueueService service;
+        @NotNull
+        private final UUID linearId;
+        @NotNull
+        private final StateMachineRunId runId;
+
+        private Turn(@NotNull TransferQueueService service, @NotNull UUID linearId,
+                     @NotNull StateMachineRunId runId) {
+            this.service = service;
+            this.linearId = linearId;
+            this.runId = runId;
+        }
+
+        @NotNull
+        @Override
+        public CompletableFuture<Boolean> execute(@NotNull String deduplicationId) {
+            return service.enqueue(linearId, runId);
+        }
+    }
+}
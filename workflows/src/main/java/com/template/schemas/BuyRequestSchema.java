@@ -0,0 +1,7 @@
+package com.template.schemas;
+
+/**
+ * The family of schemas for the issuer's table of client buy request ids.
+ */
+public class BuyRequestSchema {
+}
@@ -0,0 +1,83 @@
+package com.template.schemas;
+
+import net.corda.core.schemas.MappedSchema;
+import org.jetbrains.annotations.Nullable;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+import java.time.Instant;
+import java.util.Arrays;
+
+/**
+ * First version of the {@link BuyRequestSchema}: one row per client request id the issuer has accepted a buy for,
+ * keyed by the id.
+ */
+public class BuyRequestSchemaV1 extends MappedSchema {
+
+    public BuyRequestSchemaV1() {
+        super(BuyRequestSchema.class, 1, Arrays.asList(PersistentBuyRequest.class));
+    }
+
+    @Nullable
+    @Override
+    public String getMigrationResource() {
+        return "buy-request.changelog-master";
+    }
+
+    @Entity
+    @Table(name = "buy_requests")
+    public static class PersistentBuyRequest {
+        @Id
+        @Column(name = "request_id", nullable = false)
+        private String requestId;
+        @Column(name = "spectator", nullable = false)
+        private String spectator;
+        @Column(name = "section", nullable = false)
+        private int section;
+        @Column(name = "transaction_id")
+        private String transactionId;
+        @Column(name = "claimed_at", nullable = false)
+        private Instant claimedAt;
+
+        public PersistentBuyRequest(String requestId, String spectator, int section, Instant claimedAt) {
+            this.requestId = requestId;
+            this.spectator = spectator;
+            this.section = section;
+            this.claimedAt = claimedAt;
+        }
+
+        // Default constructor required by hibernate.
+        public PersistentBuyRequest() {
+        }
+
+        public String getRequestId() {
+            return requestId;
+        }
+
+        public String getSpectator() {
+            return spectator;
+        }
+
+        public int getSection() {
+            return section;
+        }
+
+        public String getTransactionId() {
+            return transactionId;
+        }
+
+        public void setTransactionId(String transactionId) {
+            this.transactionId = transactionId;
+        }
+
+        public Instant getClaimedAt() {
+            return claimedAt;
+        }
+
+        public void setClaimedAt(Instant claimedAt) {
+            this.claimedAt = claimedAt;
+        }
+    }
+}
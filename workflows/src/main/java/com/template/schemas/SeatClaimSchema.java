@@ -0,0 +1,7 @@
+package com.template.schemas;
+
+/**
+ * The family of schemas for the issuer's table of seats claimed by buys not yet recorded.
+ */
+public class SeatClaimSchema {
+}
@@ -0,0 +1,97 @@
+package com.template.schemas;
+
+import net.corda.core.schemas.MappedSchema;
+import org.jetbrains.annotations.Nullable;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.IdClass;
+import javax.persistence.Table;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.UUID;
+
+/**
+ * First version of the {@link SeatClaimSchema}: one row per seat a running buy holds, keyed by the buy's flow run id,
+ * section and seat.
+ */
+public class SeatClaimSchemaV1 extends MappedSchema {
+
+    public SeatClaimSchemaV1() {
+        super(SeatClaimSchema.class, 1, Arrays.asList(PersistentSeatClaim.class));
+    }
+
+    @Nullable
+    @Override
+    public String getMigrationResource() {
+        return "seat-claim.changelog-master";
+    }
+
+    @Entity
+    @Table(name = "seat_claims")
+    @IdClass(PersistentSeatClaim.Key.class)
+    public static class PersistentSeatClaim {
+        @Id
+        @Column(name = "run_id", nullable = false)
+        private UUID runId;
+        @Id
+        @Column(name = "section", nullable = false)
+        private int section;
+        @Id
+        @Column(name = "seat", nullable = false)
+        private int seat;
+
+        public PersistentSeatClaim(UUID runId, int section, int seat) {
+            this.runId = runId;
+            this.section = section;
+            this.seat = seat;
+        }
+
+        // Default constructor required by hibernate.
+        public PersistentSeatClaim() {
+        }
+
+        public UUID getRunId() {
+            return runId;
+        }
+
+        public int getSection() {
+            return section;
+        }
+
+        public int getSeat() {
+            return seat;
+        }
+
+        public static class Key implements Serializable {
+            private UUID runId;
+            private int section;
+            private int seat;
+
+            public Key(UUID runId, int section, int seat) {
+                this.runId = runId;
+                this.section = section;
+                this.seat = seat;
+            }
+
+            // Default constructor required by hibernate.
+            public Key() {
+            }
+
+            @Override
+            public boolean equals(Object o) {
+                if (this == o) return true;
+                if (o == null || getClass() != o.getClass()) return false;
+                Key that = (Key) o;
+                return section == that.section && seat == that.seat && Objects.equals(runId, that.runId);
+            }
+
+            @Override
+            public int hashCode() {
+                return Objects.hash(runId, section, seat);
+            }
+        }
+    }
+}
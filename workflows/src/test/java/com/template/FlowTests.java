@@ -1,13 +1,61 @@
 package com.template;
 
+import co.paralleluniverse.fibers.Suspendable;
+import com.codahale.metrics.Counter;
 import com.google.common.collect.ImmutableList;
+import com.template.flows.BuyFlows.BuyInitiator;
+import com.template.contracts.TicketContract;
+import com.template.contracts.TicketContract.Commands.Buy;
+import com.template.flows.ExitFlows.ExitInitiator;
+import com.template.flows.FlowMetricsService;
+import com.template.flows.InventoryFlows.CreateInventoryInitiator;
+import com.template.flows.ReconcileFlows.ReconcileInitiator;
+import com.template.flows.ReconcileFlows.Report;
+import com.template.flows.SeatAllocatorService;
+import com.template.flows.TransferFlows.TransferInitiator;
+import com.template.states.InventoryState;
+import com.template.states.TicketState;
+import net.corda.core.concurrent.CordaFuture;
+import net.corda.core.contracts.StateAndRef;
+import net.corda.core.contracts.UniqueIdentifier;
+import net.corda.core.flows.FlowException;
+import net.corda.core.flows.FlowLogic;
+import net.corda.core.flows.FlowSession;
+import net.corda.core.flows.NotaryException;
+import net.corda.core.flows.NotaryFlow;
+import net.corda.core.flows.ReceiveFinalityFlow;
+import net.corda.core.identity.Party;
+import net.corda.core.node.StatesToRecord;
+import net.corda.core.transactions.SignedTransaction;
+import net.corda.core.transactions.TransactionBuilder;
+import net.corda.testing.node.InMemoryMessagingNetwork;
 import net.corda.testing.node.MockNetwork;
 import net.corda.testing.node.MockNetworkParameters;
 import net.corda.testing.node.StartedMockNode;
 import net.corda.testing.node.TestCordapp;
+import net.corda.testing.node.internal.InternalMockNetwork;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
+import rx.Subscription;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class FlowTests {
     private final MockNetwork network = new MockNetwork(new MockNetworkParameters(ImmutableList.of(
@@ -16,11 +64,7 @@ public class FlowTests {
     )));
     private final StartedMockNode a = network.createNode();
     private final StartedMockNode b = network.createNode();
-
-    public FlowTests() {
-        a.registerInitiatedFlow(Responder.class);
-        b.registerInitiatedFlow(Responder.class);
-    }
+    private final StartedMockNode c = network.createNode();
 
     @Before
     public void setup() {
@@ -36,4 +80,326 @@ public class FlowTests {
     public void dummyTest() {
 
     }
+
+    // The budgets below are what each flow costs today, with a little headroom on messages, bytes and rounds for
+    // platform noise. A flow going over one has started paying for an extra session, round trip or write.
+
+    @Test
+    public void buyStaysWithinItsBudget() throws Exception {
+        openInventory();
+        final ProtocolCost cost = measure(a, new BuyInitiator(party(b), 30));
+        cost.assertWithin(2, 2, 4, 16, 128 * 1024, 14);
+    }
+
+    @Test
+    public void transferStaysWithinItsBudget() throws Exception {
+        openInventory();
+        final UniqueIdentifier ticket = buy(b);
+        final ProtocolCost cost = measure(b, new TransferInitiator(ticket, party(c)));
+        cost.assertWithin(3, 3, 4, 30, 256 * 1024, 24);
+    }
+
+    @Test
+    public void exitStaysWithinItsBudget() throws Exception {
+        openInventory();
+        final UniqueIdentifier ticket = buy(b);
+        final ProtocolCost cost = measure(b, new ExitInitiator(ticket));
+        cost.assertWithin(2, 3, 2, 20, 128 * 1024, 16);
+    }
+
+    @Test
+    public void reconcileFetchesTheTransactionsOfMissedTickets() throws Exception {
+        openInventory();
+        b.registerInitiatedFlow(BuyInitiator.class, UnrecordedBuyResponder.class);
+        final SignedTransaction bought = run(a, new BuyInitiator(party(b), 30));
+        final UniqueIdentifier ticket = bought.getTx().outputsOfType(TicketState.class).get(0).getLinearId();
+        assertEquals(0, tickets(b));
+
+        final Report report = run(b, new ReconcileInitiator(party(a)));
+        assertEquals(Collections.singletonList(ticket.getId()), report.getMismatched());
+        assertEquals(Collections.singletonList(bought.getId()), report.getReceived());
+        assertTrue(report.getSent().isEmpty());
+        assertEquals(1, tickets(b));
+
+        assertTrue(run(b, new ReconcileInitiator(party(a))).isInSync());
+    }
+
+    @Test
+    public void aRetriedBuyReturnsTheFirstTicket() throws Exception {
+        openInventory();
+        final SignedTransaction first = run(a, new BuyInitiator(party(b), 30, "order-1"));
+        final SignedTransaction retried = run(a, new BuyInitiator(party(b), 30, "order-1"));
+        assertEquals(first.getId(), retried.getId());
+        assertEquals(1, tickets(b));
+    }
+
+    @Test
+    public void aRequestIdCantBeReusedForAnotherOrder() throws Exception {
+        openInventory();
+        run(a, new BuyInitiator(party(b), 30, "order-1"));
+        final CordaFuture<SignedTransaction> reused = a.startFlow(new BuyInitiator(party(c), 30, "order-1"));
+        network.runNetwork();
+        try {
+            reused.get();
+            fail("The request id was reused for another spectator");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause().getMessage(), e.getCause().getMessage().contains("was used for a different order"));
+        }
+        assertEquals(0, tickets(c));
+    }
+
+    @Test
+    public void aBuyCanBeRetriedOnceItsFailedClaimIsReleased() throws Exception {
+        openInventory();
+        // Spends the only shard behind the vault's back, so the next buy claims its request id, reaches the notary
+        // with that claim committed and is refused there.
+        final SignedTransaction conflicting = run(a, new UnrecordedDraw(party(c)));
+        final CordaFuture<SignedTransaction> failed = a.startFlow(new BuyInitiator(party(b), 30, "order-1"));
+        network.runNetwork();
+        try {
+            failed.get();
+            fail("The buy was notarised with an inventory shard already spent");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause().toString(), e.getCause() instanceof NotaryException);
+        }
+        a.transaction(() -> {
+            a.getServices().recordTransactions(conflicting);
+            return null;
+        });
+
+        // The failed buy releases its claim just after it ends, far sooner than its lease runs out.
+        SignedTransaction retried = null;
+        for (int attempt = 0; retried == null; attempt++) {
+            try {
+                retried = run(a, new BuyInitiator(party(b), 30, "order-1"));
+            } catch (ExecutionException e) {
+                assertTrue(e.getCause().getMessage(), attempt < 50
+                        && e.getCause().getMessage().contains("is still in progress"));
+                Thread.sleep(100);
+            }
+        }
+        assertEquals(party(b), retried.getTx().outputsOfType(TicketState.class).get(0).getSpectator());
+        assertEquals(1, tickets(b));
+    }
+
+    @Test
+    public void concurrentBuysClaimDistinctSeatsAndReuseReleasedOnes() throws Exception {
+        final SeatAllocatorService seats = a.getServices().cordaService(SeatAllocatorService.class);
+        final int threads = 8;
+        final int claimsPerThread = 100;
+        final ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            final List<Future<List<Integer>>> claims = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                final UUID runId = UUID.randomUUID();
+                claims.add(pool.submit(() -> a.transaction(() -> {
+                    final List<Integer> claimed = new ArrayList<>();
+                    for (int j = 0; j < claimsPerThread; j++) claimed.add(seats.claim(runId, 30));
+                    return claimed;
+                })));
+            }
+            final Set<Integer> claimed = new HashSet<>();
+            for (Future<List<Integer>> it : claims) claimed.addAll(it.get());
+            // Every seat once, and dense from 0.
+            assertEquals(threads * claimsPerThread, claimed.size());
+            assertEquals(threads * claimsPerThread - 1, (int) Collections.max(claimed));
+
+            final List<Future<?>> releases = new ArrayList<>();
+            for (int seat = 0; seat < threads * claimsPerThread; seat += 2) {
+                final int released = seat;
+                releases.add(pool.submit(() -> seats.release(30, released)));
+            }
+            for (Future<?> it : releases) it.get();
+            final List<Future<Integer>> reclaims = new ArrayList<>();
+            for (int i = 0; i < releases.size(); i++) {
+                final UUID runId = UUID.randomUUID();
+                reclaims.add(pool.submit(() -> a.transaction(() -> seats.claim(runId, 30))));
+            }
+            final Set<Integer> reclaimed = new HashSet<>();
+            for (Future<Integer> it : reclaims) reclaimed.add(it.get());
+            assertEquals(releases.size(), reclaimed.size());
+            assertTrue(reclaimed.stream().allMatch(it -> it % 2 == 0 && it < threads * claimsPerThread));
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private <T> T run(StartedMockNode node, FlowLogic<T> flow) throws Exception {
+        final CordaFuture<T> future = node.startFlow(flow);
+        network.runNetwork();
+        return future.get();
+    }
+
+    private static int tickets(StartedMockNode node) {
+        return node.transaction(() ->
+                node.getServices().getVaultService().queryBy(TicketState.class).getStates().size());
+    }
+
+    private void openInventory() throws Exception {
+        final CordaFuture<List<SignedTransaction>> future = a.startFlow(new CreateInventoryInitiator(30, 10, 1));
+        network.runNetwork();
+        future.get();
+    }
+
+    private UniqueIdentifier buy(StartedMockNode spectator) throws Exception {
+        final CordaFuture<SignedTransaction> future = a.startFlow(new BuyInitiator(party(spectator), 30));
+        network.runNetwork();
+        return future.get().getTx().outputsOfType(TicketState.class).get(0).getLinearId();
+    }
+
+    private static Party party(StartedMockNode node) {
+        return node.getInfo().getLegalIdentities().get(0);
+    }
+
+    /**
+     * A spectator that lets a buy finish without recording it, so its vault misses the ticket.
+     */
+    public static class UnrecordedBuyResponder extends FlowLogic<SignedTransaction> {
+        private final FlowSession session;
+
+        public UnrecordedBuyResponder(FlowSession session) {
+            this.session = session;
+        }
+
+        @Suspendable
+        @Override
+        public SignedTransaction call() throws FlowException {
+            return subFlow(new ReceiveFinalityFlow(session, null, StatesToRecord.NONE));
+        }
+    }
+
+    /**
+     * Notarises a buy of one ticket from every inventory shard of the issuer without recording it, so its vault still
+     * offers the spent shards to the next buy.
+     */
+    public static class UnrecordedDraw extends FlowLogic<SignedTransaction> {
+        private final Party spectator;
+
+        public UnrecordedDraw(Party spectator) {
+            this.spectator = spectator;
+        }
+
+        @Suspendable
+        @Override
+        public SignedTransaction call() throws FlowException {
+            final Party issuer = getOurIdentity();
+            final List<StateAndRef<InventoryState>> shards =
+                    getServiceHub().getVaultService().queryBy(InventoryState.class).getStates();
+            final TransactionBuilder txBuilder = new TransactionBuilder(shards.get(0).getState().getNotary())
+                    .addCommand(new Buy(), issuer.getOwningKey());
+            for (StateAndRef<InventoryState> shard : shards) {
+                final InventoryState inventory = shard.getState().getData();
+                txBuilder.addInputState(shard)
+                        .addOutputState(inventory.draw(1), TicketContract.ID)
+                        .addOutputState(new TicketState(issuer, spectator, inventory.getSection(),
+                                new UniqueIdentifier()), TicketContract.ID);
+            }
+            final SignedTransaction stx = getServiceHub().signInitialTransaction(txBuilder);
+            return stx.withAdditionalSignatures(subFlow(new NotaryFlow.Client(stx)));
+        }
+    }
+
+    /**
+     * Runs {@code flow} on {@code node} and counts what it cost every node, the notary included, until the network
+     * is idle again.
+     */
+    private ProtocolCost measure(StartedMockNode node, FlowLogic<SignedTransaction> flow) throws Exception {
+        final StartedMockNode[] parties = {a, b, c};
+        final long respondersBefore = responderSuccesses(parties);
+        final AtomicLong messages = new AtomicLong();
+        final AtomicLong bytes = new AtomicLong();
+        final AtomicLong vaultWrites = new AtomicLong();
+        final List<Subscription> subscriptions = new ArrayList<>();
+        subscriptions.add(messagingNetwork().getSentMessages().subscribe(transfer -> {
+            messages.incrementAndGet();
+            bytes.addAndGet(transfer.getMessageData().getSize());
+        }));
+        for (StartedMockNode party : parties) {
+            subscriptions.add(party.getServices().getVaultService().getUpdates().subscribe(update ->
+                    vaultWrites.addAndGet(update.getProduced().size() + update.getConsumed().size())));
+        }
+        try {
+            final CordaFuture<SignedTransaction> future = node.startFlow(flow);
+            int rounds = 0;
+            while (!future.isDone()) {
+                assertTrue("The flow didn't finish within 1000 network rounds", rounds < 1000);
+                network.runNetwork(1);
+                rounds++;
+            }
+            final SignedTransaction stx = future.get();
+            // The counterparties may still be finishing.
+            network.runNetwork();
+            final long notarySessions = stx.getNotary() == null ? 0 : 1;
+            return new ProtocolCost(responderSuccesses(parties) - respondersBefore + notarySessions,
+                    stx.getSigs().size(), vaultWrites.get(), messages.get(), bytes.get(), rounds);
+        } finally {
+            subscriptions.forEach(Subscription::unsubscribe);
+        }
+    }
+
+    /**
+     * Every responder flow records its outcome, and is started by exactly one session.
+     */
+    private static long responderSuccesses(StartedMockNode[] nodes) {
+        long total = 0;
+        for (StartedMockNode node : nodes) {
+            final Map<String, Counter> counters = node.getServices().cordaService(FlowMetricsService.class)
+                    .getRegistry().getCounters((name, metric) -> name.endsWith("Responder.success"));
+            total += counters.values().stream().mapToLong(Counter::getCount).sum();
+        }
+        return total;
+    }
+
+    /**
+     * The in-memory network the mock nodes talk over. {@link MockNetwork} doesn't expose it, so it is read from the
+     * internal network it wraps.
+     */
+    private InMemoryMessagingNetwork messagingNetwork() {
+        try {
+            final Field field = MockNetwork.class.getDeclaredField("internalMockNetwork");
+            field.setAccessible(true);
+            return ((InternalMockNetwork) field.get(network)).getMessagingNetwork();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Can't reach the mock network's messaging", e);
+        }
+    }
+
+    private static final class ProtocolCost {
+        private final long sessions;
+        private final long signatures;
+        private final long vaultWrites;
+        private final long messages;
+        private final long bytes;
+        private final long rounds;
+
+        private ProtocolCost(long sessions, long signatures, long vaultWrites, long messages, long bytes,
+                             long rounds) {
+            this.sessions = sessions;
+            this.signatures = signatures;
+            this.vaultWrites = vaultWrites;
+            this.messages = messages;
+            this.bytes = bytes;
+            this.rounds = rounds;
+        }
+
+        /**
+         * Sessions, signatures and vault writes follow from the protocol and are exact; the rest are ceilings.
+         * Rounds are network rounds, in each of which every node takes at most one message off its queue.
+         */
+        private void assertWithin(long sessions, long signatures, long vaultWrites, long maxMessages, long maxBytes,
+                                  long maxRounds) {
+            assertEquals("sessions", sessions, this.sessions);
+            assertEquals("signatures", signatures, this.signatures);
+            assertEquals("vault writes", vaultWrites, this.vaultWrites);
+            assertTrue("messages: " + this, messages <= maxMessages);
+            assertTrue("bytes: " + this, bytes <= maxBytes);
+            assertTrue("rounds: " + this, rounds <= maxRounds);
+        }
+
+        @Override
+        public String toString() {
+            return "sessions=" + sessions + " signatures=" + signatures + " vaultWrites=" + vaultWrites
+                    + " messages=" + messages + " bytes=" + bytes + " rounds=" + rounds;
+        }
+    }
 }